@@ -0,0 +1,368 @@
+package io.github.fivefish130.html2excel.richtext;
+
+import io.github.fivefish130.html2excel.richtext.builder.RichTextBuilder;
+import io.github.fivefish130.html2excel.richtext.cache.HtmlCache;
+import io.github.fivefish130.html2excel.richtext.config.ConverterConfig;
+import io.github.fivefish130.html2excel.richtext.model.CompiledRichText;
+import io.github.fivefish130.html2excel.richtext.model.CompiledTable;
+import io.github.fivefish130.html2excel.richtext.parser.ConversionBudget;
+import io.github.fivefish130.html2excel.richtext.parser.HtmlEvents;
+import io.github.fivefish130.html2excel.richtext.parser.HtmlPreScanner;
+import io.github.fivefish130.html2excel.richtext.parser.HtmlTokenizer;
+import io.github.fivefish130.html2excel.richtext.parser.InputTier;
+import io.github.fivefish130.html2excel.richtext.parser.RichTextHandler;
+import io.github.fivefish130.html2excel.richtext.parser.Stylesheet;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.parser.Parser;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Workbook-independent parse stage: HTML to {@link CompiledRichText}
+ * <p>
+ * Holds everything that doesn't depend on a workbook: configuration, the shared
+ * stylesheet, the HTML fragment cache and parse statistics. Instances are thread-safe,
+ * so one compiler can serve all exports of a process and keep its cache warm, while
+ * each workbook gets a cheap, single-threaded {@link HtmlToExcelConverter} binding the
+ * compiled runs to fonts, styles, hyperlinks and pictures:
+ * <pre>
+ * HtmlCompiler compiler = new HtmlCompiler(config);   // once per process
+ *
+ * HtmlToExcelConverter converter = new HtmlToExcelConverter(workbook, compiler);   // per export
+ * </pre>
+ *
+ * @author fivefish130
+ */
+public class HtmlCompiler {
+
+    private final ConverterConfig config;
+    private final HtmlCache htmlCache;
+    private final Stylesheet stylesheet;
+
+    // Statistics
+    private final AtomicLongArray tierCounts = new AtomicLongArray(InputTier.values().length);
+    private final AtomicLong jsoupFallbackCount = new AtomicLong();
+    private final AtomicLong limitFallbackCount = new AtomicLong();
+
+    /**
+     * Create compiler with default configuration
+     */
+    public HtmlCompiler() {
+        this(new ConverterConfig());
+    }
+
+    /**
+     * Create compiler with custom configuration
+     *
+     * @param config Converter configuration
+     */
+    public HtmlCompiler(ConverterConfig config) {
+        this.config = Objects.requireNonNull(config, "config cannot be null");
+        this.htmlCache = config.isEnableHtmlCache()
+                ? new HtmlCache(config.getHtmlCacheMaxEntries(), config.getHtmlCacheMaxWeight())
+                : null;
+        this.stylesheet = Stylesheet.parse(config.getStylesheet());
+    }
+
+    /**
+     * Compile HTML into a workbook-independent run model
+     *
+     * @param html HTML string
+     * @return Compiled rich text
+     * @see HtmlToExcelConverter#compile(String)
+     */
+    public CompiledRichText compile(String html) {
+        return compile(html, null);
+    }
+
+    /**
+     * Compile HTML read from a stream, for fragments too large to hold in memory
+     *
+     * @param html HTML source, not closed by this method
+     * @return Compiled rich text
+     * @throws IOException if reading fails
+     * @see HtmlToExcelConverter#compile(Reader)
+     */
+    public CompiledRichText compile(Reader html) throws IOException {
+        Objects.requireNonNull(html, "html cannot be null");
+        RichTextBuilder rich = new RichTextBuilder();
+        rich.setMaxLength(config.getMaxCellLength(), config.getTruncateSuffix());
+        RichTextHandler handler = newHandler(rich, newBudget());
+        HtmlEvents.parse(html, handler);
+        countLimitFallback(handler);
+        return rich.build();
+    }
+
+    /**
+     * Compile an HTML template with {@code ${name}} placeholders
+     *
+     * @param markup HTML template
+     * @return Compiled template
+     * @see HtmlToExcelConverter#compileTemplate(String)
+     */
+    public HtmlTemplate compileTemplate(String markup) {
+        Objects.requireNonNull(markup, "markup cannot be null");
+        return new HtmlTemplate(markup, this::compileSkeleton, config.getMaxCellLength(),
+                config.getTruncateSuffix());
+    }
+
+    /**
+     * Compile a template variant into the template's builder, which has no length limit
+     * so no placeholder is cut off
+     */
+    private void compileSkeleton(String html, RichTextBuilder rich) {
+        if (!html.isEmpty()) {
+            parseInto(html, HtmlPreScanner.classify(html), rich, null);
+        }
+    }
+
+    /**
+     * Compile HTML, reusing the buffers of one batch call if given
+     */
+    CompiledRichText compile(String html, ParseBuffers buffers) {
+        if (html == null || html.isEmpty()) {
+            return CompiledRichText.EMPTY;
+        }
+
+        InputTier tier = HtmlPreScanner.classify(html);
+        tierCounts.incrementAndGet(tier.ordinal());
+        // Plain text is cheaper to convert than to look up
+        if (htmlCache == null || tier == InputTier.PLAIN_TEXT) {
+            return parse(html, tier, buffers, config.getMaxCellLength());
+        }
+
+        CompiledRichText compiled = htmlCache.get(html);
+        if (compiled == null) {
+            compiled = parse(html, tier, buffers, config.getMaxCellLength());
+            htmlCache.put(html, compiled);
+        }
+        return compiled;
+    }
+
+    /**
+     * Compile full HTML with its first-level tables expanded (see
+     * {@link RichTextHandler#setTableExpansion(int, String)}); the text outside tables is
+     * left in the buffers' builder
+     *
+     * @return Expanded tables
+     */
+    List<CompiledTable> compileTables(String html, ParseBuffers buffers) {
+        tierCounts.incrementAndGet(InputTier.FULL_HTML.ordinal());
+        RichTextBuilder rich = buffers.rich;
+        rich.reset();
+        rich.setMaxLength(config.getMaxCellLength(), config.getTruncateSuffix());
+        ConversionBudget budget = newBudget();
+        RichTextHandler handler = newTableHandler(rich, budget);
+        if (!HtmlTokenizer.tokenize(html, handler)) {
+            rich.reset();
+            jsoupFallbackCount.incrementAndGet();
+            handler = newTableHandler(rich, budget);
+            HtmlEvents.walk(buffers.parseBody(html), handler);
+        }
+        countLimitFallback(handler);
+        return handler.getTables();
+    }
+
+    /**
+     * Convert HTML into a new or the batch's builder and build it
+     */
+    private CompiledRichText parse(String html, InputTier tier, ParseBuffers buffers, int maxLength) {
+        RichTextBuilder rich;
+        if (buffers != null) {
+            rich = buffers.rich;
+            rich.reset();
+        } else {
+            rich = new RichTextBuilder();
+        }
+        // Conversion stops reading input once the cell limit is reached
+        rich.setMaxLength(maxLength, config.getTruncateSuffix());
+        parseInto(html, tier, rich, buffers);
+        return rich.build();
+    }
+
+    /**
+     * Convert HTML into a caller-supplied builder, bypassing the cache (used by
+     * {@link PlainTextConverter}, which only needs the text)
+     *
+     * @param html HTML string, not empty
+     * @param rich Target builder, with its length limit set
+     */
+    void parseInto(String html, RichTextBuilder rich) {
+        InputTier tier = HtmlPreScanner.classify(html);
+        tierCounts.incrementAndGet(tier.ordinal());
+        parseInto(html, tier, rich, null);
+    }
+
+    /**
+     * Convert HTML, skipping the DOM for inputs below {@link InputTier#FULL_HTML} and for
+     * full HTML the native tokenizer supports (reusing the batch's parser if given)
+     * <p>
+     * The fast paths are linear in the input and not subject to the depth, node and time
+     * limits; the tokenizer and Jsoup fall back to plain text once a limit is exceeded.
+     */
+    private void parseInto(String html, InputTier tier, RichTextBuilder rich, ParseBuffers buffers) {
+        // Stylesheet rules may style the simple inline tags too
+        if (tier != InputTier.FULL_HTML && (tier != InputTier.SIMPLE_INLINE || stylesheet.isEmpty())) {
+            if (HtmlPreScanner.emit(html, tier, rich)) {
+                return;
+            }
+            rich.reset();
+        }
+
+        // Shared by both attempts so the time budget covers the whole cell
+        ConversionBudget budget = newBudget();
+        RichTextHandler handler = newHandler(rich, budget);
+        if (HtmlTokenizer.tokenize(html, handler)) {
+            countLimitFallback(handler);
+            return;
+        }
+        rich.reset();
+
+        // Fall back to Jsoup for markup the tokenizer can't reproduce exactly
+        jsoupFallbackCount.incrementAndGet();
+        Element body = buffers != null ? buffers.parseBody(html) : Jsoup.parseBodyFragment(html).body();
+        handler = newHandler(rich, budget);
+        HtmlEvents.walk(body, handler);
+        countLimitFallback(handler);
+    }
+
+    private ConversionBudget newBudget() {
+        return new ConversionBudget(config.getMaxDepth(), config.getMaxNodes(), config.getCellTimeBudgetMillis());
+    }
+
+    private RichTextHandler newHandler(RichTextBuilder rich, ConversionBudget budget) {
+        RichTextHandler handler = new RichTextHandler(rich);
+        handler.setBudget(budget);
+        handler.setStylesheet(stylesheet);
+        return handler;
+    }
+
+    private RichTextHandler newTableHandler(RichTextBuilder rich, ConversionBudget budget) {
+        RichTextHandler handler = newHandler(rich, budget);
+        handler.setTableExpansion(config.getMaxCellLength(), config.getTruncateSuffix());
+        return handler;
+    }
+
+    private void countLimitFallback(RichTextHandler handler) {
+        if (handler.isBudgetExceeded()) {
+            limitFallbackCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Get current configuration
+     *
+     * @return Converter configuration
+     */
+    public ConverterConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * Get HTML fragment cache statistics
+     *
+     * @return Number of cached HTML fragments (0 if the cache is disabled)
+     */
+    public int getHtmlCacheSize() {
+        return htmlCache != null ? htmlCache.size() : 0;
+    }
+
+    /**
+     * Get HTML fragment cache hit count
+     *
+     * @return Number of compilations served from the cache
+     */
+    public long getHtmlCacheHitCount() {
+        return htmlCache != null ? htmlCache.hitCount() : 0;
+    }
+
+    /**
+     * Get HTML fragment cache miss count
+     *
+     * @return Number of compilations that had to parse the HTML
+     */
+    public long getHtmlCacheMissCount() {
+        return htmlCache != null ? htmlCache.missCount() : 0;
+    }
+
+    /**
+     * Get HTML fragment cache eviction count
+     *
+     * @return Number of fragments evicted to make room for more frequent ones
+     */
+    public long getHtmlCacheEvictionCount() {
+        return htmlCache != null ? htmlCache.evictionCount() : 0;
+    }
+
+    /**
+     * Get the number of compiled inputs per pre-scan tier
+     * <p>
+     * Every compilation is counted, including those served from the HTML cache.
+     *
+     * @param tier Input tier
+     * @return Number of inputs classified as the given tier
+     */
+    public long getTierCount(InputTier tier) {
+        return tierCounts.get(tier.ordinal());
+    }
+
+    /**
+     * Get the number of inputs that had to be parsed with Jsoup
+     *
+     * @return Number of Jsoup parses
+     */
+    public long getJsoupFallbackCount() {
+        return jsoupFallbackCount.get();
+    }
+
+    /**
+     * Get the number of inputs converted to plain text because they exceeded the
+     * depth, node or time limit
+     *
+     * @return Number of inputs that fell back to plain text
+     */
+    public long getLimitFallbackCount() {
+        return limitFallbackCount.get();
+    }
+
+    /**
+     * Clear the HTML fragment cache
+     */
+    public void clearCache() {
+        if (htmlCache != null) {
+            htmlCache.clear();
+        }
+    }
+
+    /**
+     * Parser and buffers reused by all cells of one batch call (single-threaded)
+     */
+    static final class ParseBuffers {
+        private final Parser parser = Parser.htmlParser();
+        private final Element body = Document.createShell("").body();
+        private final RichTextBuilder rich = new RichTextBuilder();
+
+        /**
+         * Get the builder, holding the text outside tables after {@link HtmlCompiler#compileTables}
+         */
+        RichTextBuilder rich() {
+            return rich;
+        }
+
+        /**
+         * Parse HTML into the reused body element
+         */
+        Element parseBody(String html) {
+            body.empty();
+            body.appendChildren(parser.parseFragmentInput(html, body, ""));
+            return body;
+        }
+    }
+}
@@ -0,0 +1,327 @@
+package io.github.fivefish130.html2excel.richtext;
+
+import io.github.fivefish130.html2excel.richtext.builder.RichTextBuilder;
+import io.github.fivefish130.html2excel.richtext.cache.ParseCache;
+import io.github.fivefish130.html2excel.richtext.model.CompiledRichText;
+import io.github.fivefish130.html2excel.richtext.model.RunStyle;
+import io.github.fivefish130.html2excel.richtext.model.WhiteSpace;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * HTML template with {@code ${name}} placeholders, compiled once and filled without parsing
+ * <p>
+ * Placeholders in text become slots of a run skeleton: filling appends the values as text
+ * (never as markup) with the style of their position. Placeholders inside tags (e.g.
+ * {@code style="color:${c}"}) change styles or links, so each distinct combination of their
+ * values is compiled once and cached.
+ * <p>
+ * Instances are thread-safe. Create them with {@link HtmlToExcelConverter#compileTemplate(String)}.
+ *
+ * @author fivefish130
+ */
+public final class HtmlTemplate {
+
+    // Text placeholders are compiled as private-use characters
+    private static final char SLOT_BASE = '\uE000';
+    private static final char SLOT_LIMIT = '\uF8FF';
+
+    // Separates attribute values in variant cache keys
+    private static final char KEY_SEPARATOR = '\0';
+
+    private final BiConsumer<String, RichTextBuilder> compiler;
+    private final int maxLength;
+    private final String truncateSuffix;
+
+    // Markup split at attribute placeholders
+    private final String[] parts;
+    private final String[] attributeNames;
+    private final String[] slotNames;
+
+    // Skeleton of templates without attribute placeholders, otherwise one per variant
+    private final Skeleton fixed;
+    private final ParseCache<Skeleton> variants;
+
+    HtmlTemplate(String markup, BiConsumer<String, RichTextBuilder> compiler, int maxLength, String truncateSuffix) {
+        this.compiler = compiler;
+        this.maxLength = maxLength;
+        this.truncateSuffix = truncateSuffix;
+
+        List<String> partList = new ArrayList<>();
+        List<String> attributes = new ArrayList<>();
+        List<String> slots = new ArrayList<>();
+        StringBuilder part = new StringBuilder(markup.length());
+        boolean inTag = false;
+        char quote = 0;
+        int length = markup.length();
+        for (int i = 0; i < length; i++) {
+            char c = markup.charAt(i);
+            if (c >= SLOT_BASE && c <= SLOT_LIMIT) {
+                throw new IllegalArgumentException("Template must not contain private-use characters");
+            }
+            if (c == '$' && i + 1 < length && markup.charAt(i + 1) == '{') {
+                int close = markup.indexOf('}', i + 2);
+                if (close > 0) {
+                    String name = markup.substring(i + 2, close).trim();
+                    if (inTag) {
+                        partList.add(part.toString());
+                        part.setLength(0);
+                        attributes.add(name);
+                    } else {
+                        if (SLOT_BASE + slots.size() > SLOT_LIMIT) {
+                            throw new IllegalArgumentException("Too many placeholders");
+                        }
+                        part.append((char) (SLOT_BASE + slots.size()));
+                        slots.add(name);
+                    }
+                    i = close;
+                    continue;
+                }
+            }
+
+            // Track tags, so placeholders in attributes are told apart from text
+            if (inTag) {
+                if (quote != 0) {
+                    if (c == quote) {
+                        quote = 0;
+                    }
+                } else if (c == '"' || c == '\'') {
+                    quote = c;
+                } else if (c == '>') {
+                    inTag = false;
+                }
+            } else if (c == '<' && i + 1 < length && isTagStart(markup.charAt(i + 1))) {
+                inTag = true;
+            }
+            part.append(c);
+        }
+        partList.add(part.toString());
+
+        this.parts = partList.toArray(new String[0]);
+        this.attributeNames = attributes.toArray(new String[0]);
+        this.slotNames = slots.toArray(new String[0]);
+        if (attributeNames.length == 0) {
+            this.fixed = compileVariant(parts[0]);
+            this.variants = null;
+        } else {
+            this.fixed = null;
+            this.variants = new ParseCache<>(256, 4096);
+        }
+    }
+
+    /**
+     * Produce the rich text for a set of values
+     * <p>
+     * Missing or null values are empty. Text values are never parsed; their whitespace is
+     * handled like text at the placeholder's position (collapsed, or kept inside
+     * {@code <pre>}). Text longer than the converter's
+     * {@link io.github.fivefish130.html2excel.richtext.config.ConverterConfig#getMaxCellLength()}
+     * is truncated.
+     *
+     * @param values Placeholder values by name
+     * @return Compiled rich text
+     */
+    public CompiledRichText fill(Map<String, ?> values) {
+        Skeleton skeleton = fixed != null ? fixed : variants.get(variantKey(values), this::compileMarkup);
+
+        RichTextBuilder rich = new RichTextBuilder();
+        rich.setMaxLength(maxLength, truncateSuffix);
+        for (int i = 0; i < skeleton.slots.length && !rich.isTruncated(); i++) {
+            int slot = skeleton.slots[i];
+            if (slot < 0) {
+                rich.append(skeleton.literals[i], skeleton.styles[i]);
+            } else {
+                String value = valueOf(values, slotNames[slot]);
+                rich.appendText(value, 0, value.length(), skeleton.styles[i], skeleton.whiteSpaces[i]);
+            }
+        }
+        if (skeleton.background != CompiledRichText.NO_BACKGROUND) {
+            rich.setBackgroundColorIfAbsent(skeleton.background);
+        }
+        if (skeleton.firstHref != null) {
+            rich.setFirstHrefIfAbsent(skeleton.firstHref);
+        }
+        for (String src : skeleton.imageSources) {
+            rich.addImageSource(src);
+        }
+        return rich.build();
+    }
+
+    /**
+     * Get the number of text placeholders
+     */
+    public int getSlotCount() {
+        return slotNames.length;
+    }
+
+    /**
+     * Get the number of placeholders inside tags
+     */
+    public int getAttributePlaceholderCount() {
+        return attributeNames.length;
+    }
+
+    private String variantKey(Map<String, ?> values) {
+        StringBuilder key = new StringBuilder();
+        for (int i = 0; i < attributeNames.length; i++) {
+            if (i > 0) {
+                key.append(KEY_SEPARATOR);
+            }
+            String value = valueOf(values, attributeNames[i]);
+            for (int j = 0; j < value.length(); j++) {
+                char c = value.charAt(j);
+                if (c != KEY_SEPARATOR) {
+                    key.append(c);
+                }
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * Substitute escaped attribute values into the markup and compile it
+     */
+    private Skeleton compileMarkup(String key) {
+        StringBuilder markup = new StringBuilder(parts[0]);
+        int start = 0;
+        for (int i = 1; i < parts.length; i++) {
+            int end = key.indexOf(KEY_SEPARATOR, start);
+            if (end < 0) {
+                end = key.length();
+            }
+            escapeAttribute(key, start, end, markup);
+            markup.append(parts[i]);
+            start = end + 1;
+        }
+        return compileVariant(markup.toString());
+    }
+
+    private Skeleton compileVariant(String markup) {
+        SkeletonBuilder rich = new SkeletonBuilder(slotNames.length);
+        compiler.accept(markup, rich);
+        return new Skeleton(rich.build(), rich.slotWhiteSpaces);
+    }
+
+    private static void escapeAttribute(String value, int start, int end, StringBuilder out) {
+        for (int i = start; i < end; i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '&':
+                    out.append("&amp;");
+                    break;
+                case '<':
+                    out.append("&lt;");
+                    break;
+                case '>':
+                    out.append("&gt;");
+                    break;
+                case '"':
+                    out.append("&quot;");
+                    break;
+                case '\'':
+                    out.append("&#39;");
+                    break;
+                default:
+                    out.append(c);
+            }
+        }
+    }
+
+    private static String valueOf(Map<String, ?> values, String name) {
+        Object value = values.get(name);
+        return value == null ? "" : value.toString();
+    }
+
+    private static boolean isTagStart(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '/' || c == '!' || c == '?';
+    }
+
+    /**
+     * Builder recording the white-space handling of the text each slot was compiled in
+     */
+    private static final class SkeletonBuilder extends RichTextBuilder {
+        private final WhiteSpace[] slotWhiteSpaces;
+
+        SkeletonBuilder(int slotCount) {
+            slotWhiteSpaces = new WhiteSpace[slotCount];
+            Arrays.fill(slotWhiteSpaces, WhiteSpace.NORMAL);
+        }
+
+        @Override
+        public void appendText(CharSequence s, int start, int end, RunStyle style, WhiteSpace whiteSpace) {
+            for (int i = start; i < end; i++) {
+                int slot = s.charAt(i) - SLOT_BASE;
+                if (slot >= 0 && slot < slotWhiteSpaces.length) {
+                    slotWhiteSpaces[slot] = whiteSpace;
+                }
+            }
+            super.appendText(s, start, end, style, whiteSpace);
+        }
+    }
+
+    /**
+     * Compiled template text split into styled literals and placeholder slots
+     */
+    private static final class Skeleton {
+        private final String[] literals;
+        private final RunStyle[] styles;
+        // White-space handling of slot values
+        private final WhiteSpace[] whiteSpaces;
+        // Slot index, or -1 for a literal
+        private final int[] slots;
+        private final int background;
+        private final String firstHref;
+        private final List<String> imageSources;
+
+        Skeleton(CompiledRichText compiled, WhiteSpace[] slotWhiteSpaces) {
+            int slotCount = slotWhiteSpaces.length;
+            List<String> literalList = new ArrayList<>();
+            List<RunStyle> styleList = new ArrayList<>();
+            List<Integer> slotList = new ArrayList<>();
+            String text = compiled.getText();
+            int pos = 0;
+            for (int run = 0; run <= compiled.getRunCount(); run++) {
+                // Text before the first run and the runs themselves
+                int start = run == 0 ? 0 : compiled.getRunStart(run - 1);
+                int end = run < compiled.getRunCount() ? compiled.getRunStart(run) : text.length();
+                RunStyle style = run == 0 ? null : compiled.getRunStyle(run - 1);
+                for (int i = start; i < end; i++) {
+                    int slot = text.charAt(i) - SLOT_BASE;
+                    if (slot >= 0 && slot < slotCount) {
+                        if (i > pos) {
+                            literalList.add(text.substring(pos, i));
+                            styleList.add(style);
+                            slotList.add(-1);
+                        }
+                        literalList.add(null);
+                        styleList.add(style);
+                        slotList.add(slot);
+                        pos = i + 1;
+                    }
+                }
+                if (end > pos) {
+                    literalList.add(text.substring(pos, end));
+                    styleList.add(style);
+                    slotList.add(-1);
+                    pos = end;
+                }
+            }
+
+            this.literals = literalList.toArray(new String[0]);
+            this.styles = styleList.toArray(new RunStyle[0]);
+            this.slots = new int[slotList.size()];
+            this.whiteSpaces = new WhiteSpace[slots.length];
+            for (int i = 0; i < slots.length; i++) {
+                slots[i] = slotList.get(i);
+                whiteSpaces[i] = slots[i] < 0 ? null : slotWhiteSpaces[slots[i]];
+            }
+            this.background = compiled.getBackgroundColor();
+            this.firstHref = compiled.getFirstHref();
+            this.imageSources = compiled.getImageSources();
+        }
+    }
+}
@@ -7,16 +7,31 @@ import io.github.fivefish130.html2excel.richtext.config.ConverterConfig;
 import io.github.fivefish130.html2excel.richtext.handler.BackgroundHandler;
 import io.github.fivefish130.html2excel.richtext.handler.HyperlinkHandler;
 import io.github.fivefish130.html2excel.richtext.handler.ImageHandler;
-import io.github.fivefish130.html2excel.richtext.parser.HtmlTraverser;
-import org.apache.poi.xssf.usermodel.XSSFCell;
+import io.github.fivefish130.html2excel.richtext.model.CellHtml;
+import io.github.fivefish130.html2excel.richtext.model.CompiledRichText;
+import io.github.fivefish130.html2excel.richtext.model.CompiledTable;
+import io.github.fivefish130.html2excel.richtext.model.RunStyle;
+import io.github.fivefish130.html2excel.richtext.model.TableCell;
+import io.github.fivefish130.html2excel.richtext.model.TableLayout;
+import io.github.fivefish130.html2excel.richtext.parser.HtmlTokenizer;
+import io.github.fivefish130.html2excel.richtext.parser.InputTier;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Drawing;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.apache.poi.xssf.usermodel.XSSFRichTextString;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
-import org.jsoup.nodes.Element;
 
-import java.util.HashMap;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * HTML to Excel Rich Text Converter (Facade)
@@ -30,6 +45,8 @@ import java.util.Objects;
  * - High fault tolerance (Jsoup auto-fixes malformed HTML)
  * - Font/Style caching for performance
  * - Long text auto-truncation
+ * - DOM-free fast paths for plain text, entities/line breaks and simple inline formatting
+ * - Works with both {@link XSSFWorkbook} and streaming {@link SXSSFWorkbook}
  * <p>
  * Example:
  * <pre>
@@ -39,51 +56,88 @@ import java.util.Objects;
  * HtmlToExcelConverter converter = new HtmlToExcelConverter(workbook);
  * converter.applyHtmlToCell(cell, "&lt;p&gt;&lt;b&gt;Bold&lt;/b&gt; &lt;i&gt;Italic&lt;/i&gt;&lt;/p&gt;");
  * </pre>
+ * <p>
+ * To convert many values at once, prefer {@link #applyHtmlToCells(Iterable)} or
+ * {@link #applyHtmlToColumn(Sheet, int, int, Iterable)}.
+ * <p>
+ * For large exports, pass an {@link SXSSFWorkbook} instead. Fonts and styles are
+ * shared with the backing {@link XSSFWorkbook}, so rich text, backgrounds, hyperlinks
+ * and pictures work on rows inside the sliding window. Formatting runs are only kept
+ * when the streaming workbook uses a shared strings table
+ * ({@code new SXSSFWorkbook(null, window, true, true)}); inline strings are plain text.
+ * <p>
+ * Parsing is done by an {@link HtmlCompiler}. To share its HTML cache across concurrent
+ * exports, create one compiler and a converter per workbook with
+ * {@link #HtmlToExcelConverter(Workbook, HtmlCompiler)}; parse statistics (tier,
+ * Jsoup and limit fallback counts, cache counters) are then those of the shared compiler.
+ * A converter itself is not thread-safe.
  *
  * @author fivefish130
  * @since 1.0.0
  */
 public class HtmlToExcelConverter {
 
-    private final XSSFWorkbook workbook;
+    private final Workbook workbook;
     private final ConverterConfig config;
 
     // Core components
+    private final HtmlCompiler compiler;
     private final FontCache fontCache;
     private final StyleCache styleCache;
     private final FontBuilder fontBuilder;
     private final BackgroundHandler backgroundHandler;
     private final HyperlinkHandler hyperlinkHandler;
     private final ImageHandler imageHandler;
-    private final HtmlTraverser htmlTraverser;
+
+    // Statistics
+    private final AtomicLong truncatedCount = new AtomicLong();
+    private final AtomicLong singleRunCount = new AtomicLong();
 
     /**
      * Create converter with default configuration
      *
-     * @param workbook Excel workbook
+     * @param workbook Excel workbook ({@link XSSFWorkbook} or {@link SXSSFWorkbook})
      */
-    public HtmlToExcelConverter(XSSFWorkbook workbook) {
+    public HtmlToExcelConverter(Workbook workbook) {
         this(workbook, new ConverterConfig());
     }
 
     /**
      * Create converter with custom configuration
      *
-     * @param workbook Excel workbook
+     * @param workbook Excel workbook ({@link XSSFWorkbook} or {@link SXSSFWorkbook})
      * @param config Converter configuration
      */
-    public HtmlToExcelConverter(XSSFWorkbook workbook, ConverterConfig config) {
+    public HtmlToExcelConverter(Workbook workbook, ConverterConfig config) {
+        this(workbook, new HtmlCompiler(config));
+    }
+
+    /**
+     * Create converter binding HTML compiled by a shared compiler to a workbook
+     * <p>
+     * The compiler (its configuration, stylesheet, HTML cache and parse statistics) can
+     * be shared by converters of any number of workbooks and threads; the converter
+     * itself only holds the workbook's fonts, styles, hyperlinks and pictures and is
+     * cheap to create.
+     *
+     * @param workbook Excel workbook ({@link XSSFWorkbook} or {@link SXSSFWorkbook})
+     * @param compiler Shared, thread-safe parse stage
+     */
+    public HtmlToExcelConverter(Workbook workbook, HtmlCompiler compiler) {
         this.workbook = Objects.requireNonNull(workbook, "workbook cannot be null");
-        this.config = Objects.requireNonNull(config, "config cannot be null");
+        this.compiler = Objects.requireNonNull(compiler, "compiler cannot be null");
+        this.config = compiler.getConfig();
+
+        // Fonts and cell styles always live in the XSSF styles table, even for SXSSF
+        XSSFWorkbook stylesWorkbook = toXssfWorkbook(workbook);
 
         // Initialize components
-        this.fontCache = new FontCache(workbook, config.isEnableFontCache());
-        this.styleCache = new StyleCache(workbook, config.isEnableStyleCache());
-        this.fontBuilder = new FontBuilder(workbook, fontCache);
-        this.backgroundHandler = new BackgroundHandler(workbook, styleCache);
+        this.fontCache = new FontCache(stylesWorkbook, config.isEnableFontCache(), config.getMaxFonts());
+        this.styleCache = new StyleCache(stylesWorkbook, config.isEnableStyleCache(), config.getMaxCellStyles());
+        this.fontBuilder = new FontBuilder(stylesWorkbook, fontCache);
+        this.backgroundHandler = new BackgroundHandler(stylesWorkbook, styleCache);
         this.hyperlinkHandler = new HyperlinkHandler(workbook);
         this.imageHandler = new ImageHandler(config);
-        this.htmlTraverser = new HtmlTraverser(fontBuilder, backgroundHandler);
     }
 
     /**
@@ -93,56 +147,328 @@ public class HtmlToExcelConverter {
      * @return Rich text string with formatting
      */
     public XSSFRichTextString convertToRichText(String html) {
-        Document doc = Jsoup.parseBodyFragment(defaultIfNull(html));
-        Element body = doc.body();
+        return bindRichText(compile(html));
+    }
 
-        XSSFRichTextString rich = new XSSFRichTextString("");
-        htmlTraverser.traverse(body, new HashMap<>(), rich, null);
-        return rich;
+    /**
+     * Convert HTML read from a stream to Excel rich text
+     *
+     * @param html HTML source (see {@link #compile(Reader)})
+     * @return Rich text string with formatting
+     * @throws IOException if reading fails
+     */
+    public XSSFRichTextString convertToRichText(Reader html) throws IOException {
+        return bindRichText(compile(html));
+    }
+
+    /**
+     * Bind compiled HTML to this workbook's fonts (text only, no cell styling)
+     *
+     * @param compiled Compiled HTML (see {@link #compile(String)})
+     * @return Rich text string with formatting
+     */
+    public XSSFRichTextString bindRichText(CompiledRichText compiled) {
+        Objects.requireNonNull(compiled, "compiled cannot be null");
+        return fontBuilder.buildRichText(compiled);
+    }
+
+    /**
+     * Compile HTML into a workbook-independent run model
+     * <p>
+     * The result is immutable and thread-safe, can be stored in binary form
+     * ({@link CompiledRichText#toBytes()}) and applied to cells of any workbook later
+     * without parsing the HTML again.
+     * <p>
+     * If the HTML cache is enabled ({@link ConverterConfig.Builder#enableHtmlCache(boolean)}),
+     * repeated fragments are served from it.
+     * <p>
+     * Text longer than {@link ConverterConfig#getMaxCellLength()} is truncated while
+     * converting, keeping the formatting of the retained prefix
+     * (see {@link CompiledRichText#isTruncated()}).
+     *
+     * @param html HTML string
+     * @return Compiled rich text
+     */
+    public CompiledRichText compile(String html) {
+        return compiler.compile(html);
+    }
+
+    /**
+     * Compile an HTML template with {@code ${name}} placeholders
+     * <p>
+     * The markup is parsed once into a run skeleton; {@link HtmlTemplate#fill(Map)} then
+     * produces the rich text for a set of values without parsing HTML. Values are inserted
+     * as text, never as markup, e.g.
+     * {@code <b>${name}</b> - <span style="color:${c}">${status}</span>}.
+     *
+     * @param markup HTML template
+     * @return Compiled template
+     */
+    public HtmlTemplate compileTemplate(String markup) {
+        return compiler.compileTemplate(markup);
+    }
+
+    /**
+     * Compile HTML read from a stream, for fragments too large to hold in memory
+     * <p>
+     * The input is parsed incrementally and converted nodes are discarded as parsing
+     * proceeds, so memory is bounded by the output (at most
+     * {@link ConverterConfig#getMaxCellLength()} characters), not by the input. Reading
+     * stops as soon as the cell limit is reached. The HTML cache is not used.
+     *
+     * @param html HTML source, not closed by this method
+     * @return Compiled rich text
+     * @throws IOException if reading fails
+     */
+    public CompiledRichText compile(Reader html) throws IOException {
+        return compiler.compile(html);
     }
 
     /**
      * Apply HTML to cell (includes rich text, hyperlink, background, images)
      *
-     * @param cell Target cell
+     * @param cell Target cell (XSSF or SXSSF)
+     * @param html HTML string
+     */
+    public void applyHtmlToCell(Cell cell, String html) {
+        if (cell == null) {
+            throw new IllegalArgumentException("cell cannot be null");
+        }
+        applyCompiledToCell(cell, compile(html));
+    }
+
+    /**
+     * Apply HTML read from a stream to cell (includes rich text, hyperlink, background, images)
+     *
+     * @param cell Target cell (XSSF or SXSSF)
+     * @param html HTML source (see {@link #compile(Reader)})
+     * @throws IOException if reading fails
+     */
+    public void applyHtmlToCell(Cell cell, Reader html) throws IOException {
+        if (cell == null) {
+            throw new IllegalArgumentException("cell cannot be null");
+        }
+        apply(cell, compile(html), null);
+    }
+
+    /**
+     * Apply compiled HTML to cell (includes rich text, hyperlink, background, images)
+     *
+     * @param cell Target cell (XSSF or SXSSF)
+     * @param compiled Compiled HTML (see {@link #compile(String)})
+     */
+    public void applyCompiledToCell(Cell cell, CompiledRichText compiled) {
+        if (cell == null) {
+            throw new IllegalArgumentException("cell cannot be null");
+        }
+        Objects.requireNonNull(compiled, "compiled cannot be null");
+        apply(cell, compiled, null);
+    }
+
+    /**
+     * Apply HTML to many cells
+     * <p>
+     * Equivalent to calling {@link #applyHtmlToCell(Cell, String)} for each item, but the
+     * HTML parser, traversal buffers and each sheet's drawing patriarch are set up once
+     * for the whole batch instead of once per cell.
+     *
+     * @param cells Target cells with their HTML
+     */
+    public void applyHtmlToCells(Iterable<CellHtml> cells) {
+        Objects.requireNonNull(cells, "cells cannot be null");
+        BatchContext batch = new BatchContext();
+        for (CellHtml item : cells) {
+            apply(item.getCell(), compiler.compile(item.getHtml(), batch.buffers), batch);
+        }
+    }
+
+    /**
+     * Apply HTML to consecutive cells of a column
+     * <p>
+     * Rows and cells are created as needed. Uses the same amortized setup as
+     * {@link #applyHtmlToCells(Iterable)}.
+     *
+     * @param sheet Target sheet
+     * @param column Column index (0-based)
+     * @param firstRow Row index of the first value (0-based)
+     * @param htmls HTML strings, one per row
+     * @return Number of cells written
+     */
+    public int applyHtmlToColumn(Sheet sheet, int column, int firstRow, Iterable<String> htmls) {
+        Objects.requireNonNull(sheet, "sheet cannot be null");
+        Objects.requireNonNull(htmls, "htmls cannot be null");
+        BatchContext batch = new BatchContext();
+        int rowIndex = firstRow;
+        for (String html : htmls) {
+            Row row = sheet.getRow(rowIndex);
+            if (row == null) {
+                row = sheet.createRow(rowIndex);
+            }
+            Cell cell = row.getCell(column);
+            if (cell == null) {
+                cell = row.createCell(column);
+            }
+            apply(cell, compiler.compile(html, batch.buffers), batch);
+            rowIndex++;
+        }
+        return rowIndex - firstRow;
+    }
+
+    /**
+     * Apply HTML to cell, expanding its tables into cell grids
+     * <p>
+     * Text outside tables goes to the cell. Each first-level table becomes a grid with one
+     * sheet row per table row, starting below the cell or in the column right of it; further
+     * tables follow below. Every table cell gets its own rich text, font, background and
+     * hyperlink through the same caches as single cells, and colspan/rowspan become merged
+     * regions (a colspan ends where a rowspan from above covers the next column). Rows are written in ascending order after the cell, so streaming workbooks
+     * with a row window work as long as the window covers the cell's row. Nested tables are
+     * flattened into their cell. The cost is linear in the table size; the HTML cache is not used.
+     *
+     * @param cell Target cell (XSSF or SXSSF)
      * @param html HTML string
+     * @param layout Table placement, {@link TableLayout#INLINE} behaves like
+     *               {@link #applyHtmlToCell(Cell, String)}
+     * @return Range covering the cell and the written tables
      */
-    public void applyHtmlToCell(XSSFCell cell, String html) {
+    public CellRangeAddress applyHtmlWithTables(Cell cell, String html, TableLayout layout) {
         if (cell == null) {
             throw new IllegalArgumentException("cell cannot be null");
         }
+        Objects.requireNonNull(layout, "layout cannot be null");
+        int cellRow = cell.getRowIndex();
+        int cellColumn = cell.getColumnIndex();
+        if (layout == TableLayout.INLINE || html == null || !containsTable(html)) {
+            applyHtmlToCell(cell, html);
+            return new CellRangeAddress(cellRow, cellRow, cellColumn, cellColumn);
+        }
 
-        Document doc = Jsoup.parseBodyFragment(defaultIfNull(html));
-        Element body = doc.body();
+        BatchContext batch = new BatchContext();
+        List<CompiledTable> tables = compiler.compileTables(html, batch.buffers);
+        apply(cell, batch.buffers.rich().build(), batch);
 
-        // 1. Find first hyperlink
-        String firstHref = hyperlinkHandler.findFirstHref(body);
+        Sheet sheet = cell.getSheet();
+        int firstColumn = layout == TableLayout.BELOW ? cellColumn : cellColumn + 1;
+        int rowIndex = layout == TableLayout.BELOW ? cellRow + 1 : cellRow;
+        int lastColumn = cellColumn;
+        // Rows still covered by a rowspan, per grid column
+        int[] spanned = new int[8];
+        for (CompiledTable table : tables) {
+            Arrays.fill(spanned, 0);
+            for (List<TableCell> tableRow : table.getRows()) {
+                Row row = sheet.getRow(rowIndex);
+                if (row == null) {
+                    row = sheet.createRow(rowIndex);
+                }
+                int column = 0;
+                for (TableCell tableCell : tableRow) {
+                    while (column < spanned.length && spanned[column] > 0) {
+                        column++;
+                    }
+                    int colspan = tableCell.getColspan();
+                    int rowspan = tableCell.getRowspan();
+                    // A colspan ends at the first column still covered by a rowspan from above
+                    for (int i = 1; i < colspan; i++) {
+                        if (column + i < spanned.length && spanned[column + i] > 0) {
+                            colspan = i;
+                            break;
+                        }
+                    }
+                    if (column + colspan > spanned.length) {
+                        spanned = Arrays.copyOf(spanned, Math.max(spanned.length * 2, column + colspan));
+                    }
+                    Cell target = row.getCell(firstColumn + column);
+                    if (target == null) {
+                        target = row.createCell(firstColumn + column);
+                    }
+                    apply(target, tableCell.getContent(), batch);
+                    if (colspan > 1 || rowspan > 1) {
+                        // Placement only uses free columns and rows, so the regions never
+                        // overlap: skip the quadratic overlap check
+                        sheet.addMergedRegionUnsafe(new CellRangeAddress(rowIndex, rowIndex + rowspan - 1,
+                                firstColumn + column, firstColumn + column + colspan - 1));
+                    }
+                    Arrays.fill(spanned, column, column + colspan, rowspan);
+                    column += colspan;
+                }
+                lastColumn = Math.max(lastColumn, firstColumn + column - 1);
+                for (int i = 0; i < spanned.length; i++) {
+                    if (spanned[i] > 0) {
+                        spanned[i]--;
+                    }
+                }
+                rowIndex++;
+            }
+        }
+        return new CellRangeAddress(cellRow, Math.max(cellRow, rowIndex - 1), cellColumn, lastColumn);
+    }
 
-        // 2. Build rich text
-        XSSFRichTextString rich = new XSSFRichTextString("");
-        htmlTraverser.traverse(body, new HashMap<>(), rich, cell);
+    private static boolean containsTable(String html) {
+        int i = html.indexOf('<');
+        while (i >= 0) {
+            if (html.regionMatches(true, i + 1, "table", 0, 5)) {
+                return true;
+            }
+            i = html.indexOf('<', i + 1);
+        }
+        return false;
+    }
 
-        // 3. Set cell value (handle long text)
-        String fullText = rich.getString();
-        if (fullText.length() > config.getMaxCellLength()) {
-            int maxLength = config.getMaxCellLength() - config.getTruncateSuffix().length();
-            String truncated = fullText.substring(0, maxLength) + config.getTruncateSuffix();
-            cell.setCellValue(truncated);
+    private void apply(Cell cell, CompiledRichText compiled, BatchContext batch) {
+        // 1. Set cell value (precompiled text may exceed this converter's limit)
+        compiled = compiled.truncate(config.getMaxCellLength(), config.getTruncateSuffix());
+        if (compiled.isTruncated()) {
+            truncatedCount.incrementAndGet();
+        }
+        // A single styled run on an unstyled cell becomes a plain string with a cell font,
+        // so identical values share one shared-strings entry
+        RunStyle uniform = config.isCollapseSingleRun() ? compiled.getUniformRunStyle() : null;
+        boolean wrap = config.isWrapMultilineText() && isMultiline(compiled.getText());
+        if (uniform != null && cell.getCellStyle().getIndex() == 0
+                && backgroundHandler.applyFont(cell, fontBuilder.buildFont(uniform), compiled.getBackgroundColor(), wrap)) {
+            // 2. Font, background color and wrap text were applied as the cell style
+            singleRunCount.incrementAndGet();
+            cell.setCellValue(compiled.getText());
         } else {
-            cell.setCellValue(rich);
+            cell.setCellValue(fontBuilder.buildRichText(compiled));
+
+            // 2. Apply background color and wrap text on top of the cell's style
+            if (compiled.hasBackgroundColor() || wrap) {
+                backgroundHandler.applyDelta(cell, compiled.getBackgroundColor(), wrap);
+            }
         }
 
-        // 4. Apply hyperlink
+        // 3. Apply hyperlink
+        String firstHref = compiled.getFirstHref();
         if (firstHref != null && !firstHref.trim().isEmpty()) {
             hyperlinkHandler.applyHyperlink(cell, firstHref);
         }
 
-        // 5. Process images
-        if (config.isEnableImageDownload()) {
-            imageHandler.processImages(body, cell);
+        // 4. Process images
+        if (config.isEnableImageDownload() && !compiled.getImageSources().isEmpty()) {
+            if (batch != null) {
+                imageHandler.processImages(compiled.getImageSources(), cell, batch.drawingFor(cell.getSheet()));
+            } else {
+                imageHandler.processImages(compiled.getImageSources(), cell);
+            }
         }
     }
 
+    /**
+     * Check if text shows several lines (a trailing line break alone doesn't count)
+     */
+    private static boolean isMultiline(String text) {
+        int lineBreak = text.indexOf('\n');
+        if (lineBreak < 0) {
+            return false;
+        }
+        int end = text.length();
+        while (end > 0 && text.charAt(end - 1) == '\n') {
+            end--;
+        }
+        return lineBreak < end;
+    }
+
     /**
      * Set image download timeout
      *
@@ -194,15 +520,175 @@ public class HtmlToExcelConverter {
         return styleCache.size();
     }
 
+    /**
+     * Get HTML fragment cache statistics
+     *
+     * @return Number of cached HTML fragments (0 if the cache is disabled)
+     */
+    public int getHtmlCacheSize() {
+        return compiler.getHtmlCacheSize();
+    }
+
+    /**
+     * Get HTML fragment cache hit count
+     *
+     * @return Number of compilations served from the cache
+     */
+    public long getHtmlCacheHitCount() {
+        return compiler.getHtmlCacheHitCount();
+    }
+
+    /**
+     * Get HTML fragment cache miss count
+     *
+     * @return Number of compilations that had to parse the HTML
+     */
+    public long getHtmlCacheMissCount() {
+        return compiler.getHtmlCacheMissCount();
+    }
+
+    /**
+     * Get HTML fragment cache eviction count
+     *
+     * @return Number of fragments evicted to make room for more frequent ones
+     */
+    public long getHtmlCacheEvictionCount() {
+        return compiler.getHtmlCacheEvictionCount();
+    }
+
+    /**
+     * Get the number of converted inputs per pre-scan tier
+     * <p>
+     * Every conversion is counted, including those served from the HTML cache.
+     *
+     * @param tier Input tier
+     * @return Number of inputs classified as the given tier
+     */
+    public long getTierCount(InputTier tier) {
+        return compiler.getTierCount(tier);
+    }
+
+    /**
+     * Get the number of inputs that had to be parsed with Jsoup
+     * <p>
+     * Full HTML is tokenized natively unless it contains markup Jsoup would restructure
+     * (see {@link HtmlTokenizer}).
+     *
+     * @return Number of Jsoup parses
+     */
+    public long getJsoupFallbackCount() {
+        return compiler.getJsoupFallbackCount();
+    }
+
+    /**
+     * Get the number of cells whose text was truncated to the maximum cell length
+     *
+     * @return Number of truncated cell values
+     */
+    public long getTruncatedCount() {
+        return truncatedCount.get();
+    }
+
+    /**
+     * Get the number of cells converted to plain text because they exceeded
+     * {@link ConverterConfig#getMaxDepth()}, {@link ConverterConfig#getMaxNodes()} or
+     * {@link ConverterConfig#getCellTimeBudgetMillis()}
+     *
+     * @return Number of cells that fell back to plain text
+     */
+    public long getLimitFallbackCount() {
+        return compiler.getLimitFallbackCount();
+    }
+
+    /**
+     * Get the number of cells whose single styled run was written as a plain string with a
+     * cell font (see {@link ConverterConfig.Builder#collapseSingleRun(boolean)})
+     *
+     * @return Number of collapsed cells
+     */
+    public long getSingleRunCount() {
+        return singleRunCount.get();
+    }
+
+    /**
+     * Get the number of font requests mapped to an existing font because the font budget
+     * was reached (see {@link ConverterConfig.Builder#styleBudget(int, int)})
+     *
+     * @return Number of quantized font requests
+     */
+    public long getQuantizedFontCount() {
+        return fontCache.getQuantizedCount();
+    }
+
+    /**
+     * Get the number of cell style requests mapped to an existing style, or skipped,
+     * because the cell style budget was reached
+     *
+     * @return Number of quantized style requests
+     */
+    public long getQuantizedStyleCount() {
+        return styleCache.getQuantizedCount();
+    }
+
     /**
      * Clear all caches
      */
     public void clearCaches() {
         fontCache.clear();
         styleCache.clear();
+        compiler.clearCache();
+    }
+
+    /**
+     * Get the parse stage of this converter, possibly shared with other converters
+     *
+     * @return HTML compiler
+     */
+    public HtmlCompiler getCompiler() {
+        return compiler;
+    }
+
+    /**
+     * Get the workbook this converter writes to
+     *
+     * @return Excel workbook
+     */
+    public Workbook getWorkbook() {
+        return workbook;
+    }
+
+    /**
+     * Resolve the XSSF workbook that owns fonts and styles
+     */
+    private static XSSFWorkbook toXssfWorkbook(Workbook workbook) {
+        if (workbook instanceof XSSFWorkbook) {
+            return (XSSFWorkbook) workbook;
+        }
+        if (workbook instanceof SXSSFWorkbook) {
+            return ((SXSSFWorkbook) workbook).getXSSFWorkbook();
+        }
+        throw new IllegalArgumentException("Unsupported workbook type: " + workbook.getClass().getName()
+                + " (only XSSFWorkbook and SXSSFWorkbook are supported)");
     }
 
-    private static String defaultIfNull(String s) {
-        return s == null ? "" : s;
+    /**
+     * State shared by all cells of one batch call
+     */
+    private static final class BatchContext {
+        private final HtmlCompiler.ParseBuffers buffers = new HtmlCompiler.ParseBuffers();
+        private Sheet sheet;
+        private Drawing<?> drawing;
+
+        /**
+         * Drawing patriarch of the sheet, looked up once while the sheet doesn't change
+         */
+        Drawing<?> drawingFor(Sheet target) {
+            if (target != sheet) {
+                sheet = target;
+                drawing = target.createDrawingPatriarch();
+            }
+            return drawing;
+        }
     }
+
 }
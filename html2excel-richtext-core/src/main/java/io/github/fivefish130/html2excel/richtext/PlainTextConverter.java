@@ -0,0 +1,97 @@
+package io.github.fivefish130.html2excel.richtext;
+
+import io.github.fivefish130.html2excel.richtext.builder.RichTextBuilder;
+import io.github.fivefish130.html2excel.richtext.config.ConverterConfig;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Objects;
+
+/**
+ * HTML to plain text converter for CSV export, search indexing and the like
+ * <p>
+ * Produces exactly the text {@link HtmlToExcelConverter} writes into a cell (bullets, list
+ * numbering, {@code " | "} table separators, line breaks, whitespace collapsing and
+ * truncation), using the same {@link HtmlCompiler} pipeline, but without formatting and
+ * without POI: no workbook, font or rich text string is created.
+ * <p>
+ * Instances are thread-safe.
+ *
+ * @author fivefish130
+ */
+public class PlainTextConverter {
+
+    private final HtmlCompiler compiler;
+
+    /**
+     * Create converter with default configuration
+     */
+    public PlainTextConverter() {
+        this(new ConverterConfig());
+    }
+
+    /**
+     * Create converter with custom configuration
+     * <p>
+     * Uses the text length and conversion limits; image and cache settings don't apply.
+     *
+     * @param config Converter configuration
+     */
+    public PlainTextConverter(ConverterConfig config) {
+        this(new HtmlCompiler(config));
+    }
+
+    /**
+     * Create converter sharing a compiler's configuration, stylesheet and statistics
+     *
+     * @param compiler HTML compiler
+     */
+    public PlainTextConverter(HtmlCompiler compiler) {
+        this.compiler = Objects.requireNonNull(compiler, "compiler cannot be null");
+    }
+
+    /**
+     * Convert HTML to plain text
+     *
+     * @param html HTML string
+     * @return Cell text
+     */
+    public String toPlainText(String html) {
+        StringBuilder out = new StringBuilder();
+        try {
+            toPlainText(html, out);
+        } catch (IOException e) {
+            // StringBuilder never throws
+            throw new UncheckedIOException(e);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Convert HTML to plain text, writing it to a target without intermediate strings
+     *
+     * @param html HTML string
+     * @param out Target (e.g. a CSV writer)
+     * @throws IOException if writing fails
+     */
+    public void toPlainText(String html, Appendable out) throws IOException {
+        Objects.requireNonNull(out, "out cannot be null");
+        if (html == null || html.isEmpty()) {
+            return;
+        }
+        ConverterConfig config = compiler.getConfig();
+        RichTextBuilder rich = new RichTextBuilder();
+        rich.setMaxLength(config.getMaxCellLength(), config.getTruncateSuffix());
+        compiler.parseInto(html, rich);
+        rich.writeText(out);
+    }
+
+    /**
+     * Get the compiler
+     *
+     * @return HTML compiler
+     */
+    public HtmlCompiler getCompiler() {
+        return compiler;
+    }
+}
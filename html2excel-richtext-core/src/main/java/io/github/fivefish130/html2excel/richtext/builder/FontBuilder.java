@@ -1,20 +1,30 @@
 package io.github.fivefish130.html2excel.richtext.builder;
 
 import io.github.fivefish130.html2excel.richtext.cache.FontCache;
+import io.github.fivefish130.html2excel.richtext.model.CompiledRichText;
+import io.github.fivefish130.html2excel.richtext.model.RunStyle;
 import io.github.fivefish130.html2excel.richtext.parser.ColorParser;
-import io.github.fivefish130.html2excel.richtext.parser.CssParser;
 import org.apache.poi.ss.usermodel.FontUnderline;
 import org.apache.poi.xssf.usermodel.XSSFColor;
 import org.apache.poi.xssf.usermodel.XSSFFont;
+import org.apache.poi.xssf.usermodel.XSSFRichTextString;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.xmlbeans.XmlCursor;
+import org.apache.xmlbeans.XmlString;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTColor;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTFont;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTRElt;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTRPrElt;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTRst;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.awt.Color;
+import javax.xml.namespace.QName;
 import java.util.Map;
 
 /**
  * Font builder to create XSSFFont from style properties
+ * and to bind compiled rich text to the workbook's fonts
  *
  * @author fivefish130
  */
@@ -22,74 +32,185 @@ public class FontBuilder {
 
     private static final Logger log = LoggerFactory.getLogger(FontBuilder.class);
 
+    private static final QName XML_SPACE = new QName("http://www.w3.org/XML/1998/namespace", "space");
+
     private final XSSFWorkbook workbook;
     private final FontCache fontCache;
-    private final CssParser cssParser;
 
     public FontBuilder(XSSFWorkbook workbook, FontCache fontCache) {
         this.workbook = workbook;
         this.fontCache = fontCache;
-        this.cssParser = new CssParser();
     }
 
     /**
      * Build or get cached font from style properties
      */
     public XSSFFont buildFont(Map<String, String> style) {
-        String cacheKey = FontCache.generateKey(style);
-        return fontCache.getOrCreate(cacheKey, wb -> createFont(wb, style));
+        return buildFont(RunStyle.resolve(style));
+    }
+
+    /**
+     * Build or get cached font from resolved run style
+     */
+    public XSSFFont buildFont(RunStyle style) {
+        // Look up before creating the creator lambda, so hits allocate nothing
+        XSSFFont font = fontCache.get(style);
+        return font != null ? font : fontCache.getOrCreate(style, wb -> createFont(wb, style));
+    }
+
+    /**
+     * Build rich text string for compiled runs
+     * <p>
+     * The CTRst runs are written in one pass; text without formatting stays a plain string.
+     *
+     * @param compiled Compiled rich text
+     * @return Rich text string using this workbook's fonts
+     */
+    public XSSFRichTextString buildRichText(CompiledRichText compiled) {
+        String text = compiled.getText();
+        if (!compiled.isFormatted()) {
+            return new XSSFRichTextString(text);
+        }
+
+        CTRst st = CTRst.Factory.newInstance();
+        int runCount = compiled.getRunCount();
+        if (compiled.getRunStart(0) > 0) {
+            addRun(st, text.substring(0, compiled.getRunStart(0)), null);
+        }
+        for (int i = 0; i < runCount; i++) {
+            int start = compiled.getRunStart(i);
+            int end = compiled.getRunEnd(i);
+            if (end > start) {
+                RunStyle style = compiled.getRunStyle(i);
+                addRun(st, text.substring(start, end), style == null ? null : buildFont(style));
+            }
+        }
+        return new XSSFRichTextString(st);
     }
 
     /**
-     * Create new font from style properties
+     * Create new font from resolved run style
      */
-    private XSSFFont createFont(XSSFWorkbook wb, Map<String, String> style) {
+    private XSSFFont createFont(XSSFWorkbook wb, RunStyle style) {
         XSSFFont font = wb.createFont();
 
         // Font family
-        if (style.containsKey("font-family")) {
-            String fontName = cssParser.normalizeFontName(style.get("font-family"));
-            if (fontName != null && !fontName.isEmpty()) {
-                font.setFontName(fontName);
-            }
+        if (style.getFontFamily() != null) {
+            font.setFontName(style.getFontFamily());
         }
 
         // Font size
-        if (style.containsKey("font-size")) {
-            Short fontSize = cssParser.parseFontSize(style.get("font-size"));
-            if (fontSize != null) {
-                font.setFontHeightInPoints(fontSize);
-            }
+        if (style.getFontSize() > 0) {
+            font.setFontHeightInPoints(style.getFontSize());
         }
 
         // Bold
-        if ("bold".equalsIgnoreCase(style.get("font-weight"))) {
+        if (style.isBold()) {
             font.setBold(true);
         }
 
         // Italic
-        if ("italic".equalsIgnoreCase(style.get("font-style"))) {
+        if (style.isItalic()) {
             font.setItalic(true);
         }
 
         // Underline
-        if ("underline".equalsIgnoreCase(style.get("text-decoration"))) {
+        if (style.isUnderline()) {
             font.setUnderline(FontUnderline.SINGLE);
         }
 
         // Color
-        if (style.containsKey("color")) {
-            Color c = ColorParser.parse(style.get("color"));
-            if (c != null) {
-                try {
-                    XSSFColor xssfColor = new XSSFColor(c, wb.getStylesSource().getIndexedColors());
-                    font.setColor(xssfColor);
-                } catch (Exception e) {
-                    log.warn("Failed to set font color: {}", e.getMessage());
-                }
+        if (style.hasColor()) {
+            int rgb = style.getColor();
+            try {
+                XSSFColor xssfColor = new XSSFColor(ColorParser.toBytes(rgb), wb.getStylesSource().getIndexedColors());
+                font.setColor(xssfColor);
+            } catch (Exception e) {
+                log.warn("Failed to set font color: {}", e.getMessage());
             }
         }
 
         return font;
     }
+
+    private static void addRun(CTRst st, String text, XSSFFont font) {
+        CTRElt r = st.addNewR();
+        r.setT(text);
+        preserveSpaces(r.xgetT());
+        if (font != null) {
+            setRunProperties(font.getCTFont(), r.addNewRPr());
+        }
+    }
+
+    /**
+     * Keep leading/trailing whitespace of a run (xml:space="preserve")
+     */
+    private static void preserveSpaces(XmlString xs) {
+        String s = xs.getStringValue();
+        if (s != null && !s.isEmpty()) {
+            char first = s.charAt(0);
+            char last = s.charAt(s.length() - 1);
+            if (Character.isWhitespace(first) || Character.isWhitespace(last)) {
+                try (XmlCursor c = xs.newCursor()) {
+                    c.toNextToken();
+                    c.insertAttributeWithValue(XML_SPACE, "preserve");
+                }
+            }
+        }
+    }
+
+    /**
+     * Copy font properties into run properties
+     */
+    private static void setRunProperties(CTFont font, CTRPrElt pr) {
+        if (font.sizeOfBArray() > 0) {
+            pr.addNewB().setVal(font.getBArray(0).getVal());
+        }
+        if (font.sizeOfIArray() > 0) {
+            pr.addNewI().setVal(font.getIArray(0).getVal());
+        }
+        if (font.sizeOfUArray() > 0) {
+            pr.addNewU().setVal(font.getUArray(0).getVal());
+        }
+        if (font.sizeOfStrikeArray() > 0) {
+            pr.addNewStrike().setVal(font.getStrikeArray(0).getVal());
+        }
+        if (font.sizeOfColorArray() > 0) {
+            CTColor src = font.getColorArray(0);
+            CTColor dst = pr.addNewColor();
+            if (src.isSetAuto()) {
+                dst.setAuto(src.getAuto());
+            }
+            if (src.isSetIndexed()) {
+                dst.setIndexed(src.getIndexed());
+            }
+            if (src.isSetRgb()) {
+                dst.setRgb(src.getRgb());
+            }
+            if (src.isSetTheme()) {
+                dst.setTheme(src.getTheme());
+            }
+            if (src.isSetTint()) {
+                dst.setTint(src.getTint());
+            }
+        }
+        if (font.sizeOfSzArray() > 0) {
+            pr.addNewSz().setVal(font.getSzArray(0).getVal());
+        }
+        if (font.sizeOfNameArray() > 0) {
+            pr.addNewRFont().setVal(font.getNameArray(0).getVal());
+        }
+        if (font.sizeOfFamilyArray() > 0) {
+            pr.addNewFamily().setVal(font.getFamilyArray(0).getVal());
+        }
+        if (font.sizeOfSchemeArray() > 0) {
+            pr.addNewScheme().setVal(font.getSchemeArray(0).getVal());
+        }
+        if (font.sizeOfCharsetArray() > 0) {
+            pr.addNewCharset().setVal(font.getCharsetArray(0).getVal());
+        }
+        if (font.sizeOfVertAlignArray() > 0) {
+            pr.addNewVertAlign().setVal(font.getVertAlignArray(0).getVal());
+        }
+    }
 }
@@ -0,0 +1,359 @@
+package io.github.fivefish130.html2excel.richtext.builder;
+
+import io.github.fivefish130.html2excel.richtext.model.CompiledRichText;
+import io.github.fivefish130.html2excel.richtext.model.RunStyle;
+import io.github.fivefish130.html2excel.richtext.model.WhiteSpace;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Flat, coalesced run list used while traversing HTML
+ * <p>
+ * Text is collected in a single buffer and every run only stores its start offset and
+ * resolved style. Adjacent text with an equal style is merged into one run. The result
+ * is a workbook-independent {@link CompiledRichText}; fonts are only created when it is
+ * bound to a workbook (see {@link FontBuilder#buildRichText(CompiledRichText)}), which
+ * writes all runs in one pass instead of calling {@code applyFont} per element.
+ * <p>
+ * With a length limit ({@link #setMaxLength(int, String)}), text beyond the limit is never
+ * stored and producers can stop as soon as {@link #isTruncated()} is true.
+ * <p>
+ * Text content is added with {@link #appendText}, which normalizes whitespace straight
+ * into the buffer the way a browser does: runs of whitespace collapse to one space, also
+ * across elements, and spaces at the start or end of a line are dropped.
+ *
+ * @author fivefish130
+ */
+public class RichTextBuilder {
+
+    private final StringBuilder text = new StringBuilder();
+    private int[] runStarts = new int[16];
+    private RunStyle[] runStyles = new RunStyle[16];
+    private int runCount;
+    private int backgroundColor = CompiledRichText.NO_BACKGROUND;
+    private String firstHref;
+    private final List<String> imageSources = new ArrayList<>();
+
+    // Whitespace collapsing: a collapsed space is only written once non-space text follows
+    private boolean spacePending;
+    private RunStyle pendingSpaceStyle;
+    private boolean lineStart = true;
+
+    // Truncation
+    private int maxLength = Integer.MAX_VALUE;
+    private String truncateSuffix = "";
+    private boolean truncated;
+
+    /**
+     * Append literal text with given style (e.g. bullets), without whitespace normalization
+     *
+     * @param s Text to append
+     * @param style Style of the text, or null for the default cell font
+     */
+    public void append(CharSequence s, RunStyle style) {
+        if (s.length() == 0) {
+            return;
+        }
+        appendLiteral(s, 0, s.length(), style);
+        char last = s.charAt(s.length() - 1);
+        lineStart = last == ' ' || last == '\n';
+    }
+
+    /**
+     * Append text content, normalizing whitespace
+     * <p>
+     * In {@link WhiteSpace#NORMAL} mode, whitespace runs (including line breaks) collapse to
+     * one space and spaces at the start or end of a line are dropped, also across calls.
+     * {@code &nbsp;} becomes a space that never collapses. {@link WhiteSpace#PRE} keeps all
+     * whitespace, {@link WhiteSpace#PRE_LINE} keeps line breaks only.
+     *
+     * @param s Text
+     * @param start Start index in s
+     * @param end End index in s (exclusive)
+     * @param style Style of the text, or null for the default cell font
+     * @param whiteSpace Whitespace handling
+     */
+    public void appendText(CharSequence s, int start, int end, RunStyle style, WhiteSpace whiteSpace) {
+        int literal = start;
+        for (int i = start; i < end && !truncated; i++) {
+            char c = s.charAt(i);
+            if (c == '\u00A0') {
+                appendLiteral(s, literal, i, style);
+                appendLiteral(" ", 0, 1, style);
+                literal = i + 1;
+            } else if (isLineBreak(c) && whiteSpace != WhiteSpace.NORMAL) {
+                appendLiteral(s, literal, i, style);
+                if (c == '\r' && i + 1 < end && s.charAt(i + 1) == '\n') {
+                    i++;
+                }
+                if (whiteSpace == WhiteSpace.PRE) {
+                    appendLiteral("\n", 0, 1, style);
+                } else {
+                    appendBreak("\n");
+                }
+                lineStart = true;
+                literal = i + 1;
+            } else if (isCollapsible(c) && whiteSpace != WhiteSpace.PRE) {
+                appendLiteral(s, literal, i, style);
+                if (!lineStart && !spacePending) {
+                    spacePending = true;
+                    pendingSpaceStyle = style;
+                }
+                literal = i + 1;
+            }
+        }
+        appendLiteral(s, literal, end, style);
+    }
+
+    /**
+     * Append structural text (line breaks, separators) that continues the current run
+     * <p>
+     * A collapsed space before it is dropped, as is whitespace at the start of the text
+     * appended next.
+     *
+     * @param s Text to append
+     */
+    public void appendBreak(CharSequence s) {
+        spacePending = false;
+        lineStart = true;
+        if (s.length() == 0 || truncated) {
+            return;
+        }
+        int room = maxLength - text.length();
+        if (room > 0) {
+            if (runCount == 0) {
+                startRun(null);
+            }
+            text.append(s, 0, Math.min(room, s.length()));
+        }
+        truncated = s.length() > room;
+    }
+
+    /**
+     * Append text as is, writing a pending collapsed space first
+     */
+    private void appendLiteral(CharSequence s, int start, int end, RunStyle style) {
+        if (start == end || truncated) {
+            return;
+        }
+        if (spacePending) {
+            spacePending = false;
+            write(" ", 0, 1, pendingSpaceStyle);
+        }
+        write(s, start, end, style);
+        lineStart = false;
+    }
+
+    private void write(CharSequence s, int start, int end, RunStyle style) {
+        if (truncated) {
+            return;
+        }
+        int length = end - start;
+        int room = maxLength - text.length();
+        if (room > 0) {
+            startRun(style);
+            text.append(s, start, start + Math.min(room, length));
+        }
+        truncated = length > room;
+    }
+
+    /**
+     * Whitespace that collapses in {@link WhiteSpace#NORMAL} mode
+     */
+    private static boolean isCollapsible(char c) {
+        switch (c) {
+            case ' ':
+            case '\t':
+            case '\n':
+            case '\u000B':
+            case '\f':
+            case '\r':
+            case '\u0085':
+            case '\u2028':
+            case '\u2029':
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isLineBreak(char c) {
+        return c == '\n' || c == '\r';
+    }
+
+    /**
+     * Drop all formatting collected so far: runs, background, hyperlink and images
+     * <p>
+     * The text is kept as a single run in the default font; text appended afterwards with
+     * a null style continues it.
+     */
+    public void discardFormatting() {
+        Arrays.fill(runStyles, 0, runCount, null);
+        runCount = text.length() > 0 ? 1 : 0;
+        pendingSpaceStyle = null;
+        backgroundColor = CompiledRichText.NO_BACKGROUND;
+        firstHref = null;
+        imageSources.clear();
+    }
+
+    /**
+     * Limit the text length
+     * <p>
+     * Text beyond the limit is dropped as it is appended and {@link #isTruncated()} turns
+     * true, so producers can stop consuming input. The built text then keeps the formatting
+     * of the retained prefix and ends with the suffix, within {@code maxLength} characters.
+     *
+     * @param maxLength Maximum text length, including the suffix
+     * @param truncateSuffix Suffix marking truncated text
+     */
+    public void setMaxLength(int maxLength, String truncateSuffix) {
+        if (truncateSuffix.length() > maxLength) {
+            throw new IllegalArgumentException("truncateSuffix is longer than maxLength");
+        }
+        this.maxLength = maxLength;
+        this.truncateSuffix = truncateSuffix;
+    }
+
+    /**
+     * Check if text beyond the length limit was dropped
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    /**
+     * Record the cell background color (the first one wins)
+     *
+     * @param rgb 24-bit RGB color
+     */
+    public void setBackgroundColorIfAbsent(int rgb) {
+        if (backgroundColor == CompiledRichText.NO_BACKGROUND) {
+            backgroundColor = rgb & 0xFFFFFF;
+        }
+    }
+
+    /**
+     * Record the cell hyperlink (the first one wins)
+     *
+     * @param href Hyperlink URL
+     */
+    public void setFirstHrefIfAbsent(String href) {
+        if (firstHref == null) {
+            firstHref = href;
+        }
+    }
+
+    /**
+     * Record an image source
+     *
+     * @param src Image source
+     */
+    public void addImageSource(String src) {
+        imageSources.add(src);
+    }
+
+    /**
+     * Current text length
+     */
+    public int length() {
+        return text.length();
+    }
+
+    /**
+     * Number of formatting runs collected so far
+     */
+    public int runCount() {
+        return runCount;
+    }
+
+    /**
+     * Plain text collected so far
+     */
+    public String getText() {
+        return text.toString();
+    }
+
+    /**
+     * Reset builder for reuse
+     */
+    public void reset() {
+        text.setLength(0);
+        Arrays.fill(runStyles, 0, runCount, null);
+        runCount = 0;
+        spacePending = false;
+        pendingSpaceStyle = null;
+        lineStart = true;
+        backgroundColor = CompiledRichText.NO_BACKGROUND;
+        firstHref = null;
+        imageSources.clear();
+        truncated = false;
+    }
+
+    /**
+     * Build immutable compiled rich text
+     *
+     * @return Compiled rich text
+     */
+    public CompiledRichText build() {
+        int runs = runCount;
+        String result;
+        if (truncated) {
+            // Make room for the suffix, which continues the last retained run
+            int cut = truncationCut();
+            while (runs > 1 && runStarts[runs - 1] >= cut) {
+                runs--;
+            }
+            result = text.substring(0, cut) + truncateSuffix;
+        } else {
+            result = text.toString();
+        }
+        return new CompiledRichText(result,
+                Arrays.copyOf(runStarts, runs),
+                Arrays.copyOf(runStyles, runs),
+                firstHref, imageSources, backgroundColor, truncated);
+    }
+
+    /**
+     * Write the text as {@link #build()} returns it, without materializing a string
+     *
+     * @param out Target
+     * @throws IOException if writing fails
+     */
+    public void writeText(Appendable out) throws IOException {
+        if (truncated) {
+            out.append(text, 0, truncationCut()).append(truncateSuffix);
+        } else {
+            out.append(text);
+        }
+    }
+
+    /**
+     * Length of the retained text once truncated, never splitting a surrogate pair
+     */
+    private int truncationCut() {
+        int cut = maxLength - truncateSuffix.length();
+        if (cut > 0 && Character.isHighSurrogate(text.charAt(cut - 1))) {
+            cut--;
+        }
+        return cut;
+    }
+
+    private void startRun(RunStyle style) {
+        if (runCount > 0) {
+            RunStyle last = runStyles[runCount - 1];
+            if (last == style || (last != null && last.equals(style))) {
+                return;
+            }
+        }
+        if (runCount == runStarts.length) {
+            runStarts = Arrays.copyOf(runStarts, runCount * 2);
+            runStyles = Arrays.copyOf(runStyles, runCount * 2);
+        }
+        runStarts[runCount] = text.length();
+        runStyles[runCount] = style;
+        runCount++;
+    }
+}
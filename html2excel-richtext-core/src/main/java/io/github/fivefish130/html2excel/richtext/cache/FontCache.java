@@ -1,14 +1,23 @@
 package io.github.fivefish130.html2excel.richtext.cache;
 
+import io.github.fivefish130.html2excel.richtext.model.RunStyle;
 import org.apache.poi.xssf.usermodel.XSSFFont;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Font cache to avoid creating duplicate font objects
  * Excel has limits on the number of fonts (~64K), caching helps control this
+ * <p>
+ * With a budget, fonts are only created while the workbook has fewer fonts than the
+ * budget; further run styles are quantized ({@link RunStyle#quantize()}) and mapped to
+ * the quantized font if it exists, else to the nearest font created by this cache.
  *
  * @author fivefish130
  */
@@ -16,12 +25,36 @@ public class FontCache {
 
     private final XSSFWorkbook workbook;
     private final Map<String, XSSFFont> cache;
+    // Fonts by family (null for the default), then by packed key (see RunStyle#getFontKey())
+    private final Map<String, LongObjectMap<XSSFFont>> packedCache;
     private final boolean enabled;
+    private int packedSize;
+
+    // Budget; fonts of quantized requests by requested style, and created fonts with their styles
+    private final int maxFonts;
+    private final Map<String, LongObjectMap<XSSFFont>> quantizedCache;
+    private final List<RunStyle> createdStyles = new ArrayList<>();
+    private final List<XSSFFont> createdFonts = new ArrayList<>();
+    private long quantizedCount;
 
     public FontCache(XSSFWorkbook workbook, boolean enabled) {
+        this(workbook, enabled, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Create cache with a font budget
+     *
+     * @param workbook Workbook owning the fonts
+     * @param enabled Whether fonts are cached (the budget requires the cache)
+     * @param maxFonts Maximum number of fonts in the workbook
+     */
+    public FontCache(XSSFWorkbook workbook, boolean enabled, int maxFonts) {
         this.workbook = workbook;
         this.enabled = enabled;
+        this.maxFonts = maxFonts;
         this.cache = enabled ? new ConcurrentHashMap<>() : null;
+        this.packedCache = enabled ? new HashMap<>() : null;
+        this.quantizedCache = enabled ? new HashMap<>() : null;
     }
 
     /**
@@ -40,34 +73,161 @@ public class FontCache {
     }
 
     /**
-     * Generate font cache key from style properties
+     * Get cached font for a run style
+     *
+     * @param style Run style
+     * @return Cached font, or null if absent or caching is disabled
      */
+    public XSSFFont get(RunStyle style) {
+        if (!enabled) {
+            return null;
+        }
+        synchronized (packedCache) {
+            return lookup(packedCache, style);
+        }
+    }
+
+    /**
+     * Get or create font for a run style within the font budget
+     *
+     * @param style Run style
+     * @param creator Font creator function
+     * @return Cached, newly created or, beyond the budget, nearest existing font
+     */
+    public XSSFFont getOrCreate(RunStyle style, FontCreator creator) {
+        if (!enabled) {
+            return creator.create(workbook);
+        }
+
+        synchronized (packedCache) {
+            XSSFFont font = lookup(packedCache, style);
+            if (font != null) {
+                return font;
+            }
+            if (workbook.getNumberOfFonts() < maxFonts) {
+                font = creator.create(workbook);
+                store(packedCache, style, font);
+                packedSize++;
+                createdStyles.add(style);
+                createdFonts.add(font);
+                return font;
+            }
+
+            quantizedCount++;
+            font = lookup(quantizedCache, style);
+            if (font == null) {
+                RunStyle quantized = style.quantize();
+                font = lookup(packedCache, quantized);
+                if (font == null) {
+                    font = nearest(quantized);
+                }
+                store(quantizedCache, style, font);
+            }
+            return font;
+        }
+    }
+
+    private static XSSFFont lookup(Map<String, LongObjectMap<XSSFFont>> fonts, RunStyle style) {
+        LongObjectMap<XSSFFont> family = fonts.get(style.getFontFamily());
+        return family != null ? family.get(style.getFontKey()) : null;
+    }
+
+    private static void store(Map<String, LongObjectMap<XSSFFont>> fonts, RunStyle style, XSSFFont font) {
+        fonts.computeIfAbsent(style.getFontFamily(), k -> new LongObjectMap<>(16)).put(style.getFontKey(), font);
+    }
+
+    /**
+     * Find the created font closest to a style, the default font if none was created
+     */
+    private XSSFFont nearest(RunStyle style) {
+        XSSFFont nearest = null;
+        long nearestDistance = Long.MAX_VALUE;
+        for (int i = 0; i < createdStyles.size(); i++) {
+            long distance = distance(style, createdStyles.get(i));
+            if (distance < nearestDistance) {
+                nearestDistance = distance;
+                nearest = createdFonts.get(i);
+            }
+        }
+        return nearest != null ? nearest : workbook.getFontAt(0);
+    }
+
+    /**
+     * Visual distance of two styles: family, then weight and slant, then underline, size and color
+     */
+    private static long distance(RunStyle a, RunStyle b) {
+        long distance = 0;
+        if (!Objects.equals(a.getFontFamily(), b.getFontFamily())) {
+            distance += 1L << 24;
+        }
+        if (a.isBold() != b.isBold()) {
+            distance += 1L << 20;
+        }
+        if (a.isItalic() != b.isItalic()) {
+            distance += 1L << 20;
+        }
+        if (a.isUnderline() != b.isUnderline()) {
+            distance += 1L << 16;
+        }
+        distance += Math.abs(a.getFontSize() - b.getFontSize()) * 256L;
+        // Unset colors are black
+        int colorA = a.hasColor() ? a.getColor() : 0;
+        int colorB = b.hasColor() ? b.getColor() : 0;
+        for (int shift = 0; shift <= 16; shift += 8) {
+            distance += Math.abs((colorA >> shift & 0xFF) - (colorB >> shift & 0xFF));
+        }
+        return distance;
+    }
+
+    /**
+     * Get the number of requests mapped to an existing font because the budget was reached
+     */
+    public long getQuantizedCount() {
+        if (packedCache == null) {
+            return 0;
+        }
+        synchronized (packedCache) {
+            return quantizedCount;
+        }
+    }
+
+    /**
+     * Generate font cache key from CSS properties
+     *
+     * @param style CSS properties
+     * @return Key of the resolved run style, equal for equivalent CSS spellings
+     * @deprecated Resolve the style once with {@link RunStyle#resolve(Map)} and use
+     * {@link #generateKey(RunStyle)}
+     */
+    @Deprecated
     public static String generateKey(Map<String, String> style) {
+        return generateKey(RunStyle.resolve(style));
+    }
+
+    /**
+     * Generate font cache key from resolved run style
+     */
+    public static String generateKey(RunStyle style) {
         StringBuilder key = new StringBuilder();
 
         // Font family
-        String fontFamily = style.get("font-family");
+        String fontFamily = style.getFontFamily();
         key.append("family:").append(fontFamily != null ? fontFamily : "default").append("|");
 
         // Font size
-        String fontSize = style.get("font-size");
-        key.append("size:").append(fontSize != null ? fontSize : "default").append("|");
+        key.append("size:").append(style.getFontSize() > 0 ? String.valueOf(style.getFontSize()) : "default").append("|");
 
         // Font weight
-        String fontWeight = style.get("font-weight");
-        key.append("weight:").append("bold".equalsIgnoreCase(fontWeight) ? "bold" : "normal").append("|");
+        key.append("weight:").append(style.isBold() ? "bold" : "normal").append("|");
 
         // Font style
-        String fontStyle = style.get("font-style");
-        key.append("style:").append("italic".equalsIgnoreCase(fontStyle) ? "italic" : "normal").append("|");
+        key.append("style:").append(style.isItalic() ? "italic" : "normal").append("|");
 
         // Text decoration
-        String textDecoration = style.get("text-decoration");
-        key.append("decoration:").append("underline".equalsIgnoreCase(textDecoration) ? "underline" : "none").append("|");
+        key.append("decoration:").append(style.isUnderline() ? "underline" : "none").append("|");
 
         // Color
-        String color = style.get("color");
-        key.append("color:").append(color != null ? color : "default");
+        key.append("color:").append(style.hasColor() ? Integer.toHexString(style.getColor()) : "default");
 
         return key.toString();
     }
@@ -78,6 +238,13 @@ public class FontCache {
     public void clear() {
         if (cache != null) {
             cache.clear();
+            synchronized (packedCache) {
+                packedCache.clear();
+                packedSize = 0;
+                quantizedCache.clear();
+                createdStyles.clear();
+                createdFonts.clear();
+            }
         }
     }
 
@@ -85,7 +252,12 @@ public class FontCache {
      * Get cache size
      */
     public int size() {
-        return cache != null ? cache.size() : 0;
+        if (cache == null) {
+            return 0;
+        }
+        synchronized (packedCache) {
+            return cache.size() + packedSize;
+        }
     }
 
     /**
@@ -0,0 +1,290 @@
+package io.github.fivefish130.html2excel.richtext.cache;
+
+import io.github.fivefish130.html2excel.richtext.model.CompiledRichText;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded memoization cache for compiled HTML fragments
+ * <p>
+ * Bounded by both entry count and weight (characters of HTML plus compiled text).
+ * Eviction approximates LRU with a CLOCK queue (entries hit since the last pass get a
+ * second chance), and a new fragment is only admitted if it has been seen more often
+ * than each entry it would evict (TinyLFU-style admission backed by a small count-min
+ * sketch), so a stream of one-off fragments cannot flush hot snippets such as status
+ * badges or boilerplate disclaimers.
+ * <p>
+ * Values are immutable {@link CompiledRichText} instances, so cached entries can be
+ * shared freely. All methods are thread-safe; lookups never lock, so one cache can
+ * serve the exports of all threads. Only insertions, which follow a parse, serialize.
+ *
+ * @author fivefish130
+ */
+public class HtmlCache {
+
+    private final int maxEntries;
+    private final long maxWeight;
+    private final ConcurrentHashMap<String, Node> cache;
+    private final FrequencySketch sketch;
+
+    // Guarded by the queue: eviction order and total weight
+    private final ArrayDeque<Node> queue = new ArrayDeque<>();
+    private long weight;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+    private final LongAdder rejectionCount = new LongAdder();
+
+    /**
+     * Create cache
+     *
+     * @param maxEntries Maximum number of cached fragments
+     * @param maxWeight Maximum total weight (characters)
+     */
+    public HtmlCache(int maxEntries, long maxWeight) {
+        if (maxEntries <= 0 || maxWeight <= 0) {
+            throw new IllegalArgumentException("maxEntries and maxWeight must be positive");
+        }
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+        this.cache = new ConcurrentHashMap<>(Math.min(maxEntries, 1024) * 4 / 3 + 1);
+        this.sketch = new FrequencySketch(maxEntries);
+    }
+
+    /**
+     * Get cached compiled HTML and record the access
+     *
+     * @param html HTML content
+     * @return Cached value, or null on a miss
+     */
+    public CompiledRichText get(String html) {
+        sketch.increment(html);
+        Node node = cache.get(html);
+        if (node == null) {
+            missCount.increment();
+            return null;
+        }
+        if (!node.referenced) {
+            node.referenced = true;
+        }
+        hitCount.increment();
+        return node.value;
+    }
+
+    /**
+     * Offer compiled HTML to the cache
+     * <p>
+     * The value is only stored if it fits and is accessed more frequently than each of the
+     * entries it would displace.
+     *
+     * @param html HTML content
+     * @param value Compiled HTML
+     * @return true if the value was admitted
+     */
+    public boolean put(String html, CompiledRichText value) {
+        long entryWeight = weigh(html, value);
+        if (entryWeight > maxWeight) {
+            rejectionCount.increment();
+            return false;
+        }
+
+        Node node = new Node(html, value, entryWeight);
+        synchronized (queue) {
+            Node previous = cache.get(html);
+            if (previous != null) {
+                // Replaced: the stale queue entry is skipped once it comes up
+                previous.removed = true;
+                weight -= previous.weight;
+            } else {
+                // Admission: the candidate must be more popular than every victim
+                List<Node> victims = selectVictims(html, entryWeight);
+                if (victims == null) {
+                    rejectionCount.increment();
+                    return false;
+                }
+                for (Node victim : victims) {
+                    victim.removed = true;
+                    cache.remove(victim.key, victim);
+                    weight -= victim.weight;
+                    evictionCount.increment();
+                }
+            }
+            cache.put(html, node);
+            queue.addLast(node);
+            weight += entryWeight;
+        }
+        return true;
+    }
+
+    /**
+     * Take the entries an insert would evict from the queue, in CLOCK order
+     *
+     * @return Victims, or null (with the queue restored) if one is at least as frequent
+     *         as the candidate
+     */
+    private List<Node> selectVictims(String html, long entryWeight) {
+        List<Node> victims = new ArrayList<>();
+        int frequency = sketch.frequency(html);
+        int size = cache.size();
+        long remaining = weight;
+        while (size >= maxEntries || remaining + entryWeight > maxWeight) {
+            Node victim = nextVictim();
+            if (victim == null) {
+                break;
+            }
+            victims.add(victim);
+            if (frequency <= sketch.frequency(victim.key)) {
+                for (int i = victims.size() - 1; i >= 0; i--) {
+                    queue.addFirst(victims.get(i));
+                }
+                return null;
+            }
+            size--;
+            remaining -= victim.weight;
+        }
+        return victims;
+    }
+
+    /**
+     * Remove the next entry not hit since the last pass from the queue
+     */
+    private Node nextVictim() {
+        Node node;
+        while ((node = queue.pollFirst()) != null) {
+            if (node.removed) {
+                continue;
+            }
+            if (node.referenced) {
+                node.referenced = false;
+                queue.addLast(node);
+                continue;
+            }
+            return node;
+        }
+        return null;
+    }
+
+    /**
+     * Clear cache (statistics are kept)
+     */
+    public void clear() {
+        synchronized (queue) {
+            for (Node node : queue) {
+                node.removed = true;
+            }
+            queue.clear();
+            cache.clear();
+            weight = 0;
+        }
+    }
+
+    public int size() { return cache.size(); }
+    public long hitCount() { return hitCount.sum(); }
+    public long missCount() { return missCount.sum(); }
+    public long evictionCount() { return evictionCount.sum(); }
+    public long rejectionCount() { return rejectionCount.sum(); }
+
+    public long weight() {
+        synchronized (queue) {
+            return weight;
+        }
+    }
+
+    private static long weigh(String html, CompiledRichText value) {
+        return (long) html.length() + value.length();
+    }
+
+    /**
+     * Cached fragment with its CLOCK state
+     */
+    private static final class Node {
+        private final String key;
+        private final CompiledRichText value;
+        private final long weight;
+        // Hit since the last CLOCK pass
+        private volatile boolean referenced;
+        // Evicted, replaced or cleared (guarded by the queue)
+        private boolean removed;
+
+        Node(String key, CompiledRichText value, long weight) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * Count-min sketch with 4-bit counters and periodic aging
+     * <p>
+     * Counters are updated without locking: concurrent increments may be lost, which only
+     * makes the estimate a little lower and never breaks the cache.
+     */
+    static final class FrequencySketch {
+        private static final int DEPTH = 4;
+        private static final int MAX_COUNT = 15;
+        private static final int[] SEEDS = {0x97cb3127, 0xb4c8a4c5, 0x3f2a6d1b, 0xe6546b64};
+
+        private final byte[] table;
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int maxEntries) {
+            // Wider than tiny caches so one-off keys rarely collide with hot ones
+            int width = Integer.highestOneBit(Math.max(1024, Math.min(maxEntries, 1 << 20)) * 2 - 1);
+            this.table = new byte[width * DEPTH];
+            this.mask = width - 1;
+            this.sampleSize = width * 10;
+        }
+
+        void increment(String key) {
+            int hash = spread(key.hashCode());
+            boolean added = false;
+            for (int i = 0; i < DEPTH; i++) {
+                int index = indexOf(hash, i);
+                if (table[index] < MAX_COUNT) {
+                    table[index]++;
+                    added = true;
+                }
+            }
+            if (added && ++additions >= sampleSize) {
+                reset();
+            }
+        }
+
+        int frequency(String key) {
+            int hash = spread(key.hashCode());
+            int frequency = MAX_COUNT;
+            for (int i = 0; i < DEPTH; i++) {
+                frequency = Math.min(frequency, table[indexOf(hash, i)]);
+            }
+            return frequency;
+        }
+
+        private int indexOf(int hash, int row) {
+            int h = (hash ^ SEEDS[row]) * 0x9E3779B1;
+            return row * (mask + 1) + ((h ^ (h >>> 16)) & mask);
+        }
+
+        /**
+         * Halve all counters so old popularity fades out
+         */
+        private void reset() {
+            for (int i = 0; i < table.length; i++) {
+                table[i] = (byte) (table[i] >>> 1);
+            }
+            additions /= 2;
+        }
+
+        private static int spread(int h) {
+            h ^= h >>> 16;
+            h *= 0x85ebca6b;
+            return h ^ (h >>> 13);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package io.github.fivefish130.html2excel.richtext.cache;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Bounded, thread-safe cache of immutable parse results keyed by their source text
+ * <p>
+ * Entries live in two generations of at most {@code maxEntries} each. When the current
+ * generation is full it becomes the previous one and the oldest is dropped; entries hit
+ * in the previous generation are promoted. Recurring inputs therefore stay cached while
+ * one-off inputs age out, and lookups never lock. Keys longer than
+ * {@code maxKeyLength} are parsed without caching.
+ *
+ * @param <V> Parse result type
+ * @author fivefish130
+ */
+public final class ParseCache<V> {
+
+    private final int maxEntries;
+    private final int maxKeyLength;
+    private volatile ConcurrentHashMap<String, V> current = new ConcurrentHashMap<>();
+    private volatile ConcurrentHashMap<String, V> previous = new ConcurrentHashMap<>();
+
+    /**
+     * Create cache
+     *
+     * @param maxEntries Maximum entries per generation
+     * @param maxKeyLength Maximum length of cached keys
+     */
+    public ParseCache(int maxEntries, int maxKeyLength) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be positive");
+        }
+        this.maxEntries = maxEntries;
+        this.maxKeyLength = maxKeyLength;
+    }
+
+    /**
+     * Get the parse result of a text, parsing it on a miss
+     *
+     * @param key Source text
+     * @param parser Parser; must return a non-null, immutable value
+     * @return Cached or newly parsed value
+     */
+    public V get(String key, Function<String, V> parser) {
+        if (key.length() > maxKeyLength) {
+            return parser.apply(key);
+        }
+        ConcurrentHashMap<String, V> generation = current;
+        V value = generation.get(key);
+        if (value != null) {
+            return value;
+        }
+        value = previous.get(key);
+        if (value == null) {
+            value = parser.apply(key);
+        }
+        if (generation.size() >= maxEntries) {
+            rotate(generation);
+        }
+        current.put(key, value);
+        return value;
+    }
+
+    /**
+     * Get the number of cached entries
+     */
+    public int size() {
+        return current.size() + previous.size();
+    }
+
+    /**
+     * Clear cache
+     */
+    public synchronized void clear() {
+        previous = new ConcurrentHashMap<>();
+        current = new ConcurrentHashMap<>();
+    }
+
+    private synchronized void rotate(ConcurrentHashMap<String, V> full) {
+        // Another thread may have rotated already
+        if (current == full) {
+            previous = full;
+            current = new ConcurrentHashMap<>();
+        }
+    }
+}
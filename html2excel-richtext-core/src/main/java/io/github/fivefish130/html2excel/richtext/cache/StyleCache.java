@@ -1,26 +1,48 @@
 package io.github.fivefish130.html2excel.richtext.cache;
 
+import io.github.fivefish130.html2excel.richtext.parser.ColorParser;
 import org.apache.poi.xssf.usermodel.XSSFCellStyle;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
 /**
  * Cell style cache to avoid creating duplicate style objects
  * Excel has limits on cell styles (~64K), caching helps control this
+ * <p>
+ * With a budget, styles are only created while the workbook has fewer cell styles than
+ * the budget; further requests fall back to the style of a coarser key, if cached.
  *
  * @author fivefish130
  */
 public class StyleCache {
 
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
     private final XSSFWorkbook workbook;
     private final Map<String, XSSFCellStyle> cache;
     private final boolean enabled;
+    private final int maxStyles;
+    private final AtomicLong quantizedCount = new AtomicLong();
 
     public StyleCache(XSSFWorkbook workbook, boolean enabled) {
+        this(workbook, enabled, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Create cache with a cell style budget
+     *
+     * @param workbook Workbook owning the styles
+     * @param enabled Whether styles are cached (the budget requires the cache)
+     * @param maxStyles Maximum number of cell styles in the workbook
+     */
+    public StyleCache(XSSFWorkbook workbook, boolean enabled, int maxStyles) {
         this.workbook = workbook;
         this.enabled = enabled;
+        this.maxStyles = maxStyles;
         this.cache = enabled ? new ConcurrentHashMap<>() : null;
     }
 
@@ -39,11 +61,76 @@ public class StyleCache {
         return cache.computeIfAbsent(key, k -> creator.create(workbook));
     }
 
+    /**
+     * Get or create cell style within the style budget
+     * <p>
+     * Once the workbook has reached the budget, no style is created: the request is served
+     * by the cached style of the fallback key (e.g. the nearest existing color), or not at all.
+     *
+     * @param key Style cache key
+     * @param fallbackKey Supplies the fallback key (or null), only called beyond the budget
+     * @param creator Style creator function
+     * @return Cached or newly created style, null if the budget is exhausted and the
+     *         fallback style isn't cached
+     */
+    public XSSFCellStyle getOrCreate(String key, Supplier<String> fallbackKey, StyleCreator creator) {
+        if (!enabled) {
+            return creator.create(workbook);
+        }
+
+        XSSFCellStyle style = cache.get(key);
+        if (style != null) {
+            return style;
+        }
+        if (workbook.getNumCellStyles() < maxStyles) {
+            return cache.computeIfAbsent(key, k -> creator.create(workbook));
+        }
+        String fallback = fallbackKey.get();
+        style = fallback != null ? cache.get(fallback) : null;
+        if (style != null) {
+            quantizedCount.incrementAndGet();
+        }
+        return style;
+    }
+
+    /**
+     * Get the number of requests served by a fallback style because the budget was reached
+     */
+    public long getQuantizedCount() {
+        return quantizedCount.get();
+    }
+
     /**
      * Generate style cache key for background color
+     * <p>
+     * The color is resolved first, so equivalent spellings ({@code red}, {@code #F00},
+     * {@code rgb(255,0,0)}) share one key.
      */
     public static String generateBackgroundKey(String colorStr) {
-        return "bg:" + (colorStr != null ? colorStr.trim().toLowerCase() : "none");
+        int rgb = ColorParser.parseRgb(colorStr);
+        return rgb != ColorParser.NO_COLOR ? generateBackgroundKey(rgb) : "bg:none";
+    }
+
+    /**
+     * Generate style cache key for resolved background color
+     */
+    public static String generateBackgroundKey(int rgb) {
+        return appendBackgroundKey(new StringBuilder(10), rgb).toString();
+    }
+
+    /**
+     * Append the style cache key of a resolved background color ({@code bg:#rrggbb})
+     *
+     * @param key Key being built
+     * @param rgb 24-bit RGB color
+     * @return The key builder
+     */
+    public static StringBuilder appendBackgroundKey(StringBuilder key, int rgb) {
+        key.append("bg:#");
+        for (int shift = 20; shift >= 0; shift -= 4) {
+            key.append(HEX_DIGITS[rgb >> shift & 0xF]);
+        }
+        return key;
     }
 
     /**
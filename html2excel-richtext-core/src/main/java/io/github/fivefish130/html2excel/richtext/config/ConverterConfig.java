@@ -16,10 +16,29 @@ public class ConverterConfig {
     private int maxCellLength = 32767;
     private String truncateSuffix = "...(truncated)";
 
+    // Conversion limits (exceeding one falls back to plain text)
+    private int maxDepth = 512;
+    private int maxNodes = 100000;
+    private long cellTimeBudgetMillis = 0;  // unlimited
+
     // Cache settings
     private boolean enableFontCache = true;
     private boolean enableStyleCache = true;
 
+    // Font and cell style budget, requests beyond it are quantized
+    private int maxFonts = 60000;
+    private int maxCellStyles = 60000;
+
+    // Output settings
+    private boolean collapseSingleRun = true;
+    private boolean wrapMultilineText = true;
+    private String stylesheet;
+
+    // HTML fragment cache settings (opt-in)
+    private boolean enableHtmlCache = false;
+    private int htmlCacheMaxEntries = 1024;
+    private long htmlCacheMaxWeight = 4L * 1024 * 1024;  // characters
+
     public ConverterConfig() {
     }
 
@@ -29,8 +48,19 @@ public class ConverterConfig {
         this.imageReadTimeout = builder.imageReadTimeout;
         this.maxCellLength = builder.maxCellLength;
         this.truncateSuffix = builder.truncateSuffix;
+        this.maxDepth = builder.maxDepth;
+        this.maxNodes = builder.maxNodes;
+        this.cellTimeBudgetMillis = builder.cellTimeBudgetMillis;
         this.enableFontCache = builder.enableFontCache;
         this.enableStyleCache = builder.enableStyleCache;
+        this.maxFonts = builder.maxFonts;
+        this.maxCellStyles = builder.maxCellStyles;
+        this.collapseSingleRun = builder.collapseSingleRun;
+        this.wrapMultilineText = builder.wrapMultilineText;
+        this.stylesheet = builder.stylesheet;
+        this.enableHtmlCache = builder.enableHtmlCache;
+        this.htmlCacheMaxEntries = builder.htmlCacheMaxEntries;
+        this.htmlCacheMaxWeight = builder.htmlCacheMaxWeight;
     }
 
     public static Builder builder() {
@@ -43,8 +73,19 @@ public class ConverterConfig {
         private int imageReadTimeout = 10000;
         private int maxCellLength = 32767;
         private String truncateSuffix = "...(truncated)";
+        private int maxDepth = 512;
+        private int maxNodes = 100000;
+        private long cellTimeBudgetMillis = 0;
         private boolean enableFontCache = true;
         private boolean enableStyleCache = true;
+        private int maxFonts = 60000;
+        private int maxCellStyles = 60000;
+        private boolean collapseSingleRun = true;
+        private boolean wrapMultilineText = true;
+        private String stylesheet;
+        private boolean enableHtmlCache = false;
+        private int htmlCacheMaxEntries = 1024;
+        private long htmlCacheMaxWeight = 4L * 1024 * 1024;
 
         public Builder enableImageDownload(boolean enable) {
             this.enableImageDownload = enable;
@@ -67,6 +108,33 @@ public class ConverterConfig {
             return this;
         }
 
+        /**
+         * Maximum element nesting depth; deeper HTML is converted to plain text
+         */
+        public Builder maxDepth(int maxDepth) {
+            this.maxDepth = maxDepth;
+            return this;
+        }
+
+        /**
+         * Maximum number of elements and text nodes per cell; larger HTML is converted to plain text
+         */
+        public Builder maxNodes(int maxNodes) {
+            this.maxNodes = maxNodes;
+            return this;
+        }
+
+        /**
+         * Time budget for converting one cell, 0 for unlimited; the rest of a cell that
+         * exceeds it is converted to plain text
+         *
+         * @param millis Budget in milliseconds
+         */
+        public Builder cellTimeBudget(long millis) {
+            this.cellTimeBudgetMillis = millis;
+            return this;
+        }
+
         public Builder enableFontCache(boolean enable) {
             this.enableFontCache = enable;
             return this;
@@ -77,6 +145,71 @@ public class ConverterConfig {
             return this;
         }
 
+        /**
+         * Budget of fonts and cell styles in the workbook, counting those not created by the
+         * converter (default 60,000 each, below Excel's limit of about 64,000)
+         * <p>
+         * Once a budget is reached, new requests are quantized instead of creating fonts or
+         * styles: colors to the web-safe palette and sizes to whole points, then mapped to an
+         * existing font (the nearest one) or style (else the cell keeps its style). Requires
+         * the font and style caches.
+         */
+        public Builder styleBudget(int maxFonts, int maxCellStyles) {
+            if (maxFonts <= 0 || maxCellStyles <= 0) {
+                throw new IllegalArgumentException("maxFonts and maxCellStyles must be positive");
+            }
+            this.maxFonts = maxFonts;
+            this.maxCellStyles = maxCellStyles;
+            return this;
+        }
+
+        /**
+         * Write text with a single uniformly styled run as a plain string with a cell font
+         * instead of rich text (default on)
+         */
+        public Builder collapseSingleRun(boolean collapse) {
+            this.collapseSingleRun = collapse;
+            return this;
+        }
+
+        /**
+         * Turn on wrap text for cells whose text has several lines, keeping the rest of the
+         * cell style (default on)
+         */
+        public Builder wrapMultilineText(boolean wrap) {
+            this.wrapMultilineText = wrap;
+            return this;
+        }
+
+        /**
+         * CSS applied to every converted fragment, before its own {@code <style>} blocks
+         * (tag, class and id selectors; see {@link io.github.fivefish130.html2excel.richtext.parser.Stylesheet})
+         */
+        public Builder stylesheet(String css) {
+            this.stylesheet = css;
+            return this;
+        }
+
+        /**
+         * Memoize compiled HTML for repeated fragments (status badges, disclaimers, ...)
+         */
+        public Builder enableHtmlCache(boolean enable) {
+            this.enableHtmlCache = enable;
+            return this;
+        }
+
+        /**
+         * Bound the HTML fragment cache
+         *
+         * @param maxEntries Maximum number of cached fragments
+         * @param maxWeight Maximum total characters (HTML plus resulting text)
+         */
+        public Builder htmlCacheSize(int maxEntries, long maxWeight) {
+            this.htmlCacheMaxEntries = maxEntries;
+            this.htmlCacheMaxWeight = maxWeight;
+            return this;
+        }
+
         public ConverterConfig build() {
             return new ConverterConfig(this);
         }
@@ -88,8 +221,19 @@ public class ConverterConfig {
     public int getImageReadTimeout() { return imageReadTimeout; }
     public int getMaxCellLength() { return maxCellLength; }
     public String getTruncateSuffix() { return truncateSuffix; }
+    public int getMaxDepth() { return maxDepth; }
+    public int getMaxNodes() { return maxNodes; }
+    public long getCellTimeBudgetMillis() { return cellTimeBudgetMillis; }
     public boolean isEnableFontCache() { return enableFontCache; }
     public boolean isEnableStyleCache() { return enableStyleCache; }
+    public int getMaxFonts() { return maxFonts; }
+    public int getMaxCellStyles() { return maxCellStyles; }
+    public boolean isCollapseSingleRun() { return collapseSingleRun; }
+    public boolean isWrapMultilineText() { return wrapMultilineText; }
+    public String getStylesheet() { return stylesheet; }
+    public boolean isEnableHtmlCache() { return enableHtmlCache; }
+    public int getHtmlCacheMaxEntries() { return htmlCacheMaxEntries; }
+    public long getHtmlCacheMaxWeight() { return htmlCacheMaxWeight; }
 
     // Setters for non-builder usage
     public void setEnableImageDownload(boolean enable) { this.enableImageDownload = enable; }
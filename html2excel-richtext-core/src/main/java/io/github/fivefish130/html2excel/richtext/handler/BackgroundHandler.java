@@ -2,17 +2,27 @@ package io.github.fivefish130.html2excel.richtext.handler;
 
 import io.github.fivefish130.html2excel.richtext.cache.StyleCache;
 import io.github.fivefish130.html2excel.richtext.parser.ColorParser;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
 import org.apache.poi.ss.usermodel.FillPatternType;
 import org.apache.poi.ss.usermodel.VerticalAlignment;
-import org.apache.poi.xssf.usermodel.XSSFCell;
 import org.apache.poi.xssf.usermodel.XSSFCellStyle;
 import org.apache.poi.xssf.usermodel.XSSFColor;
+import org.apache.poi.xssf.usermodel.XSSFFont;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
-import java.awt.Color;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 
 /**
- * Handler for cell background color
+ * Handler for cell background color and cell font
+ * <p>
+ * Styles are composed as the cell's existing style plus a delta (background color, cell
+ * font, wrap text and top alignment), so borders, number formats and alignment from a
+ * template or an EasyExcel writer are kept. Composed styles are cached by (existing style
+ * index, delta): each distinct combination creates exactly one cell style per workbook.
  *
  * @author fivefish130
  */
@@ -21,6 +31,11 @@ public class BackgroundHandler {
     private final XSSFWorkbook workbook;
     private final StyleCache styleCache;
 
+    // Background colors of composed styles per (base style, font, wrap), and nearest
+    // matches beyond the style budget
+    private final Map<String, Set<Integer>> backgrounds = new HashMap<>();
+    private final Map<String, Map<Integer, Integer>> nearestBackgrounds = new HashMap<>();
+
     public BackgroundHandler(XSSFWorkbook workbook, StyleCache styleCache) {
         this.workbook = workbook;
         this.styleCache = styleCache;
@@ -32,40 +47,192 @@ public class BackgroundHandler {
      * @param cell Target cell
      * @param colorStr Background color string
      */
-    public void applyBackground(XSSFCell cell, String colorStr) {
-        if (colorStr == null || colorStr.trim().isEmpty()) {
-            return;
+    public void applyBackground(Cell cell, String colorStr) {
+        // Resolve first, so equivalent spellings share one cached style
+        int rgb = ColorParser.parseRgb(colorStr);
+        if (rgb != ColorParser.NO_COLOR) {
+            applyBackground(cell, rgb);
         }
+    }
 
-        // Skip if cell already has background color
-        XSSFCellStyle existing = cell.getCellStyle();
-        if (existing != null && existing.getFillPattern() != null &&
-            existing.getFillForegroundColorColor() != null) {
+    /**
+     * Apply resolved background color to cell (only if not already set)
+     *
+     * @param cell Target cell
+     * @param rgb 24-bit RGB background color
+     */
+    public void applyBackground(Cell cell, int rgb) {
+        applyDelta(cell, rgb, false);
+    }
+
+    /**
+     * Apply background color and wrap text to cell, keeping the rest of its style
+     * <p>
+     * A background is only applied if the cell style has no fill yet. Beyond the style
+     * budget, the nearest existing background is used, or the cell keeps its style.
+     *
+     * @param cell Target cell
+     * @param rgb 24-bit RGB background color, or {@link ColorParser#NO_COLOR}
+     * @param wrap Wrap text (for multi-line content)
+     */
+    public void applyDelta(Cell cell, int rgb, boolean wrap) {
+        CellStyle base = cell.getCellStyle();
+        if (hasFill(base)) {
+            rgb = ColorParser.NO_COLOR;
+        }
+        if (wrap && base.getWrapText()) {
+            wrap = false;
+        }
+        if (rgb == ColorParser.NO_COLOR && !wrap) {
             return;
         }
+        XSSFCellStyle style = compose(base, null, rgb, wrap);
+        if (style != null) {
+            cell.setCellStyle(style);
+        }
+    }
 
-        // Get or create cached style
-        String cacheKey = StyleCache.generateBackgroundKey(colorStr);
-        XSSFCellStyle style = styleCache.getOrCreate(cacheKey, wb -> createBackgroundStyle(wb, colorStr));
+    /**
+     * Apply font and optional background color to cell
+     * <p>
+     * Used for text with a single uniformly styled run, which is written as a plain string.
+     * Beyond the style budget, only an existing style with the nearest background is used.
+     *
+     * @param cell Target cell
+     * @param font Cell font
+     * @param rgb 24-bit RGB background color, or {@link ColorParser#NO_COLOR}
+     * @return false if no style was applied (write rich text instead)
+     */
+    public boolean applyFont(Cell cell, XSSFFont font, int rgb) {
+        return applyFont(cell, font, rgb, false);
+    }
 
+    /**
+     * Apply font, optional background color and wrap text to cell, keeping the rest of its style
+     *
+     * @param cell Target cell
+     * @param font Cell font
+     * @param rgb 24-bit RGB background color, or {@link ColorParser#NO_COLOR}
+     * @param wrap Wrap text (for multi-line content)
+     * @return false if no style was applied (write rich text instead)
+     */
+    public boolean applyFont(Cell cell, XSSFFont font, int rgb, boolean wrap) {
+        CellStyle base = cell.getCellStyle();
+        if (hasFill(base)) {
+            rgb = ColorParser.NO_COLOR;
+        }
+        XSSFCellStyle style = compose(base, font, rgb, wrap && !base.getWrapText());
+        if (style == null) {
+            return false;
+        }
         cell.setCellStyle(style);
+        return true;
     }
 
     /**
-     * Create cell style with background color
+     * Get or create the style composed of a base style and a delta
      */
-    private XSSFCellStyle createBackgroundStyle(XSSFWorkbook wb, String colorStr) {
-        XSSFCellStyle style = wb.createCellStyle();
+    private XSSFCellStyle compose(CellStyle base, XSSFFont font, int rgb, boolean wrap) {
+        String cacheKey = deltaKey(base, font, rgb, wrap);
+        return styleCache.getOrCreate(cacheKey, () -> fallbackKey(base, font, rgb, wrap), wb -> {
+            XSSFCellStyle style = createDeltaStyle(wb, base, font, rgb, wrap);
+            if (rgb != ColorParser.NO_COLOR) {
+                backgrounds.computeIfAbsent(deltaKey(base, font, ColorParser.NO_COLOR, wrap), k -> new HashSet<>())
+                        .add(rgb);
+            }
+            return style;
+        });
+    }
 
-        Color color = ColorParser.parse(colorStr);
-        if (color != null) {
-            XSSFColor xssfColor = new XSSFColor(color, wb.getStylesSource().getIndexedColors());
-            style.setFillForegroundColor(xssfColor);
-            style.setFillPattern(FillPatternType.SOLID_FOREGROUND);
+    /**
+     * Key of the delta with the nearest background composed onto the same base style, font
+     * and wrap, used beyond the style budget
+     */
+    private String fallbackKey(CellStyle base, XSSFFont font, int rgb, boolean wrap) {
+        if (rgb == ColorParser.NO_COLOR) {
+            return null;
+        }
+        String group = deltaKey(base, font, ColorParser.NO_COLOR, wrap);
+        Set<Integer> candidates = backgrounds.get(group);
+        if (candidates == null) {
+            return null;
         }
+        return deltaKey(base, font, nearestBackground(group, candidates, rgb), wrap);
+    }
 
-        style.setVerticalAlignment(VerticalAlignment.TOP);
+    /**
+     * Background of a group nearest to a color: the quantized color if it was used, else
+     * the closest one
+     */
+    private int nearestBackground(String group, Set<Integer> candidates, int rgb) {
+        Map<Integer, Integer> nearestInGroup = nearestBackgrounds.computeIfAbsent(group, k -> new HashMap<>());
+        Integer cached = nearestInGroup.get(rgb);
+        if (cached != null) {
+            return cached;
+        }
+        int nearest = ColorParser.quantize(rgb);
+        if (!candidates.contains(nearest)) {
+            int nearestDistance = Integer.MAX_VALUE;
+            for (int candidate : candidates) {
+                int distance = colorDistance(rgb, candidate);
+                if (distance < nearestDistance) {
+                    nearestDistance = distance;
+                    nearest = candidate;
+                }
+            }
+        }
+        nearestInGroup.put(rgb, nearest);
+        return nearest;
+    }
+
+    private static String deltaKey(CellStyle base, XSSFFont font, int rgb, boolean wrap) {
+        StringBuilder key = new StringBuilder(40).append("base:").append(base.getIndex());
+        if (font != null) {
+            key.append("|font:").append(font.getIndex());
+        }
+        if (rgb != ColorParser.NO_COLOR) {
+            StyleCache.appendBackgroundKey(key.append('|'), rgb);
+        }
+        if (wrap) {
+            key.append("|wrap");
+        }
+        return key.toString();
+    }
 
+    /**
+     * Create cell style as a copy of the base style with the delta applied
+     */
+    private XSSFCellStyle createDeltaStyle(XSSFWorkbook wb, CellStyle base, XSSFFont font, int rgb, boolean wrap) {
+        XSSFCellStyle style = wb.createCellStyle();
+        if (base.getIndex() != 0) {
+            style.cloneStyleFrom(base);
+        }
+        if (font != null) {
+            style.setFont(font);
+        }
+        if (rgb != ColorParser.NO_COLOR) {
+            style.setFillForegroundColor(new XSSFColor(ColorParser.toBytes(rgb), wb.getStylesSource().getIndexedColors()));
+            style.setFillPattern(FillPatternType.SOLID_FOREGROUND);
+        }
+        if (wrap) {
+            style.setWrapText(true);
+        }
+        // Filled and multi-line cells read top-down; keep an explicit alignment of the base
+        if ((rgb != ColorParser.NO_COLOR || wrap) && base.getVerticalAlignment() == VerticalAlignment.BOTTOM) {
+            style.setVerticalAlignment(VerticalAlignment.TOP);
+        }
         return style;
     }
+
+    private static boolean hasFill(CellStyle style) {
+        return style.getFillPattern() != FillPatternType.NO_FILL && style.getFillForegroundColorColor() != null;
+    }
+
+    private static int colorDistance(int a, int b) {
+        int distance = 0;
+        for (int shift = 0; shift <= 16; shift += 8) {
+            distance += Math.abs((a >> shift & 0xFF) - (b >> shift & 0xFF));
+        }
+        return distance;
+    }
 }
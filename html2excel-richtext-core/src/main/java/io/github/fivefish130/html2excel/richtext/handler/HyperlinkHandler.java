@@ -1,11 +1,11 @@
 package io.github.fivefish130.html2excel.richtext.handler;
 
 import org.apache.poi.common.usermodel.HyperlinkType;
-import org.apache.poi.xssf.usermodel.XSSFCell;
-import org.apache.poi.xssf.usermodel.XSSFHyperlink;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CreationHelper;
+import org.apache.poi.ss.usermodel.Hyperlink;
+import org.apache.poi.ss.usermodel.Workbook;
 import org.jsoup.nodes.Element;
-import org.jsoup.select.Elements;
 
 /**
  * Handler for hyperlinks in HTML
@@ -14,10 +14,11 @@ import org.jsoup.select.Elements;
  */
 public class HyperlinkHandler {
 
-    private final XSSFWorkbook workbook;
+    // XSSFWorkbook creates a new helper on every getCreationHelper() call
+    private final CreationHelper creationHelper;
 
-    public HyperlinkHandler(XSSFWorkbook workbook) {
-        this.workbook = workbook;
+    public HyperlinkHandler(Workbook workbook) {
+        this.creationHelper = workbook.getCreationHelper();
     }
 
     /**
@@ -25,11 +26,15 @@ public class HyperlinkHandler {
      *
      * @param element HTML element
      * @return First href URL, or null if not found
+     * @deprecated Conversions record the first href while traversing;
+     * use {@link io.github.fivefish130.html2excel.richtext.model.CompiledRichText#getFirstHref()}
      */
+    @Deprecated
     public String findFirstHref(Element element) {
-        Elements links = element.select("a[href]");
-        if (!links.isEmpty()) {
-            return links.get(0).attr("href");
+        for (Element link : element.getElementsByTag("a")) {
+            if (link.hasAttr("href")) {
+                return link.attr("href");
+            }
         }
         return null;
     }
@@ -40,13 +45,13 @@ public class HyperlinkHandler {
      * @param cell Target cell
      * @param href URL string
      */
-    public void applyHyperlink(XSSFCell cell, String href) {
+    public void applyHyperlink(Cell cell, String href) {
         if (href == null || href.trim().isEmpty()) {
             return;
         }
 
         try {
-            XSSFHyperlink link = workbook.getCreationHelper().createHyperlink(HyperlinkType.URL);
+            Hyperlink link = creationHelper.createHyperlink(HyperlinkType.URL);
             link.setAddress(href);
             cell.setHyperlink(link);
         } catch (Exception ignored) {
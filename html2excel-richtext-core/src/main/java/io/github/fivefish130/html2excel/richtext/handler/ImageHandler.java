@@ -1,14 +1,11 @@
 package io.github.fivefish130.html2excel.richtext.handler;
 
 import io.github.fivefish130.html2excel.richtext.config.ConverterConfig;
+import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.ClientAnchor;
+import org.apache.poi.ss.usermodel.Drawing;
 import org.apache.poi.ss.usermodel.Workbook;
-import org.apache.poi.xssf.usermodel.XSSFCell;
-import org.apache.poi.xssf.usermodel.XSSFDrawing;
-import org.apache.poi.xssf.usermodel.XSSFPicture;
-import org.apache.poi.xssf.usermodel.XSSFSheet;
 import org.jsoup.nodes.Element;
-import org.jsoup.select.Elements;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -18,6 +15,7 @@ import java.io.InputStream;
 import java.net.URL;
 import java.net.URLConnection;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
@@ -49,19 +47,66 @@ public class ImageHandler {
      *
      * @param body HTML element
      * @param cell Target cell
+     * @deprecated Conversions record image sources while traversing; use {@link #processImages(List, Cell)}
+     * with {@link io.github.fivefish130.html2excel.richtext.model.CompiledRichText#getImageSources()}
      */
-    public void processImages(Element body, XSSFCell cell) {
+    @Deprecated
+    public void processImages(Element body, Cell cell) {
         if (!config.isEnableImageDownload()) {
             return;
         }
+        processImages(findImageSources(body), cell);
+    }
+
+    /**
+     * Find image sources in HTML element
+     *
+     * @param body HTML element
+     * @return Non-empty image sources in document order
+     * @deprecated Conversions record image sources while traversing;
+     * use {@link io.github.fivefish130.html2excel.richtext.model.CompiledRichText#getImageSources()}
+     */
+    @Deprecated
+    public List<String> findImageSources(Element body) {
+        List<String> sources = null;
+        for (Element img : body.getElementsByTag("img")) {
+            String src = img.attr("src");
+            if (!src.trim().isEmpty()) {
+                if (sources == null) {
+                    sources = new ArrayList<>();
+                }
+                sources.add(src);
+            }
+        }
+        return sources == null ? Collections.<String>emptyList() : sources;
+    }
 
-        Elements imgElements = body.select("img");
-        if (imgElements.isEmpty()) {
+    /**
+     * Download images and embed into cell (async mode)
+     *
+     * @param sources Image sources
+     * @param cell Target cell
+     */
+    public void processImages(List<String> sources, Cell cell) {
+        if (!config.isEnableImageDownload() || sources.isEmpty()) {
             return;
         }
+        processImages(sources, cell, cell.getSheet().createDrawingPatriarch());
+    }
 
-        XSSFSheet sheet = cell.getSheet();
-        XSSFDrawing drawing = sheet.createDrawingPatriarch();
+    /**
+     * Download images and embed into cell using an existing drawing patriarch
+     * <p>
+     * Batch conversions look the patriarch up once per sheet and pass it here.
+     *
+     * @param sources Image sources
+     * @param cell Target cell
+     * @param drawing Drawing patriarch of the cell's sheet
+     */
+    public void processImages(List<String> sources, Cell cell, Drawing<?> drawing) {
+        if (!config.isEnableImageDownload() || sources.isEmpty()) {
+            return;
+        }
 
         int rowIndex = cell.getRowIndex();
         int colIndex = cell.getColumnIndex();
@@ -69,9 +114,8 @@ public class ImageHandler {
         // Download images asynchronously in parallel
         List<CompletableFuture<ImageDownloadResult>> futures = new ArrayList<>();
 
-        for (int i = 0; i < imgElements.size(); i++) {
-            Element img = imgElements.get(i);
-            String src = img.attr("src");
+        for (int i = 0; i < sources.size(); i++) {
+            String src = sources.get(i);
             int imageIndex = i;
 
             if (src == null || src.trim().isEmpty()) {
@@ -126,7 +170,7 @@ public class ImageHandler {
     /**
      * Embed downloaded image into cell
      */
-    private void embedImage(XSSFCell cell, XSSFDrawing drawing, ImageDownloadResult result,
+    private void embedImage(Cell cell, Drawing<?> drawing, ImageDownloadResult result,
                            int rowIndex, int colIndex) {
         try {
             int pictureIdx = cell.getSheet().getWorkbook().addPicture(
@@ -139,7 +183,7 @@ public class ImageHandler {
             );
 
             anchor.setAnchorType(ClientAnchor.AnchorType.MOVE_AND_RESIZE);
-            XSSFPicture picture = drawing.createPicture(anchor, pictureIdx);
+            drawing.createPicture(anchor, pictureIdx);
 
             log.info("Successfully embedded image from {} into cell [{}, {}]",
                     result.imageUrl, rowIndex, colIndex);
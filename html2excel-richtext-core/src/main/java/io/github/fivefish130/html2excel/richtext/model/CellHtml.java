@@ -0,0 +1,46 @@
+package io.github.fivefish130.html2excel.richtext.model;
+
+import org.apache.poi.ss.usermodel.Cell;
+
+import java.util.Objects;
+
+/**
+ * Target cell and its HTML content, one item of a batch conversion
+ *
+ * @author fivefish130
+ */
+public final class CellHtml {
+
+    private final Cell cell;
+    private final String html;
+
+    /**
+     * Create batch item
+     *
+     * @param cell Target cell (XSSF or SXSSF)
+     * @param html HTML string (null or empty clears the cell text)
+     */
+    public CellHtml(Cell cell, String html) {
+        this.cell = Objects.requireNonNull(cell, "cell cannot be null");
+        this.html = html;
+    }
+
+    /**
+     * Create batch item
+     *
+     * @param cell Target cell (XSSF or SXSSF)
+     * @param html HTML string
+     * @return Batch item
+     */
+    public static CellHtml of(Cell cell, String html) {
+        return new CellHtml(cell, html);
+    }
+
+    public Cell getCell() { return cell; }
+    public String getHtml() { return html; }
+
+    @Override
+    public String toString() {
+        return "CellHtml{cell=" + cell.getAddress() + ", html=" + html + "}";
+    }
+}
@@ -0,0 +1,435 @@
+package io.github.fivefish130.html2excel.richtext.model;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * HTML compiled into a workbook-independent run model
+ * <p>
+ * Holds the plain text, the run boundaries with their resolved {@link RunStyle}, the
+ * first hyperlink, image sources and the cell background color. Instances are immutable
+ * and thread-safe: compile once (e.g. when content is ingested), store the compact
+ * {@link #toBytes() binary form} next to the row, and bind it to any workbook later via
+ * {@code HtmlToExcelConverter.applyCompiledToCell(cell, compiled)} without touching Jsoup
+ * or the CSS parser again.
+ *
+ * @author fivefish130
+ */
+public final class CompiledRichText {
+
+    /** Background value for "not set" */
+    public static final int NO_BACKGROUND = -1;
+
+    /** Compiled form of empty HTML */
+    public static final CompiledRichText EMPTY = new CompiledRichText(
+            "", new int[0], new RunStyle[0], null, Collections.<String>emptyList(), NO_BACKGROUND, false);
+
+    private static final int FORMAT_VERSION = 1;
+
+    // Run style flags in the binary form
+    private static final int FLAG_BOLD = 1;
+    private static final int FLAG_ITALIC = 1 << 1;
+    private static final int FLAG_UNDERLINE = 1 << 2;
+    private static final int FLAG_COLOR = 1 << 3;
+    private static final int FLAG_SIZE = 1 << 4;
+    private static final int FLAG_FAMILY = 1 << 5;
+
+    private final String text;
+    private final int[] runStarts;
+    private final RunStyle[] runStyles;
+    private final String firstHref;
+    private final List<String> imageSources;
+    private final int backgroundColor;
+    private final boolean truncated;
+
+    /**
+     * Create compiled rich text
+     *
+     * @param text Plain text
+     * @param runStarts Start offset of each run (ascending, first is 0)
+     * @param runStyles Style of each run, null for the default font
+     * @param firstHref First hyperlink, or null
+     * @param imageSources Image sources in document order
+     * @param backgroundColor 24-bit RGB background color, or {@link #NO_BACKGROUND}
+     */
+    public CompiledRichText(String text, int[] runStarts, RunStyle[] runStyles, String firstHref,
+                            List<String> imageSources, int backgroundColor) {
+        this(text, runStarts, runStyles, firstHref, imageSources, backgroundColor, false);
+    }
+
+    /**
+     * Create compiled rich text
+     *
+     * @param text Plain text
+     * @param runStarts Start offset of each run (ascending, first is 0)
+     * @param runStyles Style of each run, null for the default font
+     * @param firstHref First hyperlink, or null
+     * @param imageSources Image sources in document order
+     * @param backgroundColor 24-bit RGB background color, or {@link #NO_BACKGROUND}
+     * @param truncated Whether the text was cut to a length limit
+     */
+    public CompiledRichText(String text, int[] runStarts, RunStyle[] runStyles, String firstHref,
+                            List<String> imageSources, int backgroundColor, boolean truncated) {
+        if (runStarts.length != runStyles.length) {
+            throw new IllegalArgumentException("runStarts and runStyles must have the same length");
+        }
+        this.text = text == null ? "" : text;
+        this.runStarts = runStarts.clone();
+        this.runStyles = runStyles.clone();
+        this.firstHref = firstHref;
+        this.imageSources = imageSources == null || imageSources.isEmpty()
+                ? Collections.<String>emptyList()
+                : Collections.unmodifiableList(new ArrayList<>(imageSources));
+        this.backgroundColor = backgroundColor < 0 ? NO_BACKGROUND : backgroundColor & 0xFFFFFF;
+        this.truncated = truncated;
+    }
+
+    public String getText() { return text; }
+    public int length() { return text.length(); }
+    public int getRunCount() { return runStarts.length; }
+    public String getFirstHref() { return firstHref; }
+    public List<String> getImageSources() { return imageSources; }
+    public int getBackgroundColor() { return backgroundColor; }
+    public boolean hasBackgroundColor() { return backgroundColor != NO_BACKGROUND; }
+    public boolean isTruncated() { return truncated; }
+
+    /**
+     * Start offset of a run (inclusive)
+     */
+    public int getRunStart(int run) {
+        return runStarts[run];
+    }
+
+    /**
+     * End offset of a run (exclusive)
+     */
+    public int getRunEnd(int run) {
+        return run + 1 < runStarts.length ? runStarts[run + 1] : text.length();
+    }
+
+    /**
+     * Style of a run, or null if the run uses the default font
+     */
+    public RunStyle getRunStyle(int run) {
+        return runStyles[run];
+    }
+
+    /**
+     * Style shared by the whole text, if it is a single formatted run
+     *
+     * @return Run style, or null if the text is empty, unformatted or has several runs
+     */
+    public RunStyle getUniformRunStyle() {
+        if (runStyles.length != 1 || runStarts[0] != 0 || text.isEmpty()) {
+            return null;
+        }
+        return runStyles[0];
+    }
+
+    /**
+     * Check if any run changes the default font
+     */
+    public boolean isFormatted() {
+        for (RunStyle style : runStyles) {
+            if (style != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Cut the text to a length limit, keeping the formatting of the retained prefix
+     * <p>
+     * The suffix continues the last retained run; a surrogate pair is never split.
+     *
+     * @param maxLength Maximum text length, including the suffix
+     * @param suffix Suffix marking truncated text
+     * @return This instance if the text fits, otherwise the truncated copy
+     */
+    public CompiledRichText truncate(int maxLength, String suffix) {
+        if (text.length() <= maxLength) {
+            return this;
+        }
+        if (suffix.length() > maxLength) {
+            throw new IllegalArgumentException("suffix is longer than maxLength");
+        }
+        int cut = maxLength - suffix.length();
+        if (cut > 0 && Character.isHighSurrogate(text.charAt(cut - 1))) {
+            cut--;
+        }
+        int runs = runStarts.length;
+        while (runs > 1 && runStarts[runs - 1] >= cut) {
+            runs--;
+        }
+        return new CompiledRichText(text.substring(0, cut) + suffix,
+                Arrays.copyOf(runStarts, runs), Arrays.copyOf(runStyles, runs),
+                firstHref, imageSources, backgroundColor, true);
+    }
+
+    // ==================== Binary form ====================
+
+    /**
+     * Encode into a compact binary form
+     * <p>
+     * Layout: version, text (UTF-8), style table, runs (start delta + style index),
+     * hyperlink, image sources, background, truncation flag. Integers are unsigned varints.
+     *
+     * @return Encoded bytes
+     */
+    public byte[] toBytes() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(text.length() + 16 + runStarts.length * 3);
+        writeVarInt(out, FORMAT_VERSION);
+        writeString(out, text);
+
+        // Distinct styles are written once, runs refer to them by index (0 = default font)
+        Map<RunStyle, Integer> styleIndex = new HashMap<>();
+        List<RunStyle> styles = new ArrayList<>();
+        for (RunStyle style : runStyles) {
+            if (style != null && !styleIndex.containsKey(style)) {
+                styleIndex.put(style, styles.size() + 1);
+                styles.add(style);
+            }
+        }
+        writeVarInt(out, styles.size());
+        for (RunStyle style : styles) {
+            writeRunStyle(out, style);
+        }
+
+        writeVarInt(out, runStarts.length);
+        int previous = 0;
+        for (int i = 0; i < runStarts.length; i++) {
+            writeVarInt(out, runStarts[i] - previous);
+            previous = runStarts[i];
+            writeVarInt(out, runStyles[i] == null ? 0 : styleIndex.get(runStyles[i]));
+        }
+
+        writeNullableString(out, firstHref);
+        writeVarInt(out, imageSources.size());
+        for (String src : imageSources) {
+            writeString(out, src);
+        }
+        writeVarInt(out, backgroundColor + 1);
+        out.write(truncated ? 1 : 0);
+        return out.toByteArray();
+    }
+
+    /**
+     * Decode from the binary form produced by {@link #toBytes()}
+     *
+     * @param bytes Encoded bytes
+     * @return Compiled rich text
+     * @throws IllegalArgumentException if the bytes are not a valid encoding
+     */
+    public static CompiledRichText fromBytes(byte[] bytes) {
+        if (bytes == null) {
+            throw new IllegalArgumentException("bytes cannot be null");
+        }
+        try {
+            Reader in = new Reader(bytes);
+            int version = in.readVarInt();
+            if (version != FORMAT_VERSION) {
+                throw new IllegalArgumentException("Unsupported compiled rich text version: " + version);
+            }
+            String text = in.readString();
+
+            RunStyle[] styles = new RunStyle[in.readCount()];
+            for (int i = 0; i < styles.length; i++) {
+                styles[i] = readRunStyle(in);
+            }
+
+            int runCount = in.readCount();
+            int[] runStarts = new int[runCount];
+            RunStyle[] runStyles = new RunStyle[runCount];
+            int offset = 0;
+            for (int i = 0; i < runCount; i++) {
+                offset += in.readVarInt();
+                if (offset > text.length()) {
+                    throw new IllegalArgumentException("Run offset out of range: " + offset);
+                }
+                runStarts[i] = offset;
+                int style = in.readVarInt();
+                runStyles[i] = style == 0 ? null : styles[style - 1];
+            }
+
+            String firstHref = in.readNullableString();
+            int imageCount = in.readCount();
+            List<String> imageSources = new ArrayList<>(imageCount);
+            for (int i = 0; i < imageCount; i++) {
+                imageSources.add(in.readString());
+            }
+            int backgroundColor = in.readVarInt() - 1;
+            boolean truncated = in.readByte() != 0;
+
+            if (in.remaining() != 0) {
+                throw new IllegalArgumentException("Trailing bytes in compiled rich text");
+            }
+            return new CompiledRichText(text, runStarts, runStyles, firstHref, imageSources,
+                    backgroundColor, truncated);
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Truncated compiled rich text", e);
+        }
+    }
+
+    private static void writeRunStyle(ByteArrayOutputStream out, RunStyle style) {
+        int flags = (style.isBold() ? FLAG_BOLD : 0)
+                | (style.isItalic() ? FLAG_ITALIC : 0)
+                | (style.isUnderline() ? FLAG_UNDERLINE : 0)
+                | (style.hasColor() ? FLAG_COLOR : 0)
+                | (style.getFontSize() > 0 ? FLAG_SIZE : 0)
+                | (style.getFontFamily() != null ? FLAG_FAMILY : 0);
+        out.write(flags);
+        if (style.hasColor()) {
+            out.write(style.getColor() >> 16);
+            out.write(style.getColor() >> 8);
+            out.write(style.getColor());
+        }
+        if (style.getFontSize() > 0) {
+            writeVarInt(out, style.getFontSize());
+        }
+        if (style.getFontFamily() != null) {
+            writeString(out, style.getFontFamily());
+        }
+    }
+
+    private static RunStyle readRunStyle(Reader in) {
+        int flags = in.readByte();
+        int color = RunStyle.NO_COLOR;
+        if ((flags & FLAG_COLOR) != 0) {
+            color = (in.readByte() << 16) | (in.readByte() << 8) | in.readByte();
+        }
+        short fontSize = (flags & FLAG_SIZE) != 0 ? (short) in.readVarInt() : 0;
+        String fontFamily = (flags & FLAG_FAMILY) != 0 ? in.readString() : null;
+        return new RunStyle(fontFamily, fontSize, (flags & FLAG_BOLD) != 0,
+                (flags & FLAG_ITALIC) != 0, (flags & FLAG_UNDERLINE) != 0, color);
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String s) {
+        byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, utf8.length);
+        out.write(utf8, 0, utf8.length);
+    }
+
+    private static void writeNullableString(ByteArrayOutputStream out, String s) {
+        if (s == null) {
+            writeVarInt(out, 0);
+        } else {
+            byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(out, utf8.length + 1);
+            out.write(utf8, 0, utf8.length);
+        }
+    }
+
+    /**
+     * Cursor over encoded bytes
+     */
+    private static final class Reader {
+        private final byte[] bytes;
+        private int pos;
+
+        Reader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        int readByte() {
+            return bytes[pos++] & 0xFF;
+        }
+
+        int readVarInt() {
+            int value = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                int b = readByte();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    if (value < 0) {
+                        throw new IllegalArgumentException("Negative length in compiled rich text");
+                    }
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint in compiled rich text");
+        }
+
+        int readCount() {
+            // Every counted item takes at least one byte
+            int count = readVarInt();
+            if (count > remaining()) {
+                throw new IllegalArgumentException("Truncated compiled rich text");
+            }
+            return count;
+        }
+
+        String readString() {
+            return readUtf8(readVarInt());
+        }
+
+        String readNullableString() {
+            int length = readVarInt();
+            return length == 0 ? null : readUtf8(length - 1);
+        }
+
+        private String readUtf8(int length) {
+            if (length > remaining()) {
+                throw new IllegalArgumentException("Truncated compiled rich text");
+            }
+            String s = new String(bytes, pos, length, StandardCharsets.UTF_8);
+            pos += length;
+            return s;
+        }
+
+        int remaining() {
+            return bytes.length - pos;
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof CompiledRichText)) {
+            return false;
+        }
+        CompiledRichText other = (CompiledRichText) o;
+        return backgroundColor == other.backgroundColor
+                && truncated == other.truncated
+                && text.equals(other.text)
+                && Arrays.equals(runStarts, other.runStarts)
+                && Arrays.equals(runStyles, other.runStyles)
+                && Objects.equals(firstHref, other.firstHref)
+                && imageSources.equals(other.imageSources);
+    }
+
+    @Override
+    public int hashCode() {
+        int h = text.hashCode();
+        h = 31 * h + Arrays.hashCode(runStarts);
+        h = 31 * h + Arrays.hashCode(runStyles);
+        h = 31 * h + Objects.hashCode(firstHref);
+        h = 31 * h + imageSources.hashCode();
+        h = 31 * h + backgroundColor;
+        h = 31 * h + (truncated ? 1 : 0);
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        return "CompiledRichText{text='" + text + "', runs=" + runStarts.length
+                + ", href=" + firstHref + ", images=" + imageSources.size() + "}";
+    }
+}
@@ -0,0 +1,52 @@
+package io.github.fivefish130.html2excel.richtext.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable HTML table compiled into rows of separately compiled cells
+ *
+ * @author fivefish130
+ */
+public final class CompiledTable {
+
+    private final List<List<TableCell>> rows;
+
+    /**
+     * Create table
+     * <p>
+     * Row spans reaching past the last row are clipped, as browsers do.
+     *
+     * @param rows Rows in document order
+     */
+    public CompiledTable(List<List<TableCell>> rows) {
+        List<List<TableCell>> copy = new ArrayList<>(rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            int remaining = rows.size() - i;
+            List<TableCell> row = new ArrayList<>(rows.get(i));
+            for (int j = 0; j < row.size(); j++) {
+                TableCell cell = row.get(j);
+                if (cell.getRowspan() > remaining) {
+                    row.set(j, new TableCell(cell.getContent(), cell.getColspan(), remaining));
+                }
+            }
+            copy.add(Collections.unmodifiableList(row));
+        }
+        this.rows = Collections.unmodifiableList(copy);
+    }
+
+    /**
+     * Get the rows in document order
+     */
+    public List<List<TableCell>> getRows() {
+        return rows;
+    }
+
+    public int getRowCount() { return rows.size(); }
+
+    @Override
+    public String toString() {
+        return "CompiledTable{rows=" + rows + "}";
+    }
+}
@@ -0,0 +1,193 @@
+package io.github.fivefish130.html2excel.richtext.model;
+
+import io.github.fivefish130.html2excel.richtext.parser.ColorParser;
+import io.github.fivefish130.html2excel.richtext.parser.CssParser;
+
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Resolved, workbook-independent font descriptor of a text run
+ * <p>
+ * All CSS values are already parsed into canonical form: the font size is in points,
+ * the color is a 24-bit RGB value, so equivalent CSS spellings share one font. Unset
+ * properties fall back to the workbook default font.
+ *
+ * @author fivefish130
+ */
+public final class RunStyle {
+
+    /** Color value for "not set" */
+    public static final int NO_COLOR = -1;
+
+    /** Style that doesn't change the default font */
+    public static final RunStyle DEFAULT = new RunStyle(null, (short) 0, false, false, false, NO_COLOR);
+
+    private static final CssParser CSS_PARSER = new CssParser();
+
+    // Font sizes offered by Excel's size list
+    private static final short[] LISTED_SIZES = {8, 9, 10, 11, 12, 14, 16, 18, 20, 22, 24, 26, 28, 36, 48, 72};
+
+    private final String fontFamily;
+    private final short fontSize;
+    private final boolean bold;
+    private final boolean italic;
+    private final boolean underline;
+    private final int color;
+    private final long fontKey;
+
+    /**
+     * Create run style
+     *
+     * @param fontFamily Font family, or null for default
+     * @param fontSize Font size in points, or 0 for default
+     * @param bold Bold
+     * @param italic Italic
+     * @param underline Single underline
+     * @param color 24-bit RGB color, or {@link #NO_COLOR}
+     */
+    public RunStyle(String fontFamily, short fontSize, boolean bold, boolean italic,
+                    boolean underline, int color) {
+        this.fontFamily = fontFamily;
+        this.fontSize = fontSize;
+        this.bold = bold;
+        this.italic = italic;
+        this.underline = underline;
+        this.color = color < 0 ? NO_COLOR : color & 0xFFFFFF;
+        this.fontKey = packFontKey();
+    }
+
+    /**
+     * Pack the font into a long: RGB (bits 0-23), has-color (24), bold (25), italic (26),
+     * underline (27) and size in half-points (28-44); the family is kept as a string
+     */
+    private long packFontKey() {
+        long key = hasColor() ? color | 1L << 24 : 0;
+        if (bold) {
+            key |= 1L << 25;
+        }
+        if (italic) {
+            key |= 1L << 26;
+        }
+        if (underline) {
+            key |= 1L << 27;
+        }
+        key |= (fontSize * 2L & 0x1FFFFL) << 28;
+        return key;
+    }
+
+    /**
+     * Resolve run style from CSS properties
+     *
+     * @param style CSS properties (font-family, font-size, font-weight, font-style, text-decoration, color)
+     * @return Resolved style, {@link #DEFAULT} if nothing changes the default font
+     */
+    public static RunStyle resolve(Map<String, String> style) {
+        String fontFamily = null;
+        if (style.containsKey("font-family")) {
+            fontFamily = CSS_PARSER.normalizeFontName(style.get("font-family"));
+            if (fontFamily != null && fontFamily.isEmpty()) {
+                fontFamily = null;
+            }
+        }
+
+        short fontSize = 0;
+        if (style.containsKey("font-size")) {
+            Short parsed = CSS_PARSER.parseFontSize(style.get("font-size"));
+            if (parsed != null) {
+                fontSize = parsed;
+            }
+        }
+
+        boolean bold = CSS_PARSER.isBold(style.get("font-weight"));
+        boolean italic = CSS_PARSER.isItalic(style.get("font-style"));
+        boolean underline = CSS_PARSER.isUnderline(style.get("text-decoration"));
+
+        int color = NO_COLOR;
+        if (style.containsKey("color")) {
+            color = ColorParser.parseRgb(style.get("color"));
+        }
+
+        if (fontFamily == null && fontSize == 0 && !bold && !italic && !underline && color == NO_COLOR) {
+            return DEFAULT;
+        }
+        return new RunStyle(fontFamily, fontSize, bold, italic, underline, color);
+    }
+
+    /**
+     * Coarsen the style for a font budget: the color to the web-safe palette, the size to
+     * the nearest size of Excel's size list
+     *
+     * @return Quantized style (this if already quantized)
+     */
+    public RunStyle quantize() {
+        int quantizedColor = hasColor() ? ColorParser.quantize(color) : NO_COLOR;
+        short quantizedSize = fontSize > 0 ? nearestListedSize(fontSize) : 0;
+        if (quantizedColor == color && quantizedSize == fontSize) {
+            return this;
+        }
+        return new RunStyle(fontFamily, quantizedSize, bold, italic, underline, quantizedColor);
+    }
+
+    private static short nearestListedSize(short size) {
+        short nearest = LISTED_SIZES[0];
+        for (short listed : LISTED_SIZES) {
+            if (Math.abs(listed - size) < Math.abs(nearest - size)) {
+                nearest = listed;
+            }
+        }
+        return nearest;
+    }
+
+    public String getFontFamily() { return fontFamily; }
+    public short getFontSize() { return fontSize; }
+    public boolean isBold() { return bold; }
+    public boolean isItalic() { return italic; }
+    public boolean isUnderline() { return underline; }
+    public int getColor() { return color; }
+    public boolean hasColor() { return color != NO_COLOR; }
+
+    /**
+     * Get the packed font descriptor: equal keys and families mean equal fonts
+     *
+     * @return Packed key of all properties but the family
+     */
+    public long getFontKey() { return fontKey; }
+
+    /**
+     * Check if this style leaves the default font unchanged
+     */
+    public boolean isDefault() {
+        return this == DEFAULT || equals(DEFAULT);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof RunStyle)) {
+            return false;
+        }
+        RunStyle other = (RunStyle) o;
+        return fontKey == other.fontKey && Objects.equals(fontFamily, other.fontFamily);
+    }
+
+    @Override
+    public int hashCode() {
+        int h = Objects.hashCode(fontFamily);
+        h = 31 * h + fontSize;
+        h = 31 * h + (bold ? 1 : 0);
+        h = 31 * h + (italic ? 2 : 0);
+        h = 31 * h + (underline ? 4 : 0);
+        h = 31 * h + color;
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        return "RunStyle{family=" + fontFamily + ", size=" + fontSize + ", bold=" + bold
+                + ", italic=" + italic + ", underline=" + underline
+                + ", color=" + (hasColor() ? String.format("#%06X", color) : "none") + "}";
+    }
+}
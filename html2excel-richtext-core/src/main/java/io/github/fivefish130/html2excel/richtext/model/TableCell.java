@@ -0,0 +1,37 @@
+package io.github.fivefish130.html2excel.richtext.model;
+
+import java.util.Objects;
+
+/**
+ * Cell of an expanded HTML table: its compiled content and spans
+ *
+ * @author fivefish130
+ */
+public final class TableCell {
+
+    private final CompiledRichText content;
+    private final int colspan;
+    private final int rowspan;
+
+    /**
+     * Create table cell
+     *
+     * @param content Compiled cell content
+     * @param colspan Number of columns spanned (at least 1)
+     * @param rowspan Number of rows spanned (at least 1)
+     */
+    public TableCell(CompiledRichText content, int colspan, int rowspan) {
+        this.content = Objects.requireNonNull(content, "content cannot be null");
+        this.colspan = Math.max(1, colspan);
+        this.rowspan = Math.max(1, rowspan);
+    }
+
+    public CompiledRichText getContent() { return content; }
+    public int getColspan() { return colspan; }
+    public int getRowspan() { return rowspan; }
+
+    @Override
+    public String toString() {
+        return "TableCell{content=" + content + ", colspan=" + colspan + ", rowspan=" + rowspan + "}";
+    }
+}
@@ -0,0 +1,18 @@
+package io.github.fivefish130.html2excel.richtext.model;
+
+/**
+ * Placement of HTML tables when converting to a cell
+ *
+ * @author fivefish130
+ */
+public enum TableLayout {
+
+    /** Tables are flattened into the cell text, cells separated by {@code " | "} */
+    INLINE,
+
+    /** Tables are expanded into a cell grid starting in the row below the cell */
+    BELOW,
+
+    /** Tables are expanded into a cell grid starting in the column right of the cell */
+    BESIDE
+}
@@ -0,0 +1,35 @@
+package io.github.fivefish130.html2excel.richtext.model;
+
+/**
+ * CSS {@code white-space} handling of text
+ *
+ * @author fivefish130
+ */
+public enum WhiteSpace {
+
+    /** Whitespace runs collapse to one space, also across elements ({@code normal}, {@code nowrap}) */
+    NORMAL,
+
+    /** Whitespace and line breaks are kept ({@code pre}, {@code pre-wrap}, {@code break-spaces}) */
+    PRE,
+
+    /** Line breaks are kept, other whitespace collapses ({@code pre-line}) */
+    PRE_LINE;
+
+    /**
+     * Parse a CSS white-space value
+     *
+     * @param value CSS value
+     * @return Mode, {@link #NORMAL} for unknown values
+     */
+    public static WhiteSpace parse(String value) {
+        if (value == null) {
+            return NORMAL;
+        }
+        String v = value.trim();
+        if (v.equalsIgnoreCase("pre") || v.equalsIgnoreCase("pre-wrap") || v.equalsIgnoreCase("break-spaces")) {
+            return PRE;
+        }
+        return v.equalsIgnoreCase("pre-line") ? PRE_LINE : NORMAL;
+    }
+}
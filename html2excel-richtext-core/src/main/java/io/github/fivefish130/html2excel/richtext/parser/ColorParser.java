@@ -1,80 +1,337 @@
 package io.github.fivefish130.html2excel.richtext.parser;
 
+import io.github.fivefish130.html2excel.richtext.cache.ParseCache;
+
 import java.awt.Color;
+import java.util.Arrays;
 import java.util.Locale;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
- * Color parser supporting multiple formats
- * - Hex: #FF0000, #F00
- * - RGB: rgb(255,0,0)
- * - Named: red, blue, green, etc.
+ * Color parser supporting CSS color formats
+ * - Hex: #F00, #F008, #FF0000, #FF000080
+ * - Functions: rgb(255,0,0), rgba(255,0,0,.5), rgb(255 0 0 / 50%), hsl(0,100%,50%), hsla(...)
+ * - Named: the 148 CSS named colors, plus "transparent"
+ * <p>
+ * Colors are resolved to 24-bit RGB ints without AWT. Translucent colors are blended
+ * over white (as they appear on a blank sheet); fully transparent colors are no color.
+ * Results are cached process-wide by the raw value.
  *
  * @author fivefish130
  */
 public class ColorParser {
 
-    private static final Pattern RGB_PATTERN = Pattern.compile(
-            "rgb\\s*\\(\\s*(\\d+)\\s*,\\s*(\\d+)\\s*,\\s*(\\d+)\\s*\\)");
+    /** Result for unparsable or transparent colors */
+    public static final int NO_COLOR = -1;
+
+    private static final ParseCache<Integer> CACHE = new ParseCache<>(1024, 64);
+
+    private static final String[] NAMED_COLORS = {
+            "aliceblue", "f0f8ff", "antiquewhite", "faebd7", "aqua", "00ffff", "aquamarine", "7fffd4",
+            "azure", "f0ffff", "beige", "f5f5dc", "bisque", "ffe4c4", "black", "000000",
+            "blanchedalmond", "ffebcd", "blue", "0000ff", "blueviolet", "8a2be2", "brown", "a52a2a",
+            "burlywood", "deb887", "cadetblue", "5f9ea0", "chartreuse", "7fff00", "chocolate", "d2691e",
+            "coral", "ff7f50", "cornflowerblue", "6495ed", "cornsilk", "fff8dc", "crimson", "dc143c",
+            "cyan", "00ffff", "darkblue", "00008b", "darkcyan", "008b8b", "darkgoldenrod", "b8860b",
+            "darkgray", "a9a9a9", "darkgreen", "006400", "darkgrey", "a9a9a9", "darkkhaki", "bdb76b",
+            "darkmagenta", "8b008b", "darkolivegreen", "556b2f", "darkorange", "ff8c00", "darkorchid", "9932cc",
+            "darkred", "8b0000", "darksalmon", "e9967a", "darkseagreen", "8fbc8f", "darkslateblue", "483d8b",
+            "darkslategray", "2f4f4f", "darkslategrey", "2f4f4f", "darkturquoise", "00ced1", "darkviolet", "9400d3",
+            "deeppink", "ff1493", "deepskyblue", "00bfff", "dimgray", "696969", "dimgrey", "696969",
+            "dodgerblue", "1e90ff", "firebrick", "b22222", "floralwhite", "fffaf0", "forestgreen", "228b22",
+            "fuchsia", "ff00ff", "gainsboro", "dcdcdc", "ghostwhite", "f8f8ff", "gold", "ffd700",
+            "goldenrod", "daa520", "gray", "808080", "green", "008000", "greenyellow", "adff2f",
+            "grey", "808080", "honeydew", "f0fff0", "hotpink", "ff69b4", "indianred", "cd5c5c",
+            "indigo", "4b0082", "ivory", "fffff0", "khaki", "f0e68c", "lavender", "e6e6fa",
+            "lavenderblush", "fff0f5", "lawngreen", "7cfc00", "lemonchiffon", "fffacd", "lightblue", "add8e6",
+            "lightcoral", "f08080", "lightcyan", "e0ffff", "lightgoldenrodyellow", "fafad2", "lightgray", "d3d3d3",
+            "lightgreen", "90ee90", "lightgrey", "d3d3d3", "lightpink", "ffb6c1", "lightsalmon", "ffa07a",
+            "lightseagreen", "20b2aa", "lightskyblue", "87cefa", "lightslategray", "778899", "lightslategrey", "778899",
+            "lightsteelblue", "b0c4de", "lightyellow", "ffffe0", "lime", "00ff00", "limegreen", "32cd32",
+            "linen", "faf0e6", "magenta", "ff00ff", "maroon", "800000", "mediumaquamarine", "66cdaa",
+            "mediumblue", "0000cd", "mediumorchid", "ba55d3", "mediumpurple", "9370db", "mediumseagreen", "3cb371",
+            "mediumslateblue", "7b68ee", "mediumspringgreen", "00fa9a", "mediumturquoise", "48d1cc",
+            "mediumvioletred", "c71585", "midnightblue", "191970", "mintcream", "f5fffa", "mistyrose", "ffe4e1",
+            "moccasin", "ffe4b5", "navajowhite", "ffdead", "navy", "000080", "oldlace", "fdf5e6",
+            "olive", "808000", "olivedrab", "6b8e23", "orange", "ffa500", "orangered", "ff4500",
+            "orchid", "da70d6", "palegoldenrod", "eee8aa", "palegreen", "98fb98", "paleturquoise", "afeeee",
+            "palevioletred", "db7093", "papayawhip", "ffefd5", "peachpuff", "ffdab9", "peru", "cd853f",
+            "pink", "ffc0cb", "plum", "dda0dd", "powderblue", "b0e0e6", "purple", "800080",
+            "rebeccapurple", "663399", "red", "ff0000", "rosybrown", "bc8f8f", "royalblue", "4169e1",
+            "saddlebrown", "8b4513", "salmon", "fa8072", "sandybrown", "f4a460", "seagreen", "2e8b57",
+            "seashell", "fff5ee", "sienna", "a0522d", "silver", "c0c0c0", "skyblue", "87ceeb",
+            "slateblue", "6a5acd", "slategray", "708090", "slategrey", "708090", "snow", "fffafa",
+            "springgreen", "00ff7f", "steelblue", "4682b4", "tan", "d2b48c", "teal", "008080",
+            "thistle", "d8bfd8", "tomato", "ff6347", "turquoise", "40e0d0", "violet", "ee82ee",
+            "wheat", "f5deb3", "white", "ffffff", "whitesmoke", "f5f5f5", "yellow", "ffff00",
+            "yellowgreen", "9acd32"
+    };
+
+    // Perfect hash table of named colors: the seed is searched once so that no two names collide
+    private static final int NAME_TABLE_MASK = 2047;
+    private static final String[] NAME_TABLE = new String[NAME_TABLE_MASK + 1];
+    private static final int[] RGB_TABLE = new int[NAME_TABLE_MASK + 1];
+    private static final int NAME_SEED = findNameSeed();
+
+    static {
+        for (int i = 0; i < NAMED_COLORS.length; i += 2) {
+            int slot = nameSlot(NAMED_COLORS[i], NAME_SEED);
+            NAME_TABLE[slot] = NAMED_COLORS[i];
+            RGB_TABLE[slot] = Integer.parseInt(NAMED_COLORS[i + 1], 16);
+        }
+    }
+
+    /**
+     * Parse color string to a 24-bit RGB value
+     *
+     * @param input Color string (#hex, rgb()/rgba(), hsl()/hsla(), or named color)
+     * @return RGB value, or {@link #NO_COLOR} if parsing fails or the color is transparent
+     */
+    public static int parseRgb(String input) {
+        if (input == null || input.isEmpty()) {
+            return NO_COLOR;
+        }
+        return CACHE.get(input, ColorParser::resolve);
+    }
 
     /**
      * Parse color string to Color object
      *
      * @param input Color string (#hex, rgb(), or named color)
      * @return Color object, or null if parsing fails
+     * @deprecated Initializes AWT; use {@link #parseRgb(String)}
      */
+    @Deprecated
     public static Color parse(String input) {
-        if (input == null) {
-            return null;
-        }
+        int rgb = parseRgb(input);
+        return rgb == NO_COLOR ? null : new Color(rgb);
+    }
+
+    /**
+     * Convert an RGB value to the byte form used by XSSFColor
+     *
+     * @param rgb 24-bit RGB value
+     * @return Red, green and blue bytes
+     */
+    public static byte[] toBytes(int rgb) {
+        return new byte[]{(byte) (rgb >> 16), (byte) (rgb >> 8), (byte) rgb};
+    }
 
+    /**
+     * Quantize an RGB value to the nearest color of the 216-color web-safe palette
+     *
+     * @param rgb 24-bit RGB value
+     * @return Quantized RGB value (each channel a multiple of 0x33)
+     */
+    public static int quantize(int rgb) {
+        return quantizeChannel(rgb >> 16) << 16 | quantizeChannel(rgb >> 8) << 8 | quantizeChannel(rgb);
+    }
+
+    private static int quantizeChannel(int value) {
+        return ((value & 0xFF) + 0x19) / 0x33 * 0x33;
+    }
+
+    private static Integer resolve(String input) {
         String s = input.trim().toLowerCase(Locale.ROOT);
+        int rgb;
+        if (s.startsWith("#")) {
+            rgb = parseHex(s);
+        } else if (s.startsWith("rgb")) {
+            rgb = parseFunction(s, false);
+        } else if (s.startsWith("hsl")) {
+            rgb = parseFunction(s, true);
+        } else {
+            rgb = parseNamedColor(s);
+        }
+        return rgb;
+    }
+
+    /**
+     * Parse #RGB, #RGBA, #RRGGBB or #RRGGBBAA
+     */
+    private static int parseHex(String s) {
+        int digits = s.length() - 1;
+        if (digits != 3 && digits != 4 && digits != 6 && digits != 8) {
+            return NO_COLOR;
+        }
+        int[] channels = new int[4];
+        channels[3] = 255;
+        boolean shortForm = digits <= 4;
+        for (int c = 0; c < (digits == 3 || digits == 6 ? 3 : 4); c++) {
+            int value;
+            if (shortForm) {
+                value = Character.digit(s.charAt(1 + c), 16) * 17;
+            } else {
+                int high = Character.digit(s.charAt(1 + 2 * c), 16);
+                int low = Character.digit(s.charAt(2 + 2 * c), 16);
+                value = high < 0 || low < 0 ? -1 : high * 16 + low;
+            }
+            if (value < 0) {
+                return NO_COLOR;
+            }
+            channels[c] = value;
+        }
+        return blend(channels[0], channels[1], channels[2], channels[3] / 255f);
+    }
+
+    /**
+     * Parse rgb()/rgba() or hsl()/hsla() with comma- or space-separated arguments
+     */
+    private static int parseFunction(String s, boolean hsl) {
+        int open = s.indexOf('(');
+        int close = s.lastIndexOf(')');
+        if (open < 0 || close < open) {
+            return NO_COLOR;
+        }
+        String name = s.substring(0, open).trim();
+        if (!name.equals(hsl ? "hsl" : "rgb") && !name.equals(hsl ? "hsla" : "rgba")) {
+            return NO_COLOR;
+        }
+
+        // Up to four arguments separated by commas, whitespace or '/'
+        String[] args = new String[4];
+        int count = 0;
+        int i = open + 1;
+        while (i < close) {
+            char c = s.charAt(i);
+            if (c == ',' || c == '/' || Character.isWhitespace(c)) {
+                i++;
+                continue;
+            }
+            int start = i;
+            while (i < close && s.charAt(i) != ',' && s.charAt(i) != '/' && !Character.isWhitespace(s.charAt(i))) {
+                i++;
+            }
+            if (count == 4) {
+                return NO_COLOR;
+            }
+            args[count++] = s.substring(start, i);
+        }
+        if (count < 3) {
+            return NO_COLOR;
+        }
+
+        float alpha = count == 4 ? number(args[3], 1f) : 1f;
+        if (Float.isNaN(alpha)) {
+            return NO_COLOR;
+        }
+        if (hsl) {
+            float hue = hue(args[0]);
+            float saturation = number(args[1], 1f);
+            float lightness = number(args[2], 1f);
+            if (Float.isNaN(hue) || Float.isNaN(saturation) || Float.isNaN(lightness)) {
+                return NO_COLOR;
+            }
+            return hslToRgb(hue, clamp(saturation, 1f), clamp(lightness, 1f), alpha);
+        }
+
+        float r = number(args[0], 255f);
+        float g = number(args[1], 255f);
+        float b = number(args[2], 255f);
+        if (Float.isNaN(r) || Float.isNaN(g) || Float.isNaN(b)) {
+            return NO_COLOR;
+        }
+        return blend(Math.round(clamp(r, 255f)), Math.round(clamp(g, 255f)), Math.round(clamp(b, 255f)), alpha);
+    }
+
+    /**
+     * Parse a number or a percentage of {@code full}
+     *
+     * @return Value, NaN if invalid
+     */
+    private static float number(String token, float full) {
         try {
-            // Hex format: #RGB or #RRGGBB
-            if (s.startsWith("#")) {
-                return Color.decode(s);
+            if (token.endsWith("%")) {
+                return Float.parseFloat(token.substring(0, token.length() - 1)) * full / 100f;
             }
+            return Float.parseFloat(token);
+        } catch (NumberFormatException e) {
+            return Float.NaN;
+        }
+    }
 
-            // RGB function: rgb(r, g, b)
-            if (s.startsWith("rgb")) {
-                Matcher matcher = RGB_PATTERN.matcher(s);
-                if (matcher.find()) {
-                    int r = Integer.parseInt(matcher.group(1));
-                    int g = Integer.parseInt(matcher.group(2));
-                    int b = Integer.parseInt(matcher.group(3));
-                    return new Color(r, g, b);
-                }
+    /**
+     * Parse a hue in degrees (unitless, deg, rad, grad or turn)
+     */
+    private static float hue(String token) {
+        try {
+            if (token.endsWith("deg")) {
+                return Float.parseFloat(token.substring(0, token.length() - 3));
+            } else if (token.endsWith("grad")) {
+                return Float.parseFloat(token.substring(0, token.length() - 4)) * 0.9f;
+            } else if (token.endsWith("rad")) {
+                return (float) Math.toDegrees(Float.parseFloat(token.substring(0, token.length() - 3)));
+            } else if (token.endsWith("turn")) {
+                return Float.parseFloat(token.substring(0, token.length() - 4)) * 360f;
             }
+            return Float.parseFloat(token);
+        } catch (NumberFormatException e) {
+            return Float.NaN;
+        }
+    }
 
-            // Named colors
-            return parseNamedColor(s);
+    private static int hslToRgb(float hue, float saturation, float lightness, float alpha) {
+        float h = (hue % 360f + 360f) % 360f / 30f;
+        float a = saturation * Math.min(lightness, 1f - lightness);
+        int[] channels = new int[3];
+        int[] offsets = {0, 8, 4};
+        for (int c = 0; c < 3; c++) {
+            float k = (offsets[c] + h) % 12f;
+            float value = lightness - a * Math.max(-1f, Math.min(Math.min(k - 3f, 9f - k), 1f));
+            channels[c] = Math.round(value * 255f);
+        }
+        return blend(channels[0], channels[1], channels[2], alpha);
+    }
 
-        } catch (Exception e) {
-            return null;
+    /**
+     * Blend a color with alpha over white
+     */
+    private static int blend(int r, int g, int b, float alpha) {
+        float a = clamp(alpha, 1f);
+        if (a <= 0f) {
+            return NO_COLOR;
         }
+        if (a < 1f) {
+            r = Math.round(r * a + 255f * (1f - a));
+            g = Math.round(g * a + 255f * (1f - a));
+            b = Math.round(b * a + 255f * (1f - a));
+        }
+        return r << 16 | g << 8 | b;
+    }
+
+    private static float clamp(float value, float max) {
+        return Math.max(0f, Math.min(value, max));
     }
 
     /**
-     * Parse named color to Color object
+     * Look up a named color in the perfect hash table
      */
-    private static Color parseNamedColor(String name) {
-        switch (name) {
-            case "black": return Color.BLACK;
-            case "white": return Color.WHITE;
-            case "red": return Color.RED;
-            case "green": return Color.GREEN;
-            case "blue": return Color.BLUE;
-            case "yellow": return Color.YELLOW;
-            case "gray":
-            case "grey": return Color.GRAY;
-            case "orange": return Color.ORANGE;
-            case "purple": return new Color(128, 0, 128);
-            case "brown": return new Color(165, 42, 42);
-            case "pink": return Color.PINK;
-            case "cyan": return Color.CYAN;
-            case "magenta": return Color.MAGENTA;
-            default: return null;
+    private static int parseNamedColor(String name) {
+        int slot = nameSlot(name, NAME_SEED);
+        return name.equals(NAME_TABLE[slot]) ? RGB_TABLE[slot] : NO_COLOR;
+    }
+
+    private static int nameSlot(String name, int seed) {
+        int h = 0;
+        for (int i = 0; i < name.length(); i++) {
+            h = h * seed + name.charAt(i);
+        }
+        h ^= h >>> 15;
+        return h & NAME_TABLE_MASK;
+    }
+
+    private static int findNameSeed() {
+        boolean[] used = new boolean[NAME_TABLE_MASK + 1];
+        for (int seed = 31; ; seed += 2) {
+            Arrays.fill(used, false);
+            boolean collision = false;
+            for (int i = 0; i < NAMED_COLORS.length && !collision; i += 2) {
+                int slot = nameSlot(NAMED_COLORS[i], seed);
+                collision = used[slot];
+                used[slot] = true;
+            }
+            if (!collision) {
+                return seed;
+            }
         }
     }
 }
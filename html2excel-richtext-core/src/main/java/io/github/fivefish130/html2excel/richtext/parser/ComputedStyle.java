@@ -0,0 +1,243 @@
+package io.github.fivefish130.html2excel.richtext.parser;
+
+import io.github.fivefish130.html2excel.richtext.model.RunStyle;
+import io.github.fivefish130.html2excel.richtext.model.WhiteSpace;
+
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Immutable, pre-parsed style of an element
+ * <p>
+ * Values are parsed once where they are declared, into canonical form: flags are a
+ * bitmask ({@code 700} is bold), sizes are points ({@code 16px} is 12), colors are 24-bit
+ * RGB ({@code red} is {@code #F00}) and font families are normalized names. Deriving a style
+ * that changes nothing returns the same instance, so elements without effective styles
+ * share their parent's style and allocate nothing.
+ *
+ * @author fivefish130
+ */
+public final class ComputedStyle {
+
+    /** Style that doesn't change the default font and has no background */
+    public static final ComputedStyle INITIAL =
+            new ComputedStyle(0, (short) 0, RunStyle.NO_COLOR, null, RunStyle.NO_COLOR, WhiteSpace.NORMAL);
+
+    static final int BOLD = 1;
+    static final int ITALIC = 2;
+    static final int UNDERLINE = 4;
+
+    private static final CssParser CSS_PARSER = new CssParser();
+
+    private final int flags;
+    private final short fontSize;
+    private final int color;
+    private final String fontFamily;
+    private final int background;
+    private final WhiteSpace whiteSpace;
+
+    // Resolved lazily, only for styles that end up carrying text; DEFAULT once resolved to null
+    private RunStyle runStyle;
+
+    private ComputedStyle(int flags, short fontSize, int color, String fontFamily, int background,
+                          WhiteSpace whiteSpace) {
+        this.flags = flags;
+        this.fontSize = fontSize;
+        this.color = color;
+        this.fontFamily = fontFamily;
+        this.background = background;
+        this.whiteSpace = whiteSpace;
+    }
+
+    /**
+     * Compute the style of CSS properties
+     *
+     * @param style CSS properties
+     * @return Computed style
+     */
+    public static ComputedStyle of(Map<String, String> style) {
+        ComputedStyle computed = INITIAL;
+        for (Map.Entry<String, String> entry : style.entrySet()) {
+            computed = computed.with(entry.getKey(), entry.getValue());
+        }
+        return computed;
+    }
+
+    /**
+     * Derive a style with a CSS property set
+     *
+     * @param name Lower-case CSS property name; properties without effect are ignored
+     * @param value CSS value
+     * @return Derived style, this if nothing changes
+     */
+    public ComputedStyle with(String name, String value) {
+        StyleProperty property = StyleProperty.forName(name);
+        return property == null ? this : with(property, value);
+    }
+
+    /**
+     * Derive a style with a CSS property set
+     *
+     * @param property Property
+     * @param value CSS value; invalid values reset the property
+     * @return Derived style, this if nothing changes
+     */
+    public ComputedStyle with(StyleProperty property, String value) {
+        switch (property) {
+            case FONT_WEIGHT:
+                return withFlag(BOLD, CSS_PARSER.isBold(value));
+            case FONT_STYLE:
+                return withFlag(ITALIC, CSS_PARSER.isItalic(value));
+            case TEXT_DECORATION:
+                return withFlag(UNDERLINE, CSS_PARSER.isUnderline(value));
+            case COLOR:
+                return withColor(parseColor(value));
+            case FONT_FAMILY:
+                return withFontFamily(parseFontFamily(value));
+            case FONT_SIZE:
+                return withFontSize(parseFontSize(value));
+            case BACKGROUND_COLOR:
+                return withBackground(parseColor(value));
+            case WHITE_SPACE:
+                return withWhiteSpace(WhiteSpace.parse(value));
+            default:
+                return this;
+        }
+    }
+
+    /**
+     * Derive a style with a declaration block applied
+     *
+     * @param block Declaration block
+     * @return Derived style, this if nothing changes
+     */
+    public ComputedStyle with(CssDeclarationBlock block) {
+        int declared = block.properties;
+        if (declared == 0) {
+            return this;
+        }
+        int mask = 0;
+        if ((declared & 1 << StyleProperty.FONT_WEIGHT.ordinal()) != 0) {
+            mask |= BOLD;
+        }
+        if ((declared & 1 << StyleProperty.FONT_STYLE.ordinal()) != 0) {
+            mask |= ITALIC;
+        }
+        if ((declared & 1 << StyleProperty.TEXT_DECORATION.ordinal()) != 0) {
+            mask |= UNDERLINE;
+        }
+        int newFlags = flags & ~mask | block.flags;
+        short newSize = block.declares(StyleProperty.FONT_SIZE) ? block.fontSize : fontSize;
+        int newColor = block.declares(StyleProperty.COLOR) ? block.color : color;
+        String newFamily = block.declares(StyleProperty.FONT_FAMILY) ? block.fontFamily : fontFamily;
+        int newBackground = block.declares(StyleProperty.BACKGROUND_COLOR) ? block.background : background;
+        WhiteSpace newWhiteSpace = block.declares(StyleProperty.WHITE_SPACE) ? block.whiteSpace : whiteSpace;
+        if (newFlags == flags && newSize == fontSize && newColor == color && Objects.equals(newFamily, fontFamily)) {
+            return withLayout(newBackground, newWhiteSpace);
+        }
+        return new ComputedStyle(newFlags, newSize, newColor, newFamily, newBackground, newWhiteSpace);
+    }
+
+    public ComputedStyle withBold(boolean bold) {
+        return withFlag(BOLD, bold);
+    }
+
+    public ComputedStyle withItalic(boolean italic) {
+        return withFlag(ITALIC, italic);
+    }
+
+    public ComputedStyle withUnderline(boolean underline) {
+        return withFlag(UNDERLINE, underline);
+    }
+
+    /**
+     * @param color 24-bit RGB color, or {@link RunStyle#NO_COLOR}
+     */
+    public ComputedStyle withColor(int color) {
+        return color == this.color ? this : new ComputedStyle(flags, fontSize, color, fontFamily, background, whiteSpace);
+    }
+
+    /**
+     * @param fontFamily Normalized family name, or null for default
+     */
+    public ComputedStyle withFontFamily(String fontFamily) {
+        return Objects.equals(fontFamily, this.fontFamily) ? this : new ComputedStyle(flags, fontSize, color, fontFamily, background, whiteSpace);
+    }
+
+    /**
+     * @param fontSize Font size in points, or 0 for default
+     */
+    public ComputedStyle withFontSize(short fontSize) {
+        return fontSize == this.fontSize ? this : new ComputedStyle(flags, fontSize, color, fontFamily, background, whiteSpace);
+    }
+
+    /**
+     * @param background 24-bit RGB background color, or {@link RunStyle#NO_COLOR}
+     */
+    public ComputedStyle withBackground(int background) {
+        return withLayout(background, whiteSpace);
+    }
+
+    public ComputedStyle withWhiteSpace(WhiteSpace whiteSpace) {
+        return withLayout(background, whiteSpace);
+    }
+
+    private ComputedStyle withLayout(int background, WhiteSpace whiteSpace) {
+        if (background == this.background && whiteSpace == this.whiteSpace) {
+            return this;
+        }
+        ComputedStyle derived = new ComputedStyle(flags, fontSize, color, fontFamily, background, whiteSpace);
+        // Same font: share the resolved run style
+        derived.runStyle = runStyle;
+        return derived;
+    }
+
+    private ComputedStyle withFlag(int flag, boolean set) {
+        int updated = set ? flags | flag : flags & ~flag;
+        return updated == flags ? this : new ComputedStyle(updated, fontSize, color, fontFamily, background, whiteSpace);
+    }
+
+    /**
+     * Get the font of text with this style
+     *
+     * @return Run style, or null if the default font is unchanged
+     */
+    public RunStyle getRunStyle() {
+        RunStyle run = runStyle;
+        if (run == null) {
+            boolean isDefault = flags == 0 && fontSize == 0 && color == RunStyle.NO_COLOR
+                    && fontFamily == null;
+            run = isDefault ? RunStyle.DEFAULT : new RunStyle(fontFamily, fontSize,
+                    (flags & BOLD) != 0, (flags & ITALIC) != 0, (flags & UNDERLINE) != 0, color);
+            runStyle = run;
+        }
+        return run == RunStyle.DEFAULT ? null : run;
+    }
+
+    /**
+     * Get the background color
+     *
+     * @return 24-bit RGB color, or {@link RunStyle#NO_COLOR}
+     */
+    public int getBackground() {
+        return background;
+    }
+
+    public WhiteSpace getWhiteSpace() {
+        return whiteSpace;
+    }
+
+    static int parseColor(String value) {
+        return ColorParser.parseRgb(value);
+    }
+
+    static String parseFontFamily(String value) {
+        String family = CSS_PARSER.normalizeFontName(value);
+        return family == null || family.isEmpty() ? null : family;
+    }
+
+    static short parseFontSize(String value) {
+        Short size = value == null ? null : CSS_PARSER.parseFontSize(value);
+        return size == null ? 0 : size;
+    }
+}
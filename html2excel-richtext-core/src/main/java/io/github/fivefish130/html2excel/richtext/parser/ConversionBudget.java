@@ -0,0 +1,49 @@
+package io.github.fivefish130.html2excel.richtext.parser;
+
+/**
+ * Limits for converting one cell: element depth, node count and time
+ * <p>
+ * The time budget starts when the instance is created, so create one per cell and share
+ * it between conversion attempts (e.g. native tokenizer, then Jsoup).
+ *
+ * @author fivefish130
+ */
+public final class ConversionBudget {
+
+    /** No limits */
+    public static final ConversionBudget UNLIMITED = new ConversionBudget(Integer.MAX_VALUE, Integer.MAX_VALUE, 0);
+
+    private final int maxDepth;
+    private final int maxNodes;
+    private final boolean timed;
+    private final long deadline;
+
+    /**
+     * Create budget
+     *
+     * @param maxDepth Maximum element nesting depth
+     * @param maxNodes Maximum number of elements and text nodes
+     * @param timeBudgetMillis Time budget in milliseconds starting now, 0 for unlimited
+     */
+    public ConversionBudget(int maxDepth, int maxNodes, long timeBudgetMillis) {
+        this.maxDepth = maxDepth;
+        this.maxNodes = maxNodes;
+        this.timed = timeBudgetMillis > 0;
+        this.deadline = timed ? System.nanoTime() + timeBudgetMillis * 1_000_000L : 0;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public int getMaxNodes() {
+        return maxNodes;
+    }
+
+    /**
+     * Check if the time budget is used up
+     */
+    public boolean isExpired() {
+        return timed && System.nanoTime() - deadline > 0;
+    }
+}
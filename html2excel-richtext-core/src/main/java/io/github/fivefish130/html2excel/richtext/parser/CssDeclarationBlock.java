@@ -0,0 +1,114 @@
+package io.github.fivefish130.html2excel.richtext.parser;
+
+import io.github.fivefish130.html2excel.richtext.model.RunStyle;
+import io.github.fivefish130.html2excel.richtext.model.WhiteSpace;
+
+import java.util.Map;
+
+/**
+ * Immutable, pre-parsed CSS declaration block (e.g. a {@code style} attribute)
+ * <p>
+ * Only properties that affect the rich text are kept, already in the canonical form of
+ * {@link ComputedStyle}, so applying a block to a style is a few field copies.
+ *
+ * @author fivefish130
+ */
+public final class CssDeclarationBlock {
+
+    /** Block without declarations */
+    public static final CssDeclarationBlock EMPTY = new CssDeclarationBlock(0, 0, (short) 0,
+            RunStyle.NO_COLOR, null, RunStyle.NO_COLOR, WhiteSpace.NORMAL);
+
+    private static final CssParser CSS_PARSER = new CssParser();
+
+    // Bit per StyleProperty ordinal
+    final int properties;
+    // ComputedStyle flag bits of the declared font-weight, font-style and text-decoration
+    final int flags;
+    final short fontSize;
+    final int color;
+    final String fontFamily;
+    final int background;
+    final WhiteSpace whiteSpace;
+
+    private CssDeclarationBlock(int properties, int flags, short fontSize, int color, String fontFamily,
+                                int background, WhiteSpace whiteSpace) {
+        this.properties = properties;
+        this.flags = flags;
+        this.fontSize = fontSize;
+        this.color = color;
+        this.fontFamily = fontFamily;
+        this.background = background;
+        this.whiteSpace = whiteSpace;
+    }
+
+    /**
+     * Compile CSS properties into a block
+     *
+     * @param declarations CSS properties (lower-case names)
+     * @return Block, {@link #EMPTY} if no property affects the rich text
+     */
+    public static CssDeclarationBlock of(Map<String, String> declarations) {
+        int properties = 0;
+        int flags = 0;
+        short fontSize = 0;
+        int color = RunStyle.NO_COLOR;
+        String fontFamily = null;
+        int background = RunStyle.NO_COLOR;
+        WhiteSpace whiteSpace = WhiteSpace.NORMAL;
+        for (Map.Entry<String, String> declaration : declarations.entrySet()) {
+            StyleProperty property = StyleProperty.forName(declaration.getKey());
+            if (property == null) {
+                continue;
+            }
+            String value = declaration.getValue();
+            properties |= 1 << property.ordinal();
+            switch (property) {
+                case FONT_WEIGHT:
+                    flags |= CSS_PARSER.isBold(value) ? ComputedStyle.BOLD : 0;
+                    break;
+                case FONT_STYLE:
+                    flags |= CSS_PARSER.isItalic(value) ? ComputedStyle.ITALIC : 0;
+                    break;
+                case TEXT_DECORATION:
+                    flags |= CSS_PARSER.isUnderline(value) ? ComputedStyle.UNDERLINE : 0;
+                    break;
+                case COLOR:
+                    color = ComputedStyle.parseColor(value);
+                    break;
+                case FONT_FAMILY:
+                    fontFamily = ComputedStyle.parseFontFamily(value);
+                    break;
+                case FONT_SIZE:
+                    fontSize = ComputedStyle.parseFontSize(value);
+                    break;
+                case BACKGROUND_COLOR:
+                    background = ComputedStyle.parseColor(value);
+                    break;
+                case WHITE_SPACE:
+                    whiteSpace = WhiteSpace.parse(value);
+                    break;
+                default:
+                    break;
+            }
+        }
+        if (properties == 0) {
+            return EMPTY;
+        }
+        return new CssDeclarationBlock(properties, flags, fontSize, color, fontFamily, background, whiteSpace);
+    }
+
+    /**
+     * Check if the block declares a property
+     */
+    public boolean declares(StyleProperty property) {
+        return (properties & 1 << property.ordinal()) != 0;
+    }
+
+    /**
+     * Check if the block declares nothing that affects the rich text
+     */
+    public boolean isEmpty() {
+        return properties == 0;
+    }
+}
@@ -1,5 +1,7 @@
 package io.github.fivefish130.html2excel.richtext.parser;
 
+import io.github.fivefish130.html2excel.richtext.cache.ParseCache;
+
 import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
@@ -16,6 +18,9 @@ import java.util.Map;
  */
 public class CssParser {
 
+    // Shared by all parsers: the same style attributes recur across cells and exports
+    private static final ParseCache<CssDeclarationBlock> BLOCK_CACHE = new ParseCache<>(4096, 1024);
+
     /**
      * Parse CSS declaration string
      *
@@ -24,43 +29,135 @@ public class CssParser {
      */
     public Map<String, String> parseDeclaration(String cssText) {
         Map<String, String> result = new HashMap<>();
-
-        if (cssText == null || cssText.trim().isEmpty()) {
+        if (cssText == null) {
             return result;
         }
 
-        try {
-            // Split by semicolon
-            String[] declarations = cssText.split(";");
-            for (String declaration : declarations) {
-                declaration = declaration.trim();
-                if (declaration.isEmpty()) {
-                    continue;
+        // Single pass: split by semicolon, then at the first colon
+        int length = cssText.length();
+        int start = 0;
+        while (start < length) {
+            int end = cssText.indexOf(';', start);
+            if (end < 0) {
+                end = length;
+            }
+            int colon = cssText.indexOf(':', start);
+            if (colon >= 0 && colon < end) {
+                String propName = trimmed(cssText, start, colon).toLowerCase(Locale.ROOT);
+                String propValue = unquoted(trimmed(cssText, colon + 1, end));
+                if (!propName.isEmpty() && !propValue.isEmpty()) {
+                    result.put(propName, propValue);
                 }
+            }
+            start = end + 1;
+        }
+        return result;
+    }
 
-                // Find first colon
-                int colonIndex = declaration.indexOf(':');
-                if (colonIndex == -1) {
-                    continue;
-                }
+    /**
+     * Parse CSS declaration string into a pre-parsed block
+     * <p>
+     * Results are cached process-wide by the raw text (bounded), so recurring style
+     * attributes are parsed once.
+     *
+     * @param cssText CSS declaration (e.g., "color:red; font-size:14px")
+     * @return Immutable declaration block
+     */
+    public CssDeclarationBlock parseBlock(String cssText) {
+        if (cssText == null || cssText.isEmpty()) {
+            return CssDeclarationBlock.EMPTY;
+        }
+        return BLOCK_CACHE.get(cssText, CssParser::compileBlock);
+    }
 
-                String propName = declaration.substring(0, colonIndex)
-                        .trim()
-                        .toLowerCase(Locale.ROOT);
-                String propValue = declaration.substring(colonIndex + 1).trim();
+    private static CssDeclarationBlock compileBlock(String cssText) {
+        return CssDeclarationBlock.of(new CssParser().parseDeclaration(cssText));
+    }
 
-                // Remove quotes
-                propValue = propValue.replaceAll("^['\"]|['\"]$", "");
+    /**
+     * Substring without leading and trailing whitespace
+     */
+    private static String trimmed(String s, int start, int end) {
+        while (start < end && s.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && s.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return s.substring(start, end);
+    }
 
-                if (!propName.isEmpty() && !propValue.isEmpty()) {
-                    result.put(propName, propValue);
-                }
-            }
-        } catch (Exception e) {
-            // Fault tolerance: ignore parsing errors
+    /**
+     * Remove one leading and one trailing quote
+     */
+    private static String unquoted(String value) {
+        int start = 0;
+        int end = value.length();
+        if (end > 0 && isQuote(value.charAt(0))) {
+            start++;
         }
+        if (end > start && isQuote(value.charAt(end - 1))) {
+            end--;
+        }
+        return start == 0 && end == value.length() ? value : value.substring(start, end);
+    }
 
-        return result;
+    private static boolean isQuote(char c) {
+        return c == '\'' || c == '"';
+    }
+
+    /**
+     * Check if a font-weight value renders bold: {@code bold}, {@code bolder} or 600 and above
+     */
+    public boolean isBold(String weight) {
+        if (weight == null) {
+            return false;
+        }
+        String w = weight.trim();
+        if (w.equalsIgnoreCase("bold") || w.equalsIgnoreCase("bolder")) {
+            return true;
+        }
+        try {
+            return Integer.parseInt(w) >= 600;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Check if a font-style value renders italic: {@code italic} or {@code oblique [angle]}
+     */
+    public boolean isItalic(String fontStyle) {
+        if (fontStyle == null) {
+            return false;
+        }
+        String s = fontStyle.trim();
+        return s.equalsIgnoreCase("italic") || s.regionMatches(true, 0, "oblique", 0, 7);
+    }
+
+    /**
+     * Check if a text-decoration value includes an underline (e.g. "underline dotted red")
+     */
+    public boolean isUnderline(String decoration) {
+        if (decoration == null) {
+            return false;
+        }
+        int length = decoration.length();
+        int start = 0;
+        while (start < length) {
+            while (start < length && Character.isWhitespace(decoration.charAt(start))) {
+                start++;
+            }
+            int end = start;
+            while (end < length && !Character.isWhitespace(decoration.charAt(end))) {
+                end++;
+            }
+            if (end - start == 9 && decoration.regionMatches(true, start, "underline", 0, 9)) {
+                return true;
+            }
+            start = end;
+        }
+        return false;
     }
 
     /**
@@ -70,8 +167,21 @@ public class CssParser {
         if (name == null) {
             return null;
         }
-        String[] parts = name.split(",");
-        return parts[0].replaceAll("[\"']", "").trim();
+        int comma = name.indexOf(',');
+        int end = comma < 0 ? name.length() : comma;
+        StringBuilder out = null;
+        for (int i = 0; i < end; i++) {
+            char c = name.charAt(i);
+            if (isQuote(c)) {
+                if (out == null) {
+                    out = new StringBuilder(end);
+                    out.append(name, 0, i);
+                }
+            } else if (out != null) {
+                out.append(c);
+            }
+        }
+        return out != null ? out.toString().trim() : name.substring(0, end).trim();
     }
 
     /**
@@ -83,22 +193,30 @@ public class CssParser {
             return null;
         }
 
-        try {
-            // Extract digits
-            String digits = raw.replaceAll("[^0-9.]", "");
-            if (digits.isEmpty()) {
-                return null;
+        // Keep digits and dots only
+        int length = raw.length();
+        char[] digits = new char[length];
+        int count = 0;
+        for (int i = 0; i < length; i++) {
+            char c = raw.charAt(i);
+            if (c >= '0' && c <= '9' || c == '.') {
+                digits[count++] = c;
             }
+        }
+        if (count == 0) {
+            return null;
+        }
 
-            float val = Float.parseFloat(digits);
+        try {
+            float val = Float.parseFloat(new String(digits, 0, count));
 
             // Convert px to pt (1px ≈ 0.75pt)
-            if (raw.endsWith("px")) {
+            if (raw.regionMatches(true, length - 2, "px", 0, 2)) {
                 val = val * 0.75f;
             }
 
             return (short) Math.max(8, Math.round(val));
-        } catch (Exception e) {
+        } catch (NumberFormatException e) {
             return null;
         }
     }
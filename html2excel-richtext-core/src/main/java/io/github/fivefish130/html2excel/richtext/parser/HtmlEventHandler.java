@@ -0,0 +1,53 @@
+package io.github.fivefish130.html2excel.richtext.parser;
+
+/**
+ * Receiver of HTML parse events
+ * <p>
+ * Events arrive in document order. Every {@link #startElement} is matched by an
+ * {@link #endElement}, void elements ({@code br}, {@code img}) included; elements left
+ * open at the end of the input are closed there. Comments and doctypes produce no events;
+ * the CSS of a {@code <style>} element arrives as its text.
+ * <p>
+ * Events come either from {@link HtmlTokenizer} or from a Jsoup DOM
+ * (see {@link HtmlEvents#walk(org.jsoup.nodes.Node, HtmlEventHandler)}). Both describe the
+ * same content, but only the DOM contains elements Jsoup inserts implicitly (such as
+ * {@code tbody}).
+ *
+ * @author fivefish130
+ */
+public interface HtmlEventHandler {
+
+    /**
+     * Element start
+     *
+     * @param tag Lower-case tag name
+     * @param attributes Element attributes, only valid during this call
+     */
+    void startElement(String tag, TagAttributes attributes);
+
+    /**
+     * Element end
+     *
+     * @param tag Lower-case tag name
+     */
+    void endElement(String tag);
+
+    /**
+     * Text content
+     *
+     * @param text Text with character references decoded (whitespace is not normalized)
+     */
+    void text(String text);
+
+    /**
+     * Check if the handler needs no further events
+     * <p>
+     * Producers check this between events and stop early once it returns true (e.g. when
+     * the text reached its length limit). Elements still open are not closed then.
+     *
+     * @return true to stop, false to continue (default)
+     */
+    default boolean isDone() {
+        return false;
+    }
+}
@@ -0,0 +1,268 @@
+package io.github.fivefish130.html2excel.richtext.parser;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Attributes;
+import org.jsoup.nodes.DataNode;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.nodes.TextNode;
+import org.jsoup.parser.Parser;
+import org.jsoup.parser.StreamParser;
+import org.jsoup.select.Evaluator;
+import org.jsoup.select.NodeFilter;
+import org.jsoup.select.NodeTraversor;
+import org.jsoup.select.QueryParser;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Entry points producing {@link HtmlEventHandler} events
+ *
+ * @author fivefish130
+ */
+public final class HtmlEvents {
+
+    private HtmlEvents() {
+    }
+
+    /**
+     * Parse an HTML fragment into events
+     * <p>
+     * Uses {@link HtmlTokenizer} when it supports the input, Jsoup otherwise. The handler
+     * receives each event exactly once either way.
+     *
+     * @param html HTML fragment
+     * @param handler Event handler
+     * @return true if the native tokenizer was used, false if Jsoup parsed the input
+     */
+    public static boolean parse(String html, HtmlEventHandler handler) {
+        if (HtmlTokenizer.isSupported(html)) {
+            return HtmlTokenizer.tokenize(html, handler);
+        }
+        for (Node child : Jsoup.parseBodyFragment(html).body().childNodes()) {
+            if (walk(child, handler)) {
+                break;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Parse an HTML fragment from a reader into events with bounded memory
+     * <p>
+     * Uses Jsoup's {@link StreamParser}: nodes are emitted and removed from the tree as soon
+     * as the parser has closed them, so only the open elements and pending text are held,
+     * never the whole document. Reading stops once {@link HtmlEventHandler#isDone()} returns
+     * true. Markup Jsoup repairs after part of it was emitted (misnested formatting tags,
+     * content moved out of tables) may be placed or styled slightly differently than with
+     * {@link #parse(String, HtmlEventHandler)}. Once {@code template}, {@code svg} or
+     * {@code math} content shows up, the rest is held until the end of the input.
+     *
+     * @param html HTML fragment, not closed by this method
+     * @param handler Event handler
+     * @throws IOException if reading fails
+     */
+    public static void parse(Reader html, HtmlEventHandler handler) throws IOException {
+        StreamParser parser = new StreamParser(Parser.htmlParser());
+        try {
+            // Jsoup needs mark() support
+            Reader input = html.markSupported() ? html : new BufferedReader(html);
+            parser.parseFragment(input, Document.createShell("").body(), "");
+            new StreamEmitter(handler).run(parser.document(), parser.iterator());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            parser.stop();
+        }
+    }
+
+    /**
+     * Emit events for a Jsoup node and its descendants
+     * <p>
+     * Stops as soon as {@link HtmlEventHandler#isDone()} returns true.
+     *
+     * @param root Root node (included)
+     * @param handler Event handler
+     * @return true if the handler stopped the walk
+     */
+    public static boolean walk(Node root, HtmlEventHandler handler) {
+        DomAttributes attributes = new DomAttributes();
+        NodeFilter.FilterResult result = NodeTraversor.filter(new NodeFilter() {
+            @Override
+            public FilterResult head(Node node, int depth) {
+                if (node instanceof TextNode) {
+                    handler.text(((TextNode) node).getWholeText());
+                } else if (node instanceof DataNode) {
+                    // Stylesheets are passed on, script contents are not
+                    Node parent = node.parentNode();
+                    if (parent instanceof Element && "style".equals(((Element) parent).normalName())) {
+                        handler.text(((DataNode) node).getWholeData());
+                    }
+                } else if (node instanceof Element) {
+                    Element el = (Element) node;
+                    attributes.attributes = el.attributes();
+                    handler.startElement(el.normalName(), attributes);
+                }
+                return handler.isDone() ? FilterResult.STOP : FilterResult.CONTINUE;
+            }
+
+            @Override
+            public FilterResult tail(Node node, int depth) {
+                if (node instanceof Element) {
+                    handler.endElement(((Element) node).normalName());
+                }
+                return handler.isDone() ? FilterResult.STOP : FilterResult.CONTINUE;
+            }
+        }, root);
+        return result == NodeFilter.FilterResult.STOP;
+    }
+
+    /**
+     * Attributes of a Jsoup element
+     */
+    private static final class DomAttributes implements TagAttributes {
+        private Attributes attributes;
+
+        @Override
+        public String get(String name) {
+            return attributes.hasKeyIgnoreCase(name) ? attributes.getIgnoreCase(name) : null;
+        }
+    }
+
+    /**
+     * Emits nodes of a streamed document as soon as they can no longer change
+     * <p>
+     * The parser only appends along the rightmost path of the tree (the open elements),
+     * so a node is final once the parser has closed it and something follows it. The
+     * emitter keeps a cursor: the elements it has started but not ended. Children of the
+     * innermost one are emitted in document order while they are final; an element still
+     * being parsed is started and descended into. Emitted nodes are removed from the tree.
+     */
+    private static final class StreamEmitter {
+        // Jsoup may keep appending to these after reporting an enclosing element closed
+        private static final Evaluator INSERTION_CONTEXTS = QueryParser.parse("template, svg, math");
+
+        private final HtmlEventHandler handler;
+        private final DomAttributes attributes = new DomAttributes();
+
+        // Elements closed by the parser and not emitted yet
+        private final Set<Element> closed = Collections.newSetFromMap(new IdentityHashMap<Element, Boolean>());
+        // Elements started but not ended, outermost first
+        private final List<Element> open = new ArrayList<>();
+        private Element root;
+        private boolean ended;
+        // Set once closing can't be trusted: the rest waits for the end of the input
+        private boolean deferred;
+
+        StreamEmitter(HtmlEventHandler handler) {
+            this.handler = handler;
+        }
+
+        void run(Document document, Iterator<Element> parsed) {
+            while (!handler.isDone() && parsed.hasNext()) {
+                Element el = parsed.next();
+                if (root == null) {
+                    root = document.child(0);
+                }
+                if (el.parentNode() != document) {
+                    if (!isReliablyClosed(el)) {
+                        deferred = true;
+                    }
+                    closed.add(el);
+                    emit();
+                }
+            }
+            if (handler.isDone() || root == null) {
+                return;
+            }
+
+            // End of input: everything is final, including elements the parser closed
+            // without reporting them and content placed after the fragment root
+            ended = true;
+            emit();
+            while (!handler.isDone() && root.nextSibling() != null) {
+                Node trailing = root.nextSibling();
+                walk(trailing, handler);
+                trailing.remove();
+            }
+        }
+
+        /**
+         * Emit everything that is final, starting at the cursor
+         */
+        private void emit() {
+            while (!handler.isDone()) {
+                Element container = open.isEmpty() ? root : open.get(open.size() - 1);
+                if (container.childNodeSize() == 0) {
+                    if (container == root || !isFinal(container)) {
+                        return;
+                    }
+                    open.remove(open.size() - 1);
+                    closed.remove(container);
+                    handler.endElement(container.normalName());
+                    container.remove();
+                    continue;
+                }
+
+                Node child = container.childNode(0);
+                if (isFinal(child)) {
+                    if (walk(child, handler)) {
+                        return;
+                    }
+                    if (!closed.isEmpty()) {
+                        NodeTraversor.traverse((node, depth) -> closed.remove(node), child);
+                    }
+                    child.remove();
+                } else if (child instanceof Element) {
+                    // Still being parsed: stream its children
+                    Element el = (Element) child;
+                    attributes.attributes = el.attributes();
+                    handler.startElement(el.normalName(), attributes);
+                    open.add(el);
+                } else {
+                    // Text the parser may still append to
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Jsoup reports elements in svg, math and template content closed while it may still
+         * append to them (or to their ancestors)
+         */
+        private static boolean isReliablyClosed(Element el) {
+            for (Element e = el; e != null; e = e.parent()) {
+                if (!Parser.NamespaceHtml.equals(e.tag().namespace()) || "template".equals(e.normalName())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean isFinal(Node node) {
+            if (ended) {
+                return true;
+            }
+            if (deferred || node instanceof Element && !closed.contains(node)) {
+                return false;
+            }
+            // Anything off the rightmost path is no longer appended to
+            for (Node n = node; n != root && n != null; n = n.parentNode()) {
+                if (n.nextSibling() != null) {
+                    return !(node instanceof Element) || ((Element) node).selectFirst(INSERTION_CONTEXTS) == null;
+                }
+            }
+            return false;
+        }
+    }
+}
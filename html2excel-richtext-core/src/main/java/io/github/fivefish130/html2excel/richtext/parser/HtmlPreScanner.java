@@ -0,0 +1,272 @@
+package io.github.fivefish130.html2excel.richtext.parser;
+
+import io.github.fivefish130.html2excel.richtext.builder.RichTextBuilder;
+import io.github.fivefish130.html2excel.richtext.model.RunStyle;
+import io.github.fivefish130.html2excel.richtext.model.WhiteSpace;
+import org.jsoup.parser.Parser;
+
+import java.util.Arrays;
+
+/**
+ * Single-pass pre-scan of raw HTML and DOM-free conversion of simple inputs
+ * <p>
+ * {@link #classify(String)} decides the {@link InputTier} of an input without allocating.
+ * Inputs below {@link InputTier#FULL_HTML} can be converted by {@link #emit} straight from
+ * the string, producing the same runs as parsing with Jsoup and traversing with
+ * {@link HtmlTraverser}. Anything the fast path can't reproduce exactly (attributes,
+ * other tags, comments, misnested or stray closing tags) is classified as full HTML.
+ *
+ * @author fivefish130
+ */
+public final class HtmlPreScanner {
+
+    // Tag ids of the simple tier
+    private static final int TAG_B = 1;
+    private static final int TAG_STRONG = 2;
+    private static final int TAG_I = 3;
+    private static final int TAG_EM = 4;
+    private static final int TAG_U = 5;
+    private static final int TAG_BR = 6;
+
+    // Style mask bits
+    private static final int BOLD = 1;
+    private static final int ITALIC = 2;
+    private static final int UNDERLINE = 4;
+
+    // Plain text is appended in chunks so truncation stops early
+    private static final int PLAIN_CHUNK = 8192;
+
+    // Run style per mask, null for the default font
+    private static final RunStyle[] INLINE_STYLES = new RunStyle[8];
+
+    static {
+        for (int mask = 1; mask < INLINE_STYLES.length; mask++) {
+            INLINE_STYLES[mask] = new RunStyle(null, (short) 0, (mask & BOLD) != 0,
+                    (mask & ITALIC) != 0, (mask & UNDERLINE) != 0, RunStyle.NO_COLOR);
+        }
+    }
+
+    private HtmlPreScanner() {
+    }
+
+    /**
+     * Classify HTML input
+     *
+     * @param html HTML string (not null)
+     * @return Lowest tier that can convert the input
+     */
+    public static InputTier classify(String html) {
+        boolean entities = false;
+        boolean breaks = false;
+        boolean inline = false;
+        int[] stack = null;
+        int depth = 0;
+
+        int length = html.length();
+        for (int i = 0; i < length; i++) {
+            char c = html.charAt(i);
+            if (c == '&') {
+                entities = true;
+            } else if (c == '\0') {
+                // Jsoup drops or keeps NUL depending on context
+                return InputTier.FULL_HTML;
+            } else if (c == '<') {
+                long tag = scanTag(html, i);
+                if (tag < 0) {
+                    return InputTier.FULL_HTML;
+                }
+                int id = tagId(tag);
+                if (id == TAG_BR) {
+                    breaks = true;
+                } else if (isClosing(tag)) {
+                    if (depth == 0 || stack[depth - 1] != id) {
+                        return InputTier.FULL_HTML;
+                    }
+                    depth--;
+                } else {
+                    if (stack == null) {
+                        stack = new int[8];
+                    } else if (depth == stack.length) {
+                        stack = Arrays.copyOf(stack, depth * 2);
+                    }
+                    stack[depth++] = id;
+                    inline = true;
+                }
+                i = tagEnd(tag) - 1;
+            }
+        }
+
+        if (inline) {
+            return InputTier.SIMPLE_INLINE;
+        }
+        return entities || breaks ? InputTier.ENTITIES_AND_BREAKS : InputTier.PLAIN_TEXT;
+    }
+
+    /**
+     * Convert input of a tier below {@link InputTier#FULL_HTML} without a DOM
+     *
+     * @param html HTML string
+     * @param tier Tier returned by {@link #classify(String)}
+     * @param rich Run builder
+     * @return false if the input must be parsed as full HTML after all (builder content is then undefined)
+     */
+    public static boolean emit(String html, InputTier tier, RichTextBuilder rich) {
+        switch (tier) {
+            case PLAIN_TEXT:
+                emitPlain(html, rich);
+                return true;
+            case ENTITIES_AND_BREAKS:
+            case SIMPLE_INLINE:
+                return emitMarkup(html, rich);
+            default:
+                return false;
+        }
+    }
+
+    private static void emitPlain(String html, RichTextBuilder rich) {
+        int length = html.length();
+        int start = 0;
+        while (start < length && !rich.isTruncated()) {
+            // Whitespace collapses across chunks
+            int end = Math.min(length, start + PLAIN_CHUNK);
+            rich.appendText(html, start, end, null, WhiteSpace.NORMAL);
+            start = end;
+        }
+    }
+
+    private static boolean emitMarkup(String html, RichTextBuilder rich) {
+        int bold = 0;
+        int italic = 0;
+        int underline = 0;
+        int textStart = 0;
+
+        int length = html.length();
+        int i = html.indexOf('<');
+        while (i >= 0 && !rich.isTruncated()) {
+            if (!appendText(html, textStart, i, style(bold, italic, underline), rich)) {
+                return false;
+            }
+
+            long tag = scanTag(html, i);
+            int delta = isClosing(tag) ? -1 : 1;
+            switch (tagId(tag)) {
+                case TAG_B:
+                case TAG_STRONG:
+                    bold += delta;
+                    break;
+                case TAG_I:
+                case TAG_EM:
+                    italic += delta;
+                    break;
+                case TAG_U:
+                    underline += delta;
+                    break;
+                default:
+                    rich.appendBreak("\n");
+                    break;
+            }
+
+            textStart = tagEnd(tag);
+            i = html.indexOf('<', textStart);
+        }
+        if (rich.isTruncated()) {
+            return true;
+        }
+        return appendText(html, textStart, length, style(bold, italic, underline), rich);
+    }
+
+    private static boolean appendText(String html, int start, int end, RunStyle style, RichTextBuilder rich) {
+        if (start == end) {
+            return true;
+        }
+        int amp = html.indexOf('&', start);
+        if (amp < 0 || amp >= end) {
+            rich.appendText(html, start, end, style, WhiteSpace.NORMAL);
+            return true;
+        }
+        String text = Parser.unescapeEntities(html.substring(start, end), false);
+        if (text.indexOf('\0') >= 0) {
+            return false;
+        }
+        rich.appendText(text, 0, text.length(), style, WhiteSpace.NORMAL);
+        return true;
+    }
+
+    private static RunStyle style(int bold, int italic, int underline) {
+        return INLINE_STYLES[(bold > 0 ? BOLD : 0) | (italic > 0 ? ITALIC : 0) | (underline > 0 ? UNDERLINE : 0)];
+    }
+
+    /**
+     * Scan a tag of the simple tier starting at '&lt;'
+     *
+     * @return (end &lt;&lt; 8) | (id &lt;&lt; 1) | closing, or -1 if not a simple tag
+     */
+    private static long scanTag(String html, int lt) {
+        int length = html.length();
+        int i = lt + 1;
+        boolean closing = i < length && html.charAt(i) == '/';
+        if (closing) {
+            i++;
+        }
+
+        int nameStart = i;
+        while (i < length && isAsciiLetter(html.charAt(i))) {
+            i++;
+        }
+        int id = tagId(html, nameStart, i);
+        if (id == 0 || (closing && id == TAG_BR)) {
+            return -1;
+        }
+
+        while (i < length && isTagWhitespace(html.charAt(i))) {
+            i++;
+        }
+        if (id == TAG_BR && i < length && html.charAt(i) == '/') {
+            i++;
+        }
+        if (i >= length || html.charAt(i) != '>') {
+            return -1;
+        }
+        return ((long) (i + 1) << 8) | (id << 1) | (closing ? 1 : 0);
+    }
+
+    private static int tagId(String html, int start, int end) {
+        switch (end - start) {
+            case 1:
+                switch (Character.toLowerCase(html.charAt(start))) {
+                    case 'b': return TAG_B;
+                    case 'i': return TAG_I;
+                    case 'u': return TAG_U;
+                    default: return 0;
+                }
+            case 2:
+                if (html.regionMatches(true, start, "em", 0, 2)) return TAG_EM;
+                if (html.regionMatches(true, start, "br", 0, 2)) return TAG_BR;
+                return 0;
+            case 6:
+                return html.regionMatches(true, start, "strong", 0, 6) ? TAG_STRONG : 0;
+            default:
+                return 0;
+        }
+    }
+
+    private static int tagId(long tag) {
+        return (int) (tag >> 1) & 0x7F;
+    }
+
+    private static boolean isClosing(long tag) {
+        return (tag & 1) != 0;
+    }
+
+    private static int tagEnd(long tag) {
+        return (int) (tag >>> 8);
+    }
+
+    private static boolean isAsciiLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isTagWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f';
+    }
+}
@@ -0,0 +1,659 @@
+package io.github.fivefish130.html2excel.richtext.parser;
+
+import org.jsoup.parser.Parser;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Lightweight streaming tokenizer for the HTML subset the converter understands
+ * <p>
+ * Emits {@link HtmlEventHandler} events straight from the string: no DOM, no
+ * html/head/body wrappers and only the attributes the converter reads ({@code style},
+ * {@code color}, {@code bgcolor}, {@code face}, {@code size}, {@code href}, {@code src},
+ * {@code class}, {@code id}, {@code colspan}, {@code rowspan}).
+ * Common character references are decoded from a precomputed table.
+ * <p>
+ * The tokenizer only accepts input whose Jsoup tree is exactly the nesting of the
+ * source tags, so both produce the same content. It refuses (returns false) on anything
+ * Jsoup would restructure or treat specially: unknown or raw-text tags, misnested or
+ * stray end tags, implicitly closed elements ({@code <p>} before a block, {@code <li>}
+ * outside a list, nested links, ...), text directly inside table structure, doctypes,
+ * CDATA and unusual comment or attribute syntax. Such input should be parsed with Jsoup
+ * instead, see {@link HtmlEvents#parse(String, HtmlEventHandler)}.
+ *
+ * @author fivefish130
+ */
+public final class HtmlTokenizer {
+
+    // Tag ids, index into TAG_NAMES / TAG_FLAGS
+    private static final int B = 1;
+    private static final int STRONG = 2;
+    private static final int I = 3;
+    private static final int EM = 4;
+    private static final int U = 5;
+    private static final int A = 6;
+    private static final int FONT = 7;
+    private static final int CODE = 8;
+    private static final int SPAN = 9;
+    private static final int S = 10;
+    private static final int STRIKE = 11;
+    private static final int SMALL = 12;
+    private static final int BIG = 13;
+    private static final int TT = 14;
+    private static final int SUB = 15;
+    private static final int SUP = 16;
+    private static final int BR = 17;
+    private static final int IMG = 18;
+    private static final int P = 19;
+    private static final int DIV = 20;
+    private static final int H1 = 21;
+    private static final int H2 = 22;
+    private static final int H3 = 23;
+    private static final int H4 = 24;
+    private static final int H5 = 25;
+    private static final int H6 = 26;
+    private static final int UL = 27;
+    private static final int OL = 28;
+    private static final int LI = 29;
+    private static final int BLOCKQUOTE = 30;
+    private static final int TABLE = 31;
+    private static final int THEAD = 32;
+    private static final int TBODY = 33;
+    private static final int TFOOT = 34;
+    private static final int TR = 35;
+    private static final int TD = 36;
+    private static final int TH = 37;
+
+    private static final String[] TAG_NAMES = {
+            null, "b", "strong", "i", "em", "u", "a", "font", "code", "span", "s", "strike",
+            "small", "big", "tt", "sub", "sup", "br", "img", "p", "div", "h1", "h2", "h3", "h4",
+            "h5", "h6", "ul", "ol", "li", "blockquote", "table", "thead", "tbody", "tfoot",
+            "tr", "td", "th"
+    };
+
+    // Tag flags
+    private static final int VOID = 1;
+    private static final int CLOSES_P = 1 << 1;
+    private static final int HEADING = 1 << 2;
+    private static final int TABLE_PART = 1 << 3;
+    private static final int SCOPE = 1 << 4;
+
+    private static final int[] TAG_FLAGS = new int[TAG_NAMES.length];
+
+    static {
+        TAG_FLAGS[BR] = VOID;
+        TAG_FLAGS[IMG] = VOID;
+        for (int tag : new int[]{P, DIV, UL, OL, LI, BLOCKQUOTE}) {
+            TAG_FLAGS[tag] = CLOSES_P;
+        }
+        for (int tag = H1; tag <= H6; tag++) {
+            TAG_FLAGS[tag] = CLOSES_P | HEADING;
+        }
+        TAG_FLAGS[TABLE] = CLOSES_P | SCOPE;
+        for (int tag = THEAD; tag <= TH; tag++) {
+            TAG_FLAGS[tag] = TABLE_PART;
+        }
+        TAG_FLAGS[TD] |= SCOPE;
+        TAG_FLAGS[TH] |= SCOPE;
+    }
+
+    // Attributes passed to handlers
+    private static final String[] ATTRIBUTE_NAMES = {"style", "color", "bgcolor", "face", "size", "href", "src",
+            "class", "id", "colspan", "rowspan"};
+
+    // Character references decoded without Jsoup (semicolon form only)
+    private static final Map<String, String> ENTITIES = new HashMap<>();
+
+    static {
+        String[] entities = {
+                "amp", "&", "lt", "<", "gt", ">", "quot", "\"", "apos", "'", "nbsp", "\u00A0",
+                "copy", "\u00A9", "reg", "\u00AE", "trade", "\u2122", "hellip", "\u2026",
+                "mdash", "\u2014", "ndash", "\u2013", "lsquo", "\u2018", "rsquo", "\u2019",
+                "ldquo", "\u201C", "rdquo", "\u201D", "sbquo", "\u201A", "bdquo", "\u201E",
+                "bull", "\u2022", "middot", "\u00B7", "euro", "\u20AC", "pound", "\u00A3",
+                "yen", "\u00A5", "cent", "\u00A2", "sect", "\u00A7", "deg", "\u00B0",
+                "plusmn", "\u00B1", "times", "\u00D7", "divide", "\u00F7", "laquo", "\u00AB",
+                "raquo", "\u00BB", "para", "\u00B6", "shy", "\u00AD", "micro", "\u00B5",
+                "frac12", "\u00BD", "frac14", "\u00BC", "frac34", "\u00BE", "sup2", "\u00B2",
+                "sup3", "\u00B3", "larr", "\u2190", "rarr", "\u2192", "uarr", "\u2191",
+                "darr", "\u2193", "ensp", "\u2002", "emsp", "\u2003", "thinsp", "\u2009",
+                "zwnj", "\u200C", "zwj", "\u200D", "dagger", "\u2020", "permil", "\u2030"
+        };
+        for (int i = 0; i < entities.length; i += 2) {
+            ENTITIES.put(entities[i], entities[i + 1]);
+        }
+    }
+
+    private final String html;
+    // Null when only validating, or once the handler is done
+    private HtmlEventHandler handler;
+    private final Attributes attributes = new Attributes();
+    private int[] stack = new int[16];
+    private int depth;
+
+    private HtmlTokenizer(String html, HtmlEventHandler handler) {
+        this.html = html;
+        this.handler = handler;
+    }
+
+    /**
+     * Tokenize HTML into events
+     * <p>
+     * Events are emitted while scanning. If the input turns out to be unsupported, the
+     * handler has already received a prefix of the events and must be discarded.
+     * <p>
+     * Once {@link HtmlEventHandler#isDone()} returns true no further events are emitted,
+     * but the rest of the input is still validated, so the result never differs from what
+     * a full parser would produce for the same prefix.
+     *
+     * @param html HTML string
+     * @param handler Event handler
+     * @return true if the whole input was tokenized, false if it needs a full HTML parser
+     */
+    public static boolean tokenize(String html, HtmlEventHandler handler) {
+        Objects.requireNonNull(handler, "handler cannot be null");
+        return new HtmlTokenizer(html, handler).run();
+    }
+
+    /**
+     * Check if HTML can be tokenized, without emitting events
+     *
+     * @param html HTML string
+     * @return true if {@link #tokenize(String, HtmlEventHandler)} would succeed
+     */
+    public static boolean isSupported(String html) {
+        return new HtmlTokenizer(html, null).run();
+    }
+
+    private boolean run() {
+        // Jsoup drops or replaces NUL depending on context
+        if (html.indexOf('\0') >= 0) {
+            return false;
+        }
+
+        int length = html.length();
+        int textStart = 0;
+        int i = 0;
+        while (true) {
+            i = html.indexOf('<', i);
+            if (i < 0 || i + 1 >= length) {
+                break;
+            }
+
+            char next = html.charAt(i + 1);
+            int end;
+            if (isAsciiLetter(next)) {
+                if (!text(textStart, i)) {
+                    return false;
+                }
+                end = startTag(i + 1);
+            } else if (next == '/') {
+                if (!text(textStart, i)) {
+                    return false;
+                }
+                end = endTag(i + 2);
+            } else if (next == '!') {
+                if (!text(textStart, i)) {
+                    return false;
+                }
+                end = comment(i);
+            } else if (next == '?') {
+                return false;
+            } else {
+                // '<' not followed by markup is text
+                i++;
+                continue;
+            }
+
+            if (end < 0) {
+                return false;
+            }
+            if (handler != null && handler.isDone()) {
+                handler = null;
+            }
+            i = end;
+            textStart = end;
+        }
+
+        if (!text(textStart, length)) {
+            return false;
+        }
+        while (depth > 0) {
+            int tag = stack[--depth];
+            if (handler != null) {
+                handler.endElement(TAG_NAMES[tag]);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Emit text between markup
+     */
+    private boolean text(int start, int end) {
+        if (start == end) {
+            return true;
+        }
+
+        if (isTableStructure(top())) {
+            // Jsoup keeps whitespace here but moves other text out of the table
+            for (int i = start; i < end; i++) {
+                if (!isTagWhitespace(html.charAt(i))) {
+                    return false;
+                }
+            }
+            if (handler != null) {
+                handler.text(html.substring(start, end));
+            }
+            return true;
+        }
+
+        // References never decode to NUL (Jsoup maps &#0; to U+FFFD), so only raw NULs matter
+        for (int i = start; i < end; i++) {
+            if (html.charAt(i) == '\0') {
+                return false;
+            }
+        }
+        if (handler != null) {
+            handler.text(decode(html, start, end));
+        }
+        return true;
+    }
+
+    /**
+     * Handle start tag, nameStart points after '&lt;'
+     *
+     * @return Index after the tag, or -1 if unsupported
+     */
+    private int startTag(int nameStart) {
+        int length = html.length();
+        int i = nameStart;
+        while (i < length && isAsciiLetterOrDigit(html.charAt(i))) {
+            i++;
+        }
+        int tag = tagId(nameStart, i);
+        if (tag == 0 || i >= length || !isTagNameEnd(html.charAt(i)) || !canOpen(tag)) {
+            return -1;
+        }
+
+        // Attributes
+        attributes.clear();
+        boolean selfClosing = false;
+        while (true) {
+            while (i < length && isTagWhitespace(html.charAt(i))) {
+                i++;
+            }
+            if (i >= length) {
+                return -1;
+            }
+            char c = html.charAt(i);
+            if (c == '>') {
+                i++;
+                break;
+            }
+            if (c == '/') {
+                if (i + 1 < length && html.charAt(i + 1) == '>') {
+                    selfClosing = true;
+                    i += 2;
+                    break;
+                }
+                return -1;
+            }
+
+            int attrStart = i;
+            while (i < length && !isTagWhitespace(c = html.charAt(i)) && c != '/' && c != '>' && c != '=') {
+                if (c == '"' || c == '\'' || c == '<') {
+                    return -1;
+                }
+                i++;
+            }
+            int attrEnd = i;
+            if (attrStart == attrEnd) {
+                return -1;
+            }
+
+            while (i < length && isTagWhitespace(html.charAt(i))) {
+                i++;
+            }
+            int valueStart = i;
+            int valueEnd = i;
+            if (i < length && html.charAt(i) == '=') {
+                i++;
+                while (i < length && isTagWhitespace(html.charAt(i))) {
+                    i++;
+                }
+                if (i >= length) {
+                    return -1;
+                }
+                char quote = html.charAt(i);
+                if (quote == '"' || quote == '\'') {
+                    int close = html.indexOf(quote, i + 1);
+                    if (close < 0) {
+                        return -1;
+                    }
+                    valueStart = i + 1;
+                    valueEnd = close;
+                    i = close + 1;
+                } else {
+                    valueStart = i;
+                    while (i < length && !isTagWhitespace(c = html.charAt(i)) && c != '>') {
+                        if (c == '"' || c == '\'' || c == '<' || c == '=' || c == '`') {
+                            return -1;
+                        }
+                        i++;
+                    }
+                    valueEnd = i;
+                    if (i >= length || valueStart == valueEnd) {
+                        return -1;
+                    }
+                }
+            }
+
+            if (handler != null) {
+                attributes.set(attrStart, attrEnd, valueStart, valueEnd);
+            }
+        }
+
+        boolean isVoid = (TAG_FLAGS[tag] & VOID) != 0;
+        if (selfClosing && !isVoid) {
+            return -1;
+        }
+
+        if (handler != null) {
+            handler.startElement(TAG_NAMES[tag], attributes);
+        }
+        if (isVoid) {
+            if (handler != null) {
+                handler.endElement(TAG_NAMES[tag]);
+            }
+        } else {
+            push(tag);
+        }
+        return i;
+    }
+
+    /**
+     * Handle end tag, nameStart points after '&lt;/'
+     *
+     * @return Index after the tag, or -1 if unsupported
+     */
+    private int endTag(int nameStart) {
+        int length = html.length();
+        int i = nameStart;
+        while (i < length && isAsciiLetterOrDigit(html.charAt(i))) {
+            i++;
+        }
+        int tag = tagId(nameStart, i);
+        while (i < length && isTagWhitespace(html.charAt(i))) {
+            i++;
+        }
+        if (tag == 0 || i >= length || html.charAt(i) != '>') {
+            return -1;
+        }
+
+        // Only the current element may be closed
+        if (depth == 0 || stack[depth - 1] != tag) {
+            return -1;
+        }
+        depth--;
+        if (handler != null) {
+            handler.endElement(TAG_NAMES[tag]);
+        }
+        return i + 1;
+    }
+
+    /**
+     * Skip a comment
+     *
+     * @return Index after the comment, or -1 if unsupported
+     */
+    private int comment(int start) {
+        if (!html.startsWith("<!--", start)) {
+            return -1;
+        }
+        int close = html.indexOf("-->", start + 4);
+        if (close < 0) {
+            return -1;
+        }
+        // Abruptly closed or "--!>" comments end elsewhere in Jsoup
+        if (html.startsWith(">", start + 4) || html.startsWith("->", start + 4)) {
+            return -1;
+        }
+        int bang = html.indexOf("--!>", start + 4);
+        if (bang >= 0 && bang < close) {
+            return -1;
+        }
+        return close + 3;
+    }
+
+    /**
+     * Check if opening the tag keeps the Jsoup tree equal to the source nesting
+     */
+    private boolean canOpen(int tag) {
+        int top = top();
+        int flags = TAG_FLAGS[tag];
+
+        // Table structure only allows its own children
+        if (top == TABLE) {
+            if (tag != THEAD && tag != TBODY && tag != TFOOT && tag != TR) {
+                return false;
+            }
+        } else if (top == THEAD || top == TBODY || top == TFOOT) {
+            if (tag != TR) {
+                return false;
+            }
+        } else if (top == TR) {
+            if (tag != TD && tag != TH) {
+                return false;
+            }
+        } else if ((flags & TABLE_PART) != 0) {
+            return false;
+        }
+
+        // Blocks close an open <p>
+        if ((flags & CLOSES_P) != 0) {
+            for (int i = depth - 1; i >= 0; i--) {
+                if (stack[i] == P) {
+                    return false;
+                }
+                if ((TAG_FLAGS[stack[i]] & SCOPE) != 0) {
+                    break;
+                }
+            }
+        }
+
+        // A heading closes the current heading
+        if ((flags & HEADING) != 0 && top != 0 && (TAG_FLAGS[top] & HEADING) != 0) {
+            return false;
+        }
+
+        // <li> closes an open list item unless it starts a list's first level
+        if (tag == LI && top != UL && top != OL) {
+            return false;
+        }
+
+        // Nested links are split by the adoption agency
+        if (tag == A) {
+            for (int i = depth - 1; i >= 0; i--) {
+                if (stack[i] == A) {
+                    return false;
+                }
+                if (stack[i] == TD || stack[i] == TH) {
+                    break;
+                }
+            }
+        }
+        return true;
+    }
+
+    private void push(int tag) {
+        if (depth == stack.length) {
+            stack = Arrays.copyOf(stack, depth * 2);
+        }
+        stack[depth++] = tag;
+    }
+
+    private int top() {
+        return depth == 0 ? 0 : stack[depth - 1];
+    }
+
+    private static boolean isTableStructure(int tag) {
+        return tag == TABLE || tag == THEAD || tag == TBODY || tag == TFOOT || tag == TR;
+    }
+
+    private int tagId(int start, int end) {
+        int length = end - start;
+        for (int tag = 1; tag < TAG_NAMES.length; tag++) {
+            if (TAG_NAMES[tag].length() == length && equalsAsciiIgnoreCase(start, TAG_NAMES[tag])) {
+                return tag;
+            }
+        }
+        return 0;
+    }
+
+    private boolean equalsAsciiIgnoreCase(int start, String lowerCase) {
+        for (int i = 0; i < lowerCase.length(); i++) {
+            char c = html.charAt(start + i);
+            if (c >= 'A' && c <= 'Z') {
+                c += 'a' - 'A';
+            }
+            if (c != lowerCase.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decode character references in text
+     * <p>
+     * Semicolon-terminated references from the table and plain numeric references are
+     * decoded here; anything else defers the whole segment to Jsoup's decoder.
+     */
+    static String decode(String html, int start, int end) {
+        int amp = html.indexOf('&', start);
+        if (amp < 0 || amp >= end) {
+            return html.substring(start, end);
+        }
+
+        StringBuilder out = new StringBuilder(end - start);
+        int i = start;
+        while (amp >= 0 && amp < end) {
+            out.append(html, i, amp);
+            int semicolon = html.indexOf(';', amp + 1);
+            if (semicolon < 0 || semicolon >= end || semicolon - amp > 10) {
+                return Parser.unescapeEntities(html.substring(start, end), false);
+            }
+
+            if (html.charAt(amp + 1) == '#') {
+                int codePoint = parseCodePoint(html, amp + 2, semicolon);
+                if (codePoint < 0) {
+                    return Parser.unescapeEntities(html.substring(start, end), false);
+                }
+                out.appendCodePoint(codePoint);
+            } else {
+                String value = ENTITIES.get(html.substring(amp + 1, semicolon));
+                if (value == null) {
+                    return Parser.unescapeEntities(html.substring(start, end), false);
+                }
+                out.append(value);
+            }
+            i = semicolon + 1;
+            amp = html.indexOf('&', i);
+        }
+        out.append(html, i, end);
+        return out.toString();
+    }
+
+    /**
+     * Parse a numeric reference body ("65" or "x41"), or -1 if Jsoup would remap it
+     */
+    private static int parseCodePoint(String html, int start, int end) {
+        int radix = 10;
+        if (start < end && (html.charAt(start) == 'x' || html.charAt(start) == 'X')) {
+            radix = 16;
+            start++;
+        }
+        if (start == end || end - start > 6) {
+            return -1;
+        }
+        int codePoint = 0;
+        for (int i = start; i < end; i++) {
+            int digit = Character.digit(html.charAt(i), radix);
+            if (digit < 0) {
+                return -1;
+            }
+            codePoint = codePoint * radix + digit;
+        }
+        // Controls, the windows-1252 range and surrogates get special treatment
+        boolean plain = (codePoint >= 0x20 && codePoint < 0x7F)
+                || (codePoint >= 0xA0 && codePoint < 0xD800)
+                || (codePoint >= 0xE000 && codePoint <= 0x10FFFF);
+        return plain ? codePoint : -1;
+    }
+
+    private static boolean isAsciiLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isAsciiLetterOrDigit(char c) {
+        return isAsciiLetter(c) || (c >= '0' && c <= '9');
+    }
+
+    private static boolean isTagNameEnd(char c) {
+        return c == '>' || c == '/' || isTagWhitespace(c);
+    }
+
+    private static boolean isTagWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f';
+    }
+
+    /**
+     * Supported attributes of the current start tag, values decoded lazily
+     */
+    private final class Attributes implements TagAttributes {
+        private final int[] ranges = new int[ATTRIBUTE_NAMES.length * 2];
+        private final String[] values = new String[ATTRIBUTE_NAMES.length];
+        private final boolean[] present = new boolean[ATTRIBUTE_NAMES.length];
+
+        void clear() {
+            Arrays.fill(present, false);
+            Arrays.fill(values, null);
+        }
+
+        void set(int nameStart, int nameEnd, int valueStart, int valueEnd) {
+            for (int id = 0; id < ATTRIBUTE_NAMES.length; id++) {
+                String name = ATTRIBUTE_NAMES[id];
+                if (name.length() == nameEnd - nameStart && equalsAsciiIgnoreCase(nameStart, name)) {
+                    // The first occurrence wins
+                    if (!present[id]) {
+                        present[id] = true;
+                        ranges[id * 2] = valueStart;
+                        ranges[id * 2 + 1] = valueEnd;
+                    }
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public String get(String name) {
+            for (int id = 0; id < ATTRIBUTE_NAMES.length; id++) {
+                if (ATTRIBUTE_NAMES[id].equals(name)) {
+                    if (!present[id]) {
+                        return null;
+                    }
+                    if (values[id] == null) {
+                        String raw = html.substring(ranges[id * 2], ranges[id * 2 + 1]);
+                        values[id] = raw.indexOf('&') >= 0 ? Parser.unescapeEntities(raw, true) : raw;
+                    }
+                    return values[id];
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package io.github.fivefish130.html2excel.richtext.parser;
+
+/**
+ * Complexity class of an HTML input, decided by {@link HtmlPreScanner}
+ * <p>
+ * Lower tiers are converted without building a DOM.
+ *
+ * @author fivefish130
+ */
+public enum InputTier {
+
+    /** No markup and no entities */
+    PLAIN_TEXT,
+
+    /** Character entities and {@code <br>} only */
+    ENTITIES_AND_BREAKS,
+
+    /** Attribute-less, well-nested {@code b/strong/i/em/u} plus entities and {@code <br>} */
+    SIMPLE_INLINE,
+
+    /** Anything else, parsed with Jsoup */
+    FULL_HTML
+}
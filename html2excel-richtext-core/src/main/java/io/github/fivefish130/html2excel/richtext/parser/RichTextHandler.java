@@ -0,0 +1,586 @@
+package io.github.fivefish130.html2excel.richtext.parser;
+
+import io.github.fivefish130.html2excel.richtext.builder.RichTextBuilder;
+import io.github.fivefish130.html2excel.richtext.model.CompiledTable;
+import io.github.fivefish130.html2excel.richtext.model.RunStyle;
+import io.github.fivefish130.html2excel.richtext.model.TableCell;
+import io.github.fivefish130.html2excel.richtext.model.WhiteSpace;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * HTML event handler that builds rich text
+ * <p>
+ * Every text event is tagged with the style of its enclosing element, so nested inline
+ * styles combine (e.g. bold inside italic) and runs never have to be re-split afterwards.
+ * Block elements, list items and table rows/cells add line breaks, bullets and separators;
+ * the cell background, the first hyperlink and image sources are recorded on the
+ * {@link RichTextBuilder}. The handler never touches a workbook.
+ * <p>
+ * With a {@link ConversionBudget}, HTML nested too deeply, with too many nodes or taking
+ * too long falls back to plain text: formatting is dropped and the remaining input only
+ * contributes text and line breaks.
+ * <p>
+ * With table expansion, first-level tables are left out of the text and each of their cells
+ * is compiled by a builder of its own; nested tables are flattened into their cell.
+ *
+ * @author fivefish130
+ */
+public class RichTextHandler implements HtmlEventHandler {
+
+    // Element kinds
+    private static final byte INLINE = 0;
+    private static final byte BREAK = 1;
+    private static final byte BLOCK = 2;
+    private static final byte LIST_ITEM = 3;
+    private static final byte TABLE_ROW = 4;
+    private static final byte TABLE_CELL = 5;
+
+    private static final CssParser CSS_PARSER = new CssParser();
+
+    private static final int LINK_COLOR = 0x0563C1;  // Excel link color
+    private static final String COURIER_NEW = "Courier New";
+
+    private final RichTextBuilder main;
+    // Builder receiving text: main, or the builder of an expanded table cell
+    private RichTextBuilder rich;
+    private final TraverseContext context = new TraverseContext();
+
+    // Stack of open elements; index 0 holds the inherited style
+    private String[] tags = new String[16];
+    private byte[] kinds = new byte[16];
+    private ComputedStyle[] styles = new ComputedStyle[16];
+    private int[] blockStarts = new int[16];
+    private int depth;
+
+    // Set once the builder is truncated and open elements were closed
+    private boolean finished;
+
+    // Budget; plain is set once it is exceeded
+    private ConversionBudget budget = ConversionBudget.UNLIMITED;
+    private int nodes;
+    private boolean plain;
+    private int lastBreakEnd = -1;
+
+    // Rules of the shared stylesheet and <style> elements seen so far
+    private Stylesheet stylesheet = Stylesheet.EMPTY;
+    private StringBuilder styleText;
+    private boolean inStyle;
+
+    // Table expansion; frames of the open first-level table and cell, 0 if none
+    private boolean expandTables;
+    private int cellMaxLength = Integer.MAX_VALUE;
+    private String cellTruncateSuffix = "";
+    private List<CompiledTable> tables;
+    private List<List<TableCell>> tableRows;
+    private List<TableCell> tableRow;
+    private int tableFrame;
+    private int cellFrame;
+    private int colspan;
+    private int rowspan;
+
+    /**
+     * Create handler without inherited styles
+     *
+     * @param rich Run builder collecting text, styles and side channels
+     */
+    public RichTextHandler(RichTextBuilder rich) {
+        this(Collections.<String, String>emptyMap(), rich);
+    }
+
+    /**
+     * Create handler
+     *
+     * @param inheritedStyle CSS styles inherited by the whole fragment
+     * @param rich Run builder collecting text, styles and side channels
+     */
+    public RichTextHandler(Map<String, String> inheritedStyle, RichTextBuilder rich) {
+        this.main = rich;
+        this.rich = rich;
+        styles[0] = ComputedStyle.of(inheritedStyle);
+    }
+
+    /**
+     * Limit the conversion
+     *
+     * @param budget Budget of the cell
+     */
+    public void setBudget(ConversionBudget budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * Apply a stylesheet to the elements
+     * <p>
+     * Rules of {@code <style>} elements in the input are added to it and apply to the
+     * elements that follow them.
+     *
+     * @param stylesheet Shared stylesheet
+     */
+    public void setStylesheet(Stylesheet stylesheet) {
+        this.stylesheet = stylesheet;
+    }
+
+    /**
+     * Expand first-level tables into {@link #getTables() compiled tables} instead of
+     * flattening them into the text
+     *
+     * @param maxLength Maximum text length of a table cell
+     * @param truncateSuffix Suffix of truncated table cells
+     */
+    public void setTableExpansion(int maxLength, String truncateSuffix) {
+        this.expandTables = true;
+        this.cellMaxLength = maxLength;
+        this.cellTruncateSuffix = truncateSuffix;
+        this.tables = new ArrayList<>();
+    }
+
+    /**
+     * Get the expanded tables in document order
+     *
+     * @return Tables, empty without table expansion
+     */
+    public List<CompiledTable> getTables() {
+        return tables != null ? tables : Collections.<CompiledTable>emptyList();
+    }
+
+    /**
+     * Check if the budget was exceeded and the input converted to plain text
+     */
+    public boolean isBudgetExceeded() {
+        return plain;
+    }
+
+    @Override
+    public void startElement(String tag, TagAttributes attributes) {
+        if ("style".equals(tag)) {
+            // Contents are CSS, not text
+            inStyle = true;
+            if (styleText == null) {
+                styleText = new StringBuilder();
+            }
+            styleText.setLength(0);
+            return;
+        }
+        if (finished) {
+            return;
+        }
+        if (!plain && (depth >= budget.getMaxDepth() || overBudget())) {
+            fallBackToPlainText();
+        }
+        if (plain) {
+            if ("br".equals(tag)) {
+                plainBreak();
+            }
+            return;
+        }
+        ComputedStyle parentStyle = styles[depth];
+
+        // Handle <br> explicitly
+        if ("br".equals(tag)) {
+            rich.appendBreak("\n");
+            push(tag, BREAK, parentStyle);
+            return;
+        }
+
+        // Side channels
+        if ("a".equals(tag) && attributes.has("href")) {
+            rich.setFirstHrefIfAbsent(attributes.get("href"));
+        } else if ("img".equals(tag)) {
+            String src = attributes.get("src");
+            if (src != null && !src.trim().isEmpty()) {
+                rich.addImageSource(src);
+            }
+        }
+
+        // Derive the style; unchanged styles are shared with the parent
+        ComputedStyle style = styleFromAttr(tag, attributes, styleFromTag(tag, parentStyle), stylesheet);
+        RunStyle run = style.getRunStyle();
+
+        if (tableFrame > 0 && cellFrame == 0) {
+            startTablePart(tag, attributes, style);
+        } else if ("li".equals(tag)) {
+            // Add bullet or number
+            if (context.isOrderedList()) {
+                int itemNumber = context.getAndIncrementItemNumber();
+                rich.append(itemNumber + ". ", run);
+            } else {
+                rich.append("\u2022 ", run);  // Bullet point: •
+            }
+            push(tag, LIST_ITEM, style);
+        } else if (expandTables && tableFrame == 0 && "table".equals(tag)) {
+            tableRows = new ArrayList<>();
+            push(tag, BLOCK, style);
+            tableFrame = depth;
+        } else if ("tr".equals(tag)) {
+            context.enterRow();
+            push(tag, TABLE_ROW, style);
+        } else if ("td".equals(tag) || "th".equals(tag)) {
+            // Add separator for non-first cells
+            if (context.getCellIndex() > 0) {
+                rich.appendBreak(" | ");
+            }
+            context.incrementCellIndex();
+            push(tag, TABLE_CELL, style);
+        } else if (isBlockTag(tag)) {
+            // Track list context
+            if ("ul".equals(tag)) {
+                context.enterList(false);
+            } else if ("ol".equals(tag)) {
+                context.enterList(true);
+            }
+            push(tag, BLOCK, style);
+            blockStarts[depth] = rich.length();
+        } else {
+            push(tag, INLINE, style);
+        }
+    }
+
+    @Override
+    public void endElement(String tag) {
+        if ("style".equals(tag)) {
+            inStyle = false;
+            if (!plain && !finished) {
+                stylesheet = stylesheet.concat(Stylesheet.parse(styleText.toString()));
+            }
+            return;
+        }
+        if (plain) {
+            if (!finished && (isBlockTag(tag) || "td".equals(tag) || "th".equals(tag))) {
+                plainBreak();
+            }
+            return;
+        }
+        if (depth == 0 || finished) {
+            return;
+        }
+        int frame = depth;
+        String openTag = tags[frame];
+        ComputedStyle style = styles[frame];
+        styles[frame] = null;
+        depth--;
+
+        if (frame == cellFrame) {
+            endTableCell(style);
+            return;
+        } else if (frame == tableFrame) {
+            endTableRow();
+            tables.add(new CompiledTable(tableRows));
+            tableRows = null;
+            tableFrame = 0;
+            return;
+        } else if (tableFrame > 0 && cellFrame == 0) {
+            if (kinds[frame] == TABLE_ROW) {
+                endTableRow();
+            }
+            return;
+        }
+
+        switch (kinds[frame]) {
+            case LIST_ITEM:
+                rich.appendBreak("\n");
+                break;
+            case TABLE_ROW:
+                context.exitRow();
+                rich.appendBreak("\n");
+                break;
+            case BLOCK:
+                // Exit list context
+                if ("ul".equals(openTag) || "ol".equals(openTag)) {
+                    context.exitList();
+                }
+
+                // Add newline only if block has content
+                if (rich.length() > blockStarts[frame]) {
+                    rich.appendBreak("\n");
+                }
+
+                // Record background color for the cell
+                if (style.getBackground() != RunStyle.NO_COLOR) {
+                    rich.setBackgroundColorIfAbsent(style.getBackground());
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    @Override
+    public void text(String text) {
+        if (inStyle) {
+            styleText.append(text);
+            return;
+        }
+        if (finished || (tableFrame > 0 && cellFrame == 0)) {
+            // Whitespace between table rows and cells
+            return;
+        }
+        if (!plain && overBudget()) {
+            fallBackToPlainText();
+        }
+        if (plain) {
+            rich.appendText(text, 0, text.length(), null, WhiteSpace.NORMAL);
+        } else {
+            ComputedStyle style = styles[depth];
+            rich.appendText(text, 0, text.length(), style.getRunStyle(), style.getWhiteSpace());
+        }
+    }
+
+    /**
+     * Done once the builder dropped text at its length limit
+     * <p>
+     * Elements still open are closed first, so backgrounds of enclosing blocks still apply.
+     */
+    @Override
+    public boolean isDone() {
+        if (finished) {
+            return true;
+        }
+        if (!main.isTruncated()) {
+            return false;
+        }
+        while (depth > 0) {
+            endElement(tags[depth]);
+        }
+        finished = true;
+        return true;
+    }
+
+    private boolean overBudget() {
+        // Check the clock every 64 nodes
+        return ++nodes > budget.getMaxNodes() || ((nodes & 63) == 0 && budget.isExpired());
+    }
+
+    private void fallBackToPlainText() {
+        plain = true;
+        // An open expanded table is dropped, its remaining text goes to the cell
+        rich = main;
+        tableRows = null;
+        tableRow = null;
+        tableFrame = 0;
+        cellFrame = 0;
+        rich.discardFormatting();
+        Arrays.fill(styles, 1, depth + 1, null);
+        depth = 0;
+    }
+
+    /**
+     * Line break between blocks in plain text mode (at most one in a row)
+     */
+    private void plainBreak() {
+        if (rich.length() > 0 && rich.length() != lastBreakEnd) {
+            rich.appendBreak("\n");
+            lastBreakEnd = rich.length();
+        }
+    }
+
+    /**
+     * Start a row or cell of an expanded table, or an element between them
+     */
+    private void startTablePart(String tag, TagAttributes attributes, ComputedStyle style) {
+        if ("tr".equals(tag)) {
+            endTableRow();
+            tableRow = new ArrayList<>();
+            push(tag, TABLE_ROW, style);
+        } else if ("td".equals(tag) || "th".equals(tag)) {
+            if (tableRow == null) {
+                tableRow = new ArrayList<>();
+            }
+            colspan = parseSpan(attributes.get("colspan"), 1000);
+            rowspan = parseSpan(attributes.get("rowspan"), 65534);
+            rich = new RichTextBuilder();
+            rich.setMaxLength(cellMaxLength, cellTruncateSuffix);
+            push(tag, TABLE_CELL, style);
+            cellFrame = depth;
+        } else {
+            // thead, tbody, caption, ...
+            push(tag, INLINE, style);
+        }
+    }
+
+    private void endTableCell(ComputedStyle style) {
+        if (style.getBackground() != RunStyle.NO_COLOR) {
+            rich.setBackgroundColorIfAbsent(style.getBackground());
+        }
+        tableRow.add(new TableCell(rich.build(), colspan, rowspan));
+        rich = main;
+        cellFrame = 0;
+    }
+
+    private void endTableRow() {
+        if (tableRow != null) {
+            tableRows.add(tableRow);
+            tableRow = null;
+        }
+    }
+
+    /**
+     * Parse a colspan/rowspan attribute, 1 if absent or invalid
+     */
+    private static int parseSpan(String value, int max) {
+        if (value == null) {
+            return 1;
+        }
+        try {
+            int span = Integer.parseInt(value.trim());
+            return span < 1 ? 1 : Math.min(span, max);
+        } catch (NumberFormatException e) {
+            return 1;
+        }
+    }
+
+    private void push(String tag, byte kind, ComputedStyle style) {
+        if (++depth == tags.length) {
+            int capacity = depth * 2;
+            tags = Arrays.copyOf(tags, capacity);
+            kinds = Arrays.copyOf(kinds, capacity);
+            styles = Arrays.copyOf(styles, capacity);
+            blockStarts = Arrays.copyOf(blockStarts, capacity);
+        }
+        tags[depth] = tag;
+        kinds[depth] = kind;
+        styles[depth] = style;
+    }
+
+    /**
+     * Context for traversing (tracks list/table state)
+     */
+    private static class TraverseContext {
+        private boolean inOrderedList = false;
+        private int listItemNumber = 1;
+        private int cellIndex = 0;
+
+        void enterList(boolean ordered) {
+            this.inOrderedList = ordered;
+            this.listItemNumber = 1;
+        }
+
+        void exitList() {
+            this.inOrderedList = false;
+            this.listItemNumber = 1;
+        }
+
+        boolean isOrderedList() {
+            return inOrderedList;
+        }
+
+        int getAndIncrementItemNumber() {
+            return listItemNumber++;
+        }
+
+        void enterRow() {
+            this.cellIndex = 0;
+        }
+
+        void exitRow() {
+            this.cellIndex = 0;
+        }
+
+        int getCellIndex() {
+            return cellIndex;
+        }
+
+        void incrementCellIndex() {
+            cellIndex++;
+        }
+    }
+
+    /**
+     * Check if tag is block-level element
+     */
+    private static boolean isBlockTag(String tag) {
+        switch (tag) {
+            case "p":
+            case "div":
+            case "h1":
+            case "h2":
+            case "h3":
+            case "h4":
+            case "h5":
+            case "h6":
+            case "li":
+            case "ul":
+            case "ol":
+            case "table":
+            case "tr":
+            case "blockquote":
+            case "pre":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Derive style from HTML tag
+     */
+    private static ComputedStyle styleFromTag(String tag, ComputedStyle style) {
+        switch (tag) {
+            case "b":
+            case "strong":
+                return style.withBold(true);
+            case "i":
+            case "em":
+                return style.withItalic(true);
+            case "u":
+                return style.withUnderline(true);
+            case "a":
+                return style.withColor(LINK_COLOR).withUnderline(true);
+            case "code":
+                return style.withFontFamily(COURIER_NEW);
+            case "pre":
+                return style.withWhiteSpace(WhiteSpace.PRE);
+            default:
+                return style;
+        }
+    }
+
+    /**
+     * Derive style from HTML attributes and stylesheet rules
+     */
+    private static ComputedStyle styleFromAttr(String tag, TagAttributes attributes, ComputedStyle style,
+                                               Stylesheet stylesheet) {
+        // HTML attributes
+        String color = attributes.get("color");
+        if (color != null) {
+            style = style.with(StyleProperty.COLOR, color);
+        }
+        String bgcolor = attributes.get("bgcolor");
+        if (bgcolor != null) {
+            style = style.with(StyleProperty.BACKGROUND_COLOR, bgcolor);
+        }
+
+        // Stylesheet rules win over attributes, the style attribute over both
+        style = stylesheet.apply(tag, attributes, style);
+
+        // Parse style attribute (cached)
+        String cssText = attributes.get("style");
+        if (cssText != null) {
+            style = style.with(CSS_PARSER.parseBlock(cssText));
+        }
+
+        // Handle <font> tag
+        if ("font".equals(tag)) {
+            String face = attributes.get("face");
+            if (face != null) {
+                style = style.with(StyleProperty.FONT_FAMILY, face);
+            }
+            String size = attributes.get("size");
+            if (size != null) {
+                try {
+                    int v = Integer.parseInt(size);
+                    style = style.with(StyleProperty.FONT_SIZE, String.valueOf(10 + v));
+                } catch (Exception ignored) {
+                }
+            }
+            if (color != null) {
+                style = style.with(StyleProperty.COLOR, color);
+            }
+        }
+        return style;
+    }
+}
@@ -0,0 +1,47 @@
+package io.github.fivefish130.html2excel.richtext.parser;
+
+/**
+ * CSS properties that affect the converted rich text
+ *
+ * @author fivefish130
+ */
+public enum StyleProperty {
+
+    FONT_WEIGHT,
+    FONT_STYLE,
+    TEXT_DECORATION,
+    COLOR,
+    FONT_FAMILY,
+    FONT_SIZE,
+    BACKGROUND_COLOR,
+    WHITE_SPACE;
+
+    /**
+     * Look up a property by its lower-case CSS name
+     *
+     * @param name CSS property name (e.g. "font-weight")
+     * @return Property, or null if it doesn't affect the rich text
+     */
+    public static StyleProperty forName(String name) {
+        switch (name) {
+            case "font-weight":
+                return FONT_WEIGHT;
+            case "font-style":
+                return FONT_STYLE;
+            case "text-decoration":
+                return TEXT_DECORATION;
+            case "color":
+                return COLOR;
+            case "font-family":
+                return FONT_FAMILY;
+            case "font-size":
+                return FONT_SIZE;
+            case "background-color":
+                return BACKGROUND_COLOR;
+            case "white-space":
+                return WHITE_SPACE;
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,402 @@
+package io.github.fivefish130.html2excel.richtext.parser;
+
+import io.github.fivefish130.html2excel.richtext.cache.ParseCache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Immutable, compiled CSS stylesheet (a {@code <style>} block or a shared stylesheet)
+ * <p>
+ * Supports rules whose selectors are compound selectors of a tag, classes and an id
+ * ({@code p}, {@code .note}, {@code #total}, {@code td.num}, {@code *}), optionally grouped
+ * with commas. Selectors with combinators, attributes or pseudo-classes and at-rules are
+ * skipped. Rules are indexed by id, else by their first class, else by tag, so matching an
+ * element is a few hash lookups. Matching rules apply in cascade order (specificity, then
+ * source order), before the element's {@code style} attribute.
+ *
+ * @author fivefish130
+ */
+public final class Stylesheet {
+
+    private static final Rule[] NO_RULES = new Rule[0];
+
+    /** Stylesheet without rules */
+    public static final Stylesheet EMPTY = new Stylesheet(NO_RULES);
+
+    private static final CssParser CSS_PARSER = new CssParser();
+
+    // Shared by all converters: the same <style> blocks recur across cells and exports
+    private static final ParseCache<Stylesheet> CACHE = new ParseCache<>(256, 64 * 1024);
+
+    // Rules in source order
+    private final Rule[] rules;
+    private final Map<String, Rule[]> byId;
+    private final Map<String, Rule[]> byClass;
+    private final Map<String, Rule[]> byTag;
+    private final Rule[] universal;
+
+    // Last concatenation, sheets of <style> blocks are usually the same instance per cell
+    private volatile Concat lastConcat;
+
+    private Stylesheet(Rule[] rules) {
+        this.rules = rules;
+        Map<String, List<Rule>> ids = new HashMap<>();
+        Map<String, List<Rule>> classes = new HashMap<>();
+        Map<String, List<Rule>> tags = new HashMap<>();
+        List<Rule> any = new ArrayList<>();
+        for (Rule rule : rules) {
+            if (rule.id != null) {
+                ids.computeIfAbsent(rule.id, k -> new ArrayList<>()).add(rule);
+            } else if (rule.classes.length > 0) {
+                classes.computeIfAbsent(rule.classes[0], k -> new ArrayList<>()).add(rule);
+            } else if (rule.tag != null) {
+                tags.computeIfAbsent(rule.tag, k -> new ArrayList<>()).add(rule);
+            } else {
+                any.add(rule);
+            }
+        }
+        this.byId = toIndex(ids);
+        this.byClass = toIndex(classes);
+        this.byTag = toIndex(tags);
+        this.universal = any.toArray(NO_RULES);
+    }
+
+    /**
+     * Parse a stylesheet, served from a process-wide cache for recurring CSS
+     *
+     * @param css CSS text
+     * @return Compiled stylesheet, {@link #EMPTY} if no rule affects the rich text
+     */
+    public static Stylesheet parse(String css) {
+        if (css == null || css.trim().isEmpty()) {
+            return EMPTY;
+        }
+        return CACHE.get(css, Stylesheet::compile);
+    }
+
+    /**
+     * Combine with a stylesheet that follows this one
+     *
+     * @param next Following stylesheet, wins over this one at equal specificity
+     * @return Combined stylesheet
+     */
+    public Stylesheet concat(Stylesheet next) {
+        if (next.rules.length == 0) {
+            return this;
+        }
+        if (rules.length == 0) {
+            return next;
+        }
+        Concat last = lastConcat;
+        if (last != null && last.next == next) {
+            return last.result;
+        }
+        Rule[] combined = Arrays.copyOf(rules, rules.length + next.rules.length);
+        for (int i = 0; i < next.rules.length; i++) {
+            Rule rule = next.rules[i];
+            combined[rules.length + i] = new Rule(rule.tag, rule.classes, rule.id, rule.block,
+                    rule.specificity, rules.length + i);
+        }
+        Stylesheet concat = new Stylesheet(combined);
+        lastConcat = new Concat(next, concat);
+        return concat;
+    }
+
+    /**
+     * Check if the stylesheet has no rules
+     */
+    public boolean isEmpty() {
+        return rules.length == 0;
+    }
+
+    /**
+     * Get the number of rules
+     */
+    public int size() {
+        return rules.length;
+    }
+
+    /**
+     * Apply the matching rules to an element's style
+     *
+     * @param tag Lower-case tag name
+     * @param attributes Element attributes ({@code id} and {@code class} are read)
+     * @param style Style of the element before the stylesheet
+     * @return Style with matching rules applied
+     */
+    public ComputedStyle apply(String tag, TagAttributes attributes, ComputedStyle style) {
+        if (rules.length == 0) {
+            return style;
+        }
+        String id = attributes.get("id");
+        String classAttr = attributes.get("class");
+
+        List<Rule> matched = collect(byTag.get(tag), tag, id, classAttr, null);
+        if (id != null && !byId.isEmpty()) {
+            matched = collect(byId.get(id), tag, id, classAttr, matched);
+        }
+        if (classAttr != null && !byClass.isEmpty()) {
+            int length = classAttr.length();
+            int i = 0;
+            while (i < length) {
+                while (i < length && isClassSeparator(classAttr.charAt(i))) {
+                    i++;
+                }
+                int start = i;
+                while (i < length && !isClassSeparator(classAttr.charAt(i))) {
+                    i++;
+                }
+                if (i > start) {
+                    matched = collect(byClass.get(classAttr.substring(start, i)), tag, id, classAttr, matched);
+                }
+            }
+        }
+        matched = collect(universal, tag, id, classAttr, matched);
+        if (matched == null) {
+            return style;
+        }
+
+        // Cascade order: specificity, then source order
+        if (matched.size() > 1) {
+            matched.sort((a, b) -> a.specificity != b.specificity
+                    ? Integer.compare(a.specificity, b.specificity)
+                    : Integer.compare(a.order, b.order));
+        }
+        for (Rule rule : matched) {
+            style = style.with(rule.block);
+        }
+        return style;
+    }
+
+    private static List<Rule> collect(Rule[] candidates, String tag, String id, String classAttr,
+                                      List<Rule> matched) {
+        if (candidates == null) {
+            return matched;
+        }
+        for (Rule rule : candidates) {
+            if (rule.matches(tag, id, classAttr)) {
+                if (matched == null) {
+                    matched = new ArrayList<>(4);
+                } else if (matched.contains(rule)) {
+                    // Found again through a repeated class
+                    continue;
+                }
+                matched.add(rule);
+            }
+        }
+        return matched;
+    }
+
+    /**
+     * Compile CSS text into rules
+     */
+    private static Stylesheet compile(String css) {
+        String text = stripComments(css);
+        List<Rule> rules = new ArrayList<>();
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            int open = text.indexOf('{', i);
+            if (open < 0) {
+                break;
+            }
+            int close = matchingBrace(text, open);
+            String prelude = text.substring(i, open);
+            // Statements such as @import end with a semicolon
+            prelude = prelude.substring(prelude.lastIndexOf(';') + 1).trim();
+            i = close + 1;
+            if (prelude.isEmpty() || prelude.charAt(0) == '@') {
+                // At-rules (@media, @font-face, ...) are skipped with their contents
+                continue;
+            }
+
+            CssDeclarationBlock block = CSS_PARSER.parseBlock(text.substring(open + 1, Math.min(close, length)));
+            if (block.isEmpty()) {
+                continue;
+            }
+            for (String selector : prelude.split(",")) {
+                Rule rule = parseSelector(selector.trim(), block, rules.size());
+                if (rule != null) {
+                    rules.add(rule);
+                }
+            }
+        }
+        return rules.isEmpty() ? EMPTY : new Stylesheet(rules.toArray(NO_RULES));
+    }
+
+    /**
+     * Parse a compound selector, null if it isn't supported
+     */
+    private static Rule parseSelector(String selector, CssDeclarationBlock block, int order) {
+        int length = selector.length();
+        if (length == 0) {
+            return null;
+        }
+        int i = 0;
+        String tag = null;
+        if (selector.charAt(0) == '*') {
+            i = 1;
+        } else if (isNameChar(selector.charAt(0))) {
+            i = scanName(selector, 0);
+            tag = selector.substring(0, i).toLowerCase(Locale.ROOT);
+        }
+
+        String id = null;
+        List<String> classes = new ArrayList<>(1);
+        while (i < length) {
+            char c = selector.charAt(i);
+            int end = scanName(selector, i + 1);
+            if (end == i + 1 || (c != '.' && c != '#')) {
+                // Combinators, attribute selectors, pseudo-classes
+                return null;
+            }
+            String name = selector.substring(i + 1, end);
+            if (c == '.') {
+                classes.add(name);
+            } else if (id == null) {
+                id = name;
+            } else if (!id.equals(name)) {
+                return null;
+            }
+            i = end;
+        }
+        int specificity = (id != null ? 10000 : 0) + classes.size() * 100 + (tag != null ? 1 : 0);
+        return new Rule(tag, classes.toArray(new String[0]), id, block, specificity, order);
+    }
+
+    private static String stripComments(String css) {
+        if (css.indexOf("/*") < 0 && css.indexOf("<!--") < 0 && css.indexOf("-->") < 0) {
+            return css;
+        }
+        StringBuilder out = new StringBuilder(css.length());
+        int length = css.length();
+        int i = 0;
+        while (i < length) {
+            if (css.startsWith("/*", i)) {
+                int end = css.indexOf("*/", i + 2);
+                i = end < 0 ? length : end + 2;
+                out.append(' ');
+            } else if (css.startsWith("<!--", i)) {
+                // Legacy HTML comment markers around style contents
+                i += 4;
+                out.append(' ');
+            } else if (css.startsWith("-->", i)) {
+                i += 3;
+                out.append(' ');
+            } else {
+                out.append(css.charAt(i++));
+            }
+        }
+        return out.toString();
+    }
+
+    /**
+     * Find the brace closing the one at {@code open}, or the text length if unclosed
+     */
+    private static int matchingBrace(String text, int open) {
+        int nesting = 0;
+        for (int i = open; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '{') {
+                nesting++;
+            } else if (c == '}' && --nesting == 0) {
+                return i;
+            }
+        }
+        return text.length();
+    }
+
+    private static int scanName(String s, int start) {
+        int i = start;
+        while (i < s.length() && isNameChar(s.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isNameChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                || c == '-' || c == '_' || c >= 0x80;
+    }
+
+    private static boolean isClassSeparator(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f';
+    }
+
+    private static boolean hasClass(String classAttr, String name) {
+        int length = classAttr.length();
+        int from = 0;
+        while (true) {
+            int i = classAttr.indexOf(name, from);
+            if (i < 0) {
+                return false;
+            }
+            int end = i + name.length();
+            if ((i == 0 || isClassSeparator(classAttr.charAt(i - 1)))
+                    && (end == length || isClassSeparator(classAttr.charAt(end)))) {
+                return true;
+            }
+            from = i + 1;
+        }
+    }
+
+    private static Map<String, Rule[]> toIndex(Map<String, List<Rule>> lists) {
+        if (lists.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, Rule[]> index = new HashMap<>(lists.size() * 2);
+        for (Map.Entry<String, List<Rule>> entry : lists.entrySet()) {
+            index.put(entry.getKey(), entry.getValue().toArray(NO_RULES));
+        }
+        return index;
+    }
+
+    private static final class Concat {
+        private final Stylesheet next;
+        private final Stylesheet result;
+
+        Concat(Stylesheet next, Stylesheet result) {
+            this.next = next;
+            this.result = result;
+        }
+    }
+
+    /**
+     * Single rule with one compound selector
+     */
+    private static final class Rule {
+        private final String tag;
+        private final String[] classes;
+        private final String id;
+        private final CssDeclarationBlock block;
+        private final int specificity;
+        private final int order;
+
+        Rule(String tag, String[] classes, String id, CssDeclarationBlock block, int specificity, int order) {
+            this.tag = tag;
+            this.classes = classes;
+            this.id = id;
+            this.block = block;
+            this.specificity = specificity;
+            this.order = order;
+        }
+
+        boolean matches(String tag, String id, String classAttr) {
+            if ((this.tag != null && !this.tag.equals(tag)) || (this.id != null && !this.id.equals(id))) {
+                return false;
+            }
+            for (String name : classes) {
+                if (classAttr == null || !hasClass(classAttr, name)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
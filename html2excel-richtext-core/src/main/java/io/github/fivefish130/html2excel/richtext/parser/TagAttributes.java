@@ -0,0 +1,31 @@
+package io.github.fivefish130.html2excel.richtext.parser;
+
+/**
+ * Read-only view of the attributes of an element
+ * <p>
+ * Always provides the attributes the converter understands ({@code style}, {@code color},
+ * {@code bgcolor}, {@code face}, {@code size}, {@code href}, {@code src}, {@code class},
+ * {@code id}); other attributes may be unavailable.
+ *
+ * @author fivefish130
+ */
+public interface TagAttributes {
+
+    /**
+     * Get attribute value
+     *
+     * @param name Lower-case attribute name
+     * @return Decoded value (empty for attributes without value), or null if absent
+     */
+    String get(String name);
+
+    /**
+     * Check if attribute is present
+     *
+     * @param name Lower-case attribute name
+     * @return true if present
+     */
+    default boolean has(String name) {
+        return get(name) != null;
+    }
+}
@@ -0,0 +1,78 @@
+package io.github.fivefish130.html2excel.richtext;
+
+import io.github.fivefish130.html2excel.richtext.config.ConverterConfig;
+import io.github.fivefish130.html2excel.richtext.model.CompiledRichText;
+import io.github.fivefish130.html2excel.richtext.parser.InputTier;
+import org.apache.poi.xssf.usermodel.XSSFCell;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for HtmlCompiler
+ *
+ * @author fivefish130
+ */
+class HtmlCompilerTest {
+
+    private static final String HTML = "<p style='color:red'>Status: <b>Open</b></p>";
+
+    @Test
+    void testSharedAcrossWorkbooksAndThreads() throws Exception {
+        HtmlCompiler compiler = new HtmlCompiler(ConverterConfig.builder().enableHtmlCache(true).build());
+        CompiledRichText expected = compiler.compile(HTML);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> exports = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                exports.add(executor.submit(() -> export(compiler)));
+            }
+            for (Future<String> export : exports) {
+                assertEquals(expected.getText(), export.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        // The first compilation missed, every export was served from the shared cache
+        assertEquals(1, compiler.getHtmlCacheMissCount());
+        assertEquals(8 * 50, compiler.getHtmlCacheHitCount());
+    }
+
+    @Test
+    void testConverterUsesCompiler() throws IOException {
+        HtmlCompiler compiler = new HtmlCompiler();
+        try (XSSFWorkbook workbook = new XSSFWorkbook()) {
+            HtmlToExcelConverter converter = new HtmlToExcelConverter(workbook, compiler);
+            assertSame(compiler, converter.getCompiler());
+            assertSame(compiler.getConfig(), converter.getConfig());
+            assertEquals(compiler.compile(HTML), converter.compile(HTML));
+            // Statistics are those of the compiler
+            assertEquals(2, converter.getTierCount(InputTier.FULL_HTML));
+        }
+    }
+
+    private static String export(HtmlCompiler compiler) throws IOException {
+        try (XSSFWorkbook workbook = new XSSFWorkbook()) {
+            HtmlToExcelConverter converter = new HtmlToExcelConverter(workbook, compiler);
+            XSSFSheet sheet = workbook.createSheet();
+            XSSFCell cell = null;
+            for (int row = 0; row < 50; row++) {
+                cell = sheet.createRow(row).createCell(0);
+                converter.applyHtmlToCell(cell, HTML);
+            }
+            assertTrue(converter.getFontCacheSize() > 0);
+            return cell.getStringCellValue();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package io.github.fivefish130.html2excel.richtext;
+
+import io.github.fivefish130.html2excel.richtext.config.ConverterConfig;
+import io.github.fivefish130.html2excel.richtext.model.CompiledRichText;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for HtmlTemplate
+ *
+ * @author fivefish130
+ */
+class HtmlTemplateTest {
+
+    private XSSFWorkbook workbook;
+    private HtmlToExcelConverter converter;
+
+    @BeforeEach
+    void setUp() {
+        workbook = new XSSFWorkbook();
+        converter = new HtmlToExcelConverter(workbook);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        workbook.close();
+    }
+
+    @Test
+    void testValuesKeepWhiteSpaceOfTheirPosition() {
+        String value = "x   y\nz";
+        String[] markups = {"<pre>${v}</pre>", "<p style='white-space:pre-line'>a ${v}</p>", "<p>${v}</p>"};
+        for (String markup : markups) {
+            Map<String, String> values = new HashMap<>();
+            values.put("v", value);
+            String expected = converter.compile(markup.replace("${v}", value)).getText();
+            assertEquals(expected, converter.compileTemplate(markup).fill(values).getText(), markup);
+        }
+        Map<String, String> values = new HashMap<>();
+        values.put("v", value);
+        assertEquals("x   y\nz", converter.compileTemplate("<pre>${v}</pre>").fill(values).getText().trim());
+    }
+
+    @Test
+    void testFillMatchesConvertingSubstitutedHtml() {
+        HtmlTemplate template = converter.compileTemplate(
+                "<p style='background-color:#FFFF00'><b>${name}</b> - <a href='${url}'>${status}</a></p>");
+        assertEquals(2, template.getSlotCount());
+        assertEquals(1, template.getAttributePlaceholderCount());
+
+        String[][] rows = {
+                {"Widget", "https://example.com/1", "In stock"},
+                {"Gadget", "https://example.com/2", "Sold out"},
+                {"Gizmo", "https://example.com/1", "Back soon"}
+        };
+        for (String[] row : rows) {
+            Map<String, String> values = new HashMap<>();
+            values.put("name", row[0]);
+            values.put("url", row[1]);
+            values.put("status", row[2]);
+            CompiledRichText expected = converter.compile("<p style='background-color:#FFFF00'><b>" + row[0]
+                    + "</b> - <a href='" + row[1] + "'>" + row[2] + "</a></p>");
+            assertEquals(expected, template.fill(values));
+        }
+    }
+
+    @Test
+    void testValuesAreText() {
+        HtmlTemplate template = converter.compileTemplate("<b>${v}</b><span style=\"color:${c}\">!</span>");
+        Map<String, String> values = new HashMap<>();
+        values.put("v", "  <i>x</i> &amp;\n y ");
+        values.put("c", "red\"><u>injected</u>");
+        CompiledRichText compiled = template.fill(values);
+        assertEquals("<i>x</i> &amp; y !", compiled.getText());
+        assertTrue(compiled.getRunStyle(0).isBold());
+        assertEquals(2, compiled.getRunCount());
+
+        assertEquals("!", template.fill(new HashMap<String, Object>()).getText());
+        assertEquals("$ {x} ${y", converter.compileTemplate("$ {x} ${y").fill(values).getText());
+        assertThrows(IllegalArgumentException.class, () -> converter.compileTemplate("\uE000"));
+    }
+
+    @Test
+    void testFillIsTruncated() {
+        HtmlToExcelConverter limited = new HtmlToExcelConverter(workbook,
+                ConverterConfig.builder().maxCellLength(12).truncateSuffix("...").build());
+        HtmlTemplate template = limited.compileTemplate("<b>Name:</b> ${v}");
+        Map<String, String> values = new HashMap<>();
+        values.put("v", "a long value");
+        CompiledRichText compiled = template.fill(values);
+        assertTrue(compiled.isTruncated());
+        assertEquals("Name: a l...", compiled.getText());
+        assertTrue(compiled.getRunStyle(0).isBold());
+    }
+}
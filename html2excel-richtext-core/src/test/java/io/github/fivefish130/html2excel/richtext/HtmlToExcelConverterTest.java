@@ -1,6 +1,18 @@
 package io.github.fivefish130.html2excel.richtext;
 
+import io.github.fivefish130.html2excel.richtext.config.ConverterConfig;
+import io.github.fivefish130.html2excel.richtext.model.CellHtml;
+import io.github.fivefish130.html2excel.richtext.model.CompiledRichText;
+import io.github.fivefish130.html2excel.richtext.model.TableLayout;
+import io.github.fivefish130.html2excel.richtext.parser.InputTier;
+import org.apache.poi.ss.usermodel.BorderStyle;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.apache.poi.xssf.usermodel.XSSFCell;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.apache.poi.xssf.usermodel.XSSFFont;
 import org.apache.poi.xssf.usermodel.XSSFRichTextString;
 import org.apache.poi.xssf.usermodel.XSSFRow;
 import org.apache.poi.xssf.usermodel.XSSFSheet;
@@ -8,8 +20,14 @@ import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -65,6 +83,29 @@ class HtmlToExcelConverterTest {
         assertTrue(text.contains("Blue"));
     }
 
+    @Test
+    void testNestedStylesCombine() {
+        XSSFRichTextString richText = converter.convertToRichText("<i>a<b>bold italic</b></i>");
+
+        assertEquals("abold italic", richText.getString());
+        assertEquals(2, richText.numFormattingRuns());
+        assertTrue(richText.getFontAtIndex(0).getItalic());
+        assertFalse(richText.getFontAtIndex(0).getBold());
+        assertTrue(richText.getFontAtIndex(1).getItalic());
+        assertTrue(richText.getFontAtIndex(1).getBold());
+    }
+
+    @Test
+    void testAdjacentRunsCoalesced() {
+        String html = "<b>one</b><b>two</b><span style='color:red'>x</span><span style='color:red'>y</span>";
+        XSSFRichTextString richText = converter.convertToRichText(html);
+
+        assertEquals("onetwoxy", richText.getString());
+        assertEquals(2, richText.numFormattingRuns());
+        assertEquals(6, richText.getLengthOfFormattingRun(0));
+        assertEquals(2, richText.getLengthOfFormattingRun(1));
+    }
+
     @Test
     void testHyperlink() {
         XSSFSheet sheet = workbook.createSheet("Test");
@@ -120,7 +161,7 @@ class HtmlToExcelConverterTest {
 
     @Test
     void testNullHtml() {
-        XSSFRichTextString richText = converter.convertToRichText(null);
+        XSSFRichTextString richText = converter.convertToRichText((String) null);
         assertNotNull(richText);
         assertEquals("", richText.getString());
     }
@@ -180,6 +221,74 @@ class HtmlToExcelConverterTest {
         assertTrue(converter.getFontCacheSize() >= 0);
     }
 
+    @Test
+    void testEquivalentCssSharesFontsAndStyles() {
+        XSSFSheet sheet = workbook.createSheet("Canonical");
+        String[] htmls = {
+                "<p style='background-color:red'><span style='color:red;font-weight:bold;font-size:12pt'>x</span></p>",
+                "<p style='background-color:#F00'><span style='color:#F00;font-weight:700;font-size:16px'>x</span></p>",
+                "<p bgcolor='#ff0000'><span style='color:#ff0000;font-weight:bolder;font-size:16PX'>x</span></p>",
+                "<p style='background-color:rgb(255, 0, 0)'><b style='color:rgb(255,0,0);font-size:12.0pt'>x</b></p>"
+        };
+        for (int i = 0; i < htmls.length; i++) {
+            converter.applyHtmlToCell(sheet.createRow(i).createCell(0), htmls[i]);
+        }
+
+        assertEquals(1, converter.getFontCacheSize());
+        short styleIndex = sheet.getRow(0).getCell(0).getCellStyle().getIndex();
+        for (int i = 0; i < htmls.length; i++) {
+            XSSFCell cell = sheet.getRow(i).getCell(0);
+            assertEquals(styleIndex, cell.getCellStyle().getIndex(), htmls[i]);
+            // Single runs are written with a cell font
+            XSSFFont font = cell.getCellStyle().getFont();
+            assertTrue(font.getBold(), htmls[i]);
+            assertEquals(12, font.getFontHeightInPoints(), htmls[i]);
+        }
+        assertArrayEquals(new byte[]{(byte) 0xFF, 0, 0},
+                sheet.getRow(1).getCell(0).getCellStyle().getFont().getXSSFColor().getRGB());
+
+        // Underline and italic spellings
+        CompiledRichText compiled = converter.compile(
+                "<span style='text-decoration:underline dotted;font-style:oblique 10deg'>x</span>");
+        assertTrue(compiled.getRunStyle(0).isUnderline());
+        assertTrue(compiled.getRunStyle(0).isItalic());
+        assertFalse(converter.compile("<span style='font-weight:400'>x</span>").isFormatted());
+    }
+
+    @Test
+    void testHtmlCacheKeepsHotFragments() {
+        ConverterConfig config = ConverterConfig.builder()
+                .enableHtmlCache(true)
+                .htmlCacheSize(2, 10_000)
+                .build();
+        HtmlToExcelConverter cached = new HtmlToExcelConverter(workbook, config);
+        String badge = "<span style='color:red'><b>Overdue</b></span>";
+        String disclaimer = "<p><i>All prices exclude VAT.</i></p>";
+
+        for (int i = 0; i < 3; i++) {
+            cached.compile(badge);
+            cached.compile(disclaimer);
+        }
+        assertEquals(2, cached.getHtmlCacheSize());
+        assertEquals(4, cached.getHtmlCacheHitCount());
+
+        // One-off fragments must not displace the hot ones
+        for (int i = 0; i < 50; i++) {
+            cached.compile("<p>Row " + i + "</p>");
+        }
+        assertSame(cached.compile(badge), cached.compile(badge));
+        assertEquals(0, cached.getHtmlCacheEvictionCount());
+
+        // A fragment that becomes hotter is admitted and evicts the LRU entry
+        String hot = "<u>New status</u>";
+        for (int i = 0; i < 6; i++) {
+            cached.compile(hot);
+        }
+        assertEquals(1, cached.getHtmlCacheEvictionCount());
+        assertEquals(2 + 50 + 4, cached.getHtmlCacheMissCount());
+        assertSame(cached.compile(hot), cached.compile(hot));
+    }
+
     @Test
     void testWriteToFile() throws IOException {
         XSSFSheet sheet = workbook.createSheet("Demo");
@@ -202,4 +311,416 @@ class HtmlToExcelConverterTest {
         assertTrue(new java.io.File(outputPath).exists());
         System.out.println("Test Excel file created: " + outputPath);
     }
+
+    @Test
+    void testStreamingWorkbook() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (SXSSFWorkbook streaming = new SXSSFWorkbook(null, 10, true, true)) {
+            HtmlToExcelConverter streamingConverter = new HtmlToExcelConverter(streaming);
+            SXSSFSheet sheet = streaming.createSheet("Stream");
+
+            String html = "<p style='background-color:#FFFF00'><b>Bold</b> plain " +
+                    "<a href='https://github.com'>link</a></p>";
+            for (int i = 0; i < 100; i++) {
+                Cell cell = sheet.createRow(i).createCell(0);
+                streamingConverter.applyHtmlToCell(cell, html);
+            }
+
+            // Fonts and styles are shared across rows, not created per cell
+            assertTrue(streamingConverter.getFontCacheSize() <= 2);
+            assertEquals(1, streamingConverter.getStyleCacheSize());
+
+            streaming.write(out);
+        }
+
+        try (XSSFWorkbook written = new XSSFWorkbook(new ByteArrayInputStream(out.toByteArray()))) {
+            XSSFCell cell = written.getSheet("Stream").getRow(99).getCell(0);
+            XSSFRichTextString value = cell.getRichStringCellValue();
+            assertTrue(value.getString().startsWith("Bold plain link"));
+            assertTrue(value.numFormattingRuns() > 1);
+            assertTrue(value.getFontAtIndex(0).getBold());
+            assertNotNull(cell.getHyperlink());
+            assertEquals("https://github.com", cell.getHyperlink().getAddress());
+            assertNotNull(cell.getCellStyle().getFillForegroundColorColor());
+        }
+    }
+
+    @Test
+    void testBatchMatchesSingleCell() {
+        XSSFSheet sheet = workbook.createSheet("Batch");
+        List<String> htmls = Arrays.asList(
+                "<b>Bold</b> and <span style='color:red'>red</span>",
+                "<div style='background-color:#00FF00'><a href='https://github.com'>link</a></div>",
+                null,
+                "<ul><li>one</li><li>two</li></ul>");
+
+        assertEquals(4, converter.applyHtmlToColumn(sheet, 1, 2, htmls));
+
+        XSSFSheet expectedSheet = workbook.createSheet("Single");
+        List<CellHtml> items = new ArrayList<>();
+        for (int i = 0; i < htmls.size(); i++) {
+            XSSFCell cell = sheet.getRow(2 + i).getCell(1);
+            XSSFCell expected = expectedSheet.createRow(i).createCell(0);
+            converter.applyHtmlToCell(expected, htmls.get(i));
+
+            assertEquals(expected.getStringCellValue(), cell.getStringCellValue());
+            assertEquals(expected.getRichStringCellValue().numFormattingRuns(),
+                    cell.getRichStringCellValue().numFormattingRuns());
+            assertEquals(expected.getCellStyle().getIndex(), cell.getCellStyle().getIndex());
+            assertEquals(expected.getHyperlink() == null, cell.getHyperlink() == null);
+            items.add(CellHtml.of(expectedSheet.getRow(i).createCell(1), htmls.get(i)));
+        }
+
+        // Same results through the generic batch entry point
+        converter.applyHtmlToCells(items);
+        for (int i = 0; i < items.size(); i++) {
+            assertEquals(expectedSheet.getRow(i).getCell(0).getStringCellValue(),
+                    items.get(i).getCell().getStringCellValue());
+        }
+        assertEquals("https://github.com", items.get(1).getCell().getHyperlink().getAddress());
+    }
+
+    @Test
+    void testTierStats() {
+        XSSFSheet sheet = workbook.createSheet("Tiers");
+        converter.applyHtmlToColumn(sheet, 0, 0, Arrays.asList(
+                "plain", "A &amp; B<br>C", "<b>Bold</b> <i>italic</i>", "<p style='color:red'>red</p>"));
+
+        assertEquals(1, converter.getTierCount(InputTier.PLAIN_TEXT));
+        assertEquals(1, converter.getTierCount(InputTier.ENTITIES_AND_BREAKS));
+        assertEquals(1, converter.getTierCount(InputTier.SIMPLE_INLINE));
+        assertEquals(1, converter.getTierCount(InputTier.FULL_HTML));
+        assertEquals(0, converter.getJsoupFallbackCount());
+
+        // Misnested markup is left to Jsoup
+        XSSFCell misnested = sheet.createRow(4).createCell(0);
+        converter.applyHtmlToCell(misnested, "<p>a<div style='color:red'>b</div>");
+        assertEquals(1, converter.getJsoupFallbackCount());
+        assertEquals("a\nb\n", misnested.getStringCellValue());
+
+        assertEquals("A & B\nC", sheet.getRow(1).getCell(0).getStringCellValue());
+        XSSFRichTextString simple = sheet.getRow(2).getCell(0).getRichStringCellValue();
+        assertEquals("Bold italic", simple.getString());
+        assertTrue(simple.getFontAtIndex(0).getBold());
+        assertTrue(simple.getFontAtIndex(5).getItalic());
+    }
+
+    @Test
+    void testTruncationKeepsFormatting() {
+        HtmlToExcelConverter limited = new HtmlToExcelConverter(workbook,
+                ConverterConfig.builder().maxCellLength(12).truncateSuffix("...").build());
+
+        // Pre-scan tier, native tokenizer and Jsoup fallback all stop at the limit
+        String[] htmls = {
+                "<b>Bold</b> text that is long",
+                "<p><b>Bold</b> text that is long</p>",
+                "<p><b>Bold</b> text<div>that is long</div>"
+        };
+        for (String html : htmls) {
+            CompiledRichText compiled = limited.compile(html);
+            assertTrue(compiled.isTruncated(), html);
+            assertEquals("Bold text...", compiled.getText(), html);
+            assertTrue(compiled.getRunStyle(0).isBold(), html);
+            assertEquals(4, compiled.getRunEnd(0), html);
+        }
+        assertEquals(1, limited.getJsoupFallbackCount());
+
+        StringBuilder plain = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            plain.append(i % 10 == 0 ? '\n' : 'x');
+        }
+        assertEquals("xxxxxxxxx...", limited.compile(plain.toString()).getText());
+        assertFalse(limited.compile("short text").isTruncated());
+
+        // Background of the enclosing block still applies
+        CompiledRichText background = limited.compile(
+                "<div style='background-color:#00FF00'><b>Bold</b> text that is long</div>");
+        assertTrue(background.isTruncated());
+        assertEquals(0x00FF00, background.getBackgroundColor());
+
+        // Precompiled text longer than the limit is truncated when applied
+        XSSFCell cell = workbook.createSheet("Truncated").createRow(0).createCell(0);
+        limited.applyCompiledToCell(cell, converter.compile("<i>Italic</i> text that is long"));
+        XSSFRichTextString value = cell.getRichStringCellValue();
+        assertEquals("Italic te...", value.getString());
+        assertTrue(value.getFontAtIndex(0).getItalic());
+        assertFalse(value.getFontAtIndex(7).getItalic());
+        assertEquals(1, limited.getTruncatedCount());
+        assertEquals(0, converter.getTruncatedCount());
+    }
+
+    @Test
+    void testReaderMatchesString() throws IOException {
+        String html = "<div style='background-color:#00FF00'><b>Bold</b> and <a href='https://github.com'>link</a>"
+                + "<ul><li>one</li><li>two</li></ul></div>";
+        XSSFSheet sheet = workbook.createSheet("Reader");
+        XSSFCell expected = sheet.createRow(0).createCell(0);
+        XSSFCell cell = sheet.createRow(1).createCell(0);
+        converter.applyHtmlToCell(expected, html);
+        converter.applyHtmlToCell(cell, new StringReader(html));
+
+        assertEquals(expected.getStringCellValue(), cell.getStringCellValue());
+        assertEquals(expected.getRichStringCellValue().numFormattingRuns(),
+                cell.getRichStringCellValue().numFormattingRuns());
+        assertEquals(expected.getCellStyle().getIndex(), cell.getCellStyle().getIndex());
+        assertEquals("https://github.com", cell.getHyperlink().getAddress());
+        assertEquals(converter.convertToRichText(html).getString(),
+                converter.convertToRichText(new StringReader(html)).getString());
+    }
+
+    @Test
+    void testLimitsFallBackToPlainText() throws IOException {
+        StringBuilder deep = new StringBuilder("<p style='background-color:#00FF00'><b>Bold</b>");
+        for (int i = 0; i < 100000; i++) {
+            deep.append("<span>");
+        }
+        deep.append(" deep</p><p>next</p>");
+        String html = deep.toString();
+
+        CompiledRichText compiled = converter.compile(html);
+        assertEquals("Bold deep\nnext\n", compiled.getText());
+        assertEquals(1, compiled.getRunCount());
+        assertNull(compiled.getRunStyle(0));
+        assertEquals(CompiledRichText.NO_BACKGROUND, compiled.getBackgroundColor());
+        assertEquals(compiled, converter.compile(new StringReader(html)));
+        assertEquals(2, converter.getLimitFallbackCount());
+
+        HtmlToExcelConverter limited = new HtmlToExcelConverter(workbook,
+                ConverterConfig.builder().maxNodes(4).build());
+        assertEquals("a\nb\nc d\n", limited.compile("<p><b>a</b></p><div>b</div><p>c <i>d</i></p>").getText());
+        assertEquals(1, limited.getLimitFallbackCount());
+        assertTrue(limited.compile("<p><b>a</b></p>").getRunStyle(0).isBold());
+        assertEquals(1, limited.getLimitFallbackCount());
+    }
+
+    @Test
+    void testWhitespaceCollapsesLikeBrowsers() {
+        assertEquals("a b c", converter.compile("  a <b> b</b>\n <i> c </i> ").getText());
+        assertEquals("a  b", converter.compile("<b>a&nbsp;</b> b").getText());
+
+        CompiledRichText pre = converter.compile("<p>x</p><pre>  a  b\n  <b>c</b>\n</pre>y  z");
+        assertEquals("x\n  a  b\n  c\n\ny z", pre.getText());
+        assertEquals("l1 l2\nl3", converter.compile("<div style='white-space:pre-line'> l1  l2 \n l3</div>")
+                .getText().trim());
+    }
+
+    @Test
+    void testSingleRunIsWrittenWithCellFont() {
+        XSSFSheet sheet = workbook.createSheet("SingleRun");
+        String[] htmls = {"<b>Overdue</b>", "<strong>Overdue</strong>", "<b>Overdue</b>", "<b>Over</b>due"};
+        for (int i = 0; i < htmls.length; i++) {
+            converter.applyHtmlToCell(sheet.createRow(i).createCell(0), htmls[i]);
+        }
+
+        assertEquals(3, converter.getSingleRunCount());
+        XSSFCell first = sheet.getRow(0).getCell(0);
+        assertEquals(0, first.getRichStringCellValue().numFormattingRuns());
+        assertTrue(first.getCellStyle().getFont().getBold());
+        assertEquals(first.getCellStyle().getIndex(), sheet.getRow(1).getCell(0).getCellStyle().getIndex());
+        assertEquals(2, workbook.getSharedStringSource().getUniqueCount());
+        assertEquals(2, sheet.getRow(3).getCell(0).getRichStringCellValue().numFormattingRuns());
+
+        // Cells with their own style and disabled collapsing keep rich text
+        XSSFCell styled = sheet.createRow(4).createCell(0);
+        XSSFCellStyle own = workbook.createCellStyle();
+        styled.setCellStyle(own);
+        converter.applyHtmlToCell(styled, "<i>x</i>");
+        assertEquals(own.getIndex(), styled.getCellStyle().getIndex());
+        assertTrue(styled.getRichStringCellValue().getFontAtIndex(0).getItalic());
+
+        HtmlToExcelConverter rich = new HtmlToExcelConverter(workbook,
+                ConverterConfig.builder().collapseSingleRun(false).build());
+        XSSFCell cell = sheet.createRow(5).createCell(0);
+        rich.applyHtmlToCell(cell, "<p style='background-color:#00FF00'><b>Overdue</b></p>");
+        assertTrue(cell.getRichStringCellValue().getFontAtIndex(0).getBold());
+        assertEquals(0, rich.getSingleRunCount());
+    }
+
+    @Test
+    void testStyleBlocksAndSharedStylesheet() throws IOException {
+        String html = "<style>.late { color: red; font-weight: bold } b { font-style: italic }</style>"
+                + "<p class='late'>Overdue</p><b>x</b><span class='late' style='color:#0000FF'>y</span>";
+        CompiledRichText compiled = converter.compile(html);
+        assertEquals("Overdue\nxy", compiled.getText());
+        assertEquals(0xFF0000, compiled.getRunStyle(0).getColor());
+        assertTrue(compiled.getRunStyle(0).isBold());
+        assertTrue(compiled.getRunStyle(1).isItalic());
+        assertEquals(0x0000FF, compiled.getRunStyle(2).getColor());
+        assertEquals(compiled, converter.compile(new StringReader(html)));
+
+        HtmlToExcelConverter shared = new HtmlToExcelConverter(workbook,
+                ConverterConfig.builder().stylesheet("b { color: green } .num { font-family: Courier }").build());
+        CompiledRichText bold = shared.compile("<b>ok</b>");
+        assertEquals(0x008000, bold.getRunStyle(0).getColor());
+        assertEquals("Courier", shared.compile("<span class=num>1</span>").getRunStyle(0).getFontFamily());
+        assertEquals(0xFF0000, shared.compile(html).getRunStyle(0).getColor());
+        assertNull(converter.compile("<span class=num>1</span>").getRunStyle(0));
+    }
+
+    @Test
+    void testTablesExpandIntoCells() {
+        XSSFSheet sheet = workbook.createSheet("Test");
+        XSSFCell cell = sheet.createRow(0).createCell(1);
+        String html = "<p>Order <b>42</b></p><table><tr><th>Item</th><th colspan=2>Qty</th></tr>"
+                + "<tr><td rowspan=2 style='background-color:#FFFF00'><b>Widget</b></td><td>3</td><td>pcs</td></tr>"
+                + "<tr><td><table><tr><td>a</td><td>b</td></tr></table></td></tr></table>"
+                + "<table><tr><td><a href='https://example.com'>link</a></td></tr></table>";
+
+        CellRangeAddress range = converter.applyHtmlWithTables(cell, html, TableLayout.BELOW);
+        assertEquals("B1:D5", range.formatAsString());
+        assertEquals("Order 42\n", cell.getStringCellValue());
+        assertEquals("Item", sheet.getRow(1).getCell(1).getStringCellValue());
+        assertEquals("Qty", sheet.getRow(1).getCell(2).getStringCellValue());
+        XSSFCell widget = sheet.getRow(2).getCell(1);
+        assertEquals("Widget", widget.getStringCellValue());
+        assertTrue(widget.getCellStyle().getFont().getBold());
+        assertEquals("FFFFFF00", widget.getCellStyle().getFillForegroundColorColor().getARGBHex());
+        assertEquals("pcs", sheet.getRow(2).getCell(3).getStringCellValue());
+        // Column 1 is covered by the rowspan, nested tables are flattened
+        assertEquals("a | b\n\n", sheet.getRow(3).getCell(2).getStringCellValue());
+        assertEquals("link", sheet.getRow(4).getCell(1).getStringCellValue());
+        assertNotNull(sheet.getRow(4).getCell(1).getHyperlink());
+        assertEquals(2, sheet.getNumMergedRegions());
+        assertEquals("C2:D2", sheet.getMergedRegion(0).formatAsString());
+        assertEquals("B3:B4", sheet.getMergedRegion(1).formatAsString());
+
+        XSSFCell beside = sheet.createRow(10).createCell(0);
+        range = converter.applyHtmlWithTables(beside, "<table><tr><td>x</td><td>y</td></tr></table>", TableLayout.BESIDE);
+        assertEquals("A11:C11", range.formatAsString());
+        assertEquals("", beside.getStringCellValue());
+        assertEquals("y", sheet.getRow(10).getCell(2).getStringCellValue());
+
+        XSSFCell inline = sheet.createRow(12).createCell(0);
+        converter.applyHtmlWithTables(inline, html, TableLayout.INLINE);
+        assertEquals(converter.compile(html).getText(), inline.getStringCellValue());
+    }
+
+    @Test
+    void testTableSpansDontOverlap() {
+        XSSFSheet sheet = workbook.createSheet("Test");
+        XSSFCell cell = sheet.createRow(0).createCell(0);
+        converter.applyHtmlWithTables(cell, "<table><tr><td>a</td><td rowspan=2>b</td></tr>"
+                + "<tr><td colspan=2>c</td></tr></table>", TableLayout.BELOW);
+
+        // The colspan stops at the column covered by the rowspan
+        assertEquals("c", sheet.getRow(2).getCell(0).getStringCellValue());
+        assertEquals(1, sheet.getNumMergedRegions());
+        assertEquals("B2:B3", sheet.getMergedRegion(0).formatAsString());
+        assertDoesNotThrow(sheet::validateMergedRegions);
+    }
+
+    @Test
+    void testStyleBudgetQuantizes() {
+        // A new workbook has one font and one cell style
+        HtmlToExcelConverter budgeted = new HtmlToExcelConverter(workbook,
+                ConverterConfig.builder().styleBudget(4, 3).build());
+        budgeted.convertToRichText("<b style='color:#FF0000'>a</b>");
+        budgeted.convertToRichText("<b style='color:#0000FF'>b</b>");
+        budgeted.convertToRichText("<i>c</i>");
+        assertEquals(4, workbook.getNumberOfFonts());
+
+        // Quantized to an existing font, else the nearest one
+        XSSFFont quantized = fontOf(budgeted.convertToRichText("<b style='color:#EE1111'>d</b>"));
+        assertTrue(quantized.getBold());
+        assertEquals("FFFF0000", quantized.getXSSFColor().getARGBHex());
+        XSSFFont nearest = fontOf(budgeted.convertToRichText("<i style='font-size:13pt'>e</i>"));
+        assertTrue(nearest.getItalic());
+        assertNotEquals(13, nearest.getFontHeightInPoints());
+        assertEquals(4, workbook.getNumberOfFonts());
+        assertEquals(2, budgeted.getQuantizedFontCount());
+        // Unseen families are quantized too
+        XSSFFont family = fontOf(budgeted.convertToRichText("<b style='font-family:Fancy Sans'>f</b>"));
+        assertTrue(family.getBold());
+        assertEquals(4, workbook.getNumberOfFonts());
+        assertEquals(3, budgeted.getQuantizedFontCount());
+
+        XSSFSheet sheet = workbook.createSheet("Test");
+        XSSFCell yellow = sheet.createRow(0).createCell(0);
+        budgeted.applyHtmlToCell(yellow, "<p style='background-color:#FFFF00'>x</p>");
+        XSSFCell green = sheet.createRow(1).createCell(0);
+        budgeted.applyHtmlToCell(green, "<p style='background-color:#00FF00'>x</p>");
+        XSSFCell nearYellow = sheet.createRow(2).createCell(0);
+        budgeted.applyHtmlToCell(nearYellow, "<p style='background-color:#F0F010'>x</p>");
+        assertEquals(3, workbook.getNumCellStyles());
+        assertEquals(yellow.getCellStyle().getIndex(), nearYellow.getCellStyle().getIndex());
+        assertEquals(1, budgeted.getQuantizedStyleCount());
+
+        // A uniformly styled run beyond the budget falls back to rich text
+        XSSFCell bold = sheet.createRow(3).createCell(0);
+        budgeted.applyHtmlToCell(bold, "<b style='color:#FF0000'>y</b>");
+        assertEquals(0, bold.getCellStyle().getIndex());
+        assertEquals("FFFF0000", fontOf(bold.getRichStringCellValue()).getXSSFColor().getARGBHex());
+        assertEquals(4, workbook.getNumberOfFonts());
+    }
+
+    @Test
+    void testStyleBudgetQuantizesPerBaseStyle() {
+        XSSFSheet sheet = workbook.createSheet("Test");
+        XSSFCellStyle template = workbook.createCellStyle();
+        template.setBorderBottom(BorderStyle.THIN);
+        HtmlToExcelConverter budgeted = new HtmlToExcelConverter(workbook,
+                ConverterConfig.builder().styleBudget(60000, 4).build());
+
+        XSSFCell yellow = sheet.createRow(0).createCell(0);
+        budgeted.applyHtmlToCell(yellow, "<div style='background-color:#FFFF00'>A <b>B</b></div>");
+        XSSFCell green = sheet.createRow(1).createCell(0);
+        green.setCellStyle(template);
+        budgeted.applyHtmlToCell(green, "<div style='background-color:#00FF00'>A <b>B</b></div>");
+        assertEquals(4, workbook.getNumCellStyles());
+
+        // Only backgrounds composed onto the same base style are candidates
+        XSSFCell nearYellow = sheet.createRow(2).createCell(0);
+        nearYellow.setCellStyle(template);
+        budgeted.applyHtmlToCell(nearYellow, "<div style='background-color:#F0F010'>A <b>B</b></div>");
+        assertEquals(green.getCellStyle().getIndex(), nearYellow.getCellStyle().getIndex());
+        assertEquals(BorderStyle.THIN, nearYellow.getCellStyle().getBorderBottom());
+        assertEquals(1, budgeted.getQuantizedStyleCount());
+
+        // No wrapped style with a background exists: the cell keeps its style and isn't counted
+        XSSFCell wrapped = sheet.createRow(3).createCell(0);
+        budgeted.applyHtmlToCell(wrapped, "<div style='background-color:#0000FF'>A<br><b>B</b></div>");
+        assertEquals(0, wrapped.getCellStyle().getIndex());
+        assertEquals(1, budgeted.getQuantizedStyleCount());
+        assertEquals(4, workbook.getNumCellStyles());
+    }
+
+    private static XSSFFont fontOf(XSSFRichTextString rich) {
+        return rich.getFontAtIndex(0);
+    }
+
+    @Test
+    void testStylesComposeWithExistingStyle() {
+        XSSFSheet sheet = workbook.createSheet("Test");
+        XSSFCellStyle template = workbook.createCellStyle();
+        template.setBorderBottom(BorderStyle.THIN);
+        template.setDataFormat(workbook.createDataFormat().getFormat("@"));
+        int styles = workbook.getNumCellStyles();
+
+        List<XSSFCell> cells = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            XSSFCell cell = sheet.createRow(i).createCell(0);
+            cell.setCellStyle(template);
+            converter.applyHtmlToCell(cell, "<div style='background-color:#FFFF00'>A <b>B</b></div>");
+            cells.add(cell);
+        }
+
+        // One composed style for (template, yellow background), keeping the template's border and format
+        assertEquals(styles + 1, workbook.getNumCellStyles());
+        XSSFCellStyle composed = cells.get(0).getCellStyle();
+        assertEquals(composed.getIndex(), cells.get(2).getCellStyle().getIndex());
+        assertEquals(BorderStyle.THIN, composed.getBorderBottom());
+        assertEquals("@", composed.getDataFormatString());
+        assertEquals("FFFFFF00", composed.getFillForegroundColorColor().getARGBHex());
+        assertFalse(composed.getWrapText());
+
+        // Multi-line text wraps; a trailing line break alone doesn't
+        XSSFCell multiline = sheet.createRow(3).createCell(0);
+        multiline.setCellStyle(template);
+        converter.applyHtmlToCell(multiline, "Line 1<br>Line <i>2</i>");
+        assertTrue(multiline.getCellStyle().getWrapText());
+        assertEquals(BorderStyle.THIN, multiline.getCellStyle().getBorderBottom());
+        XSSFCell single = sheet.createRow(4).createCell(0);
+        converter.applyHtmlToCell(single, "<p>One <i>line</i></p>");
+        assertEquals(0, single.getCellStyle().getIndex());
+    }
 }
@@ -0,0 +1,65 @@
+package io.github.fivefish130.html2excel.richtext;
+
+import io.github.fivefish130.html2excel.richtext.config.ConverterConfig;
+import io.github.fivefish130.html2excel.richtext.parser.InputTier;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for PlainTextConverter
+ *
+ * @author fivefish130
+ */
+class PlainTextConverterTest {
+
+    @Test
+    void testMatchesCellText() throws IOException {
+        String[] inputs = {
+                "plain  text", "A &amp; B<br>C", "<b>Bold</b> <i>italic</i>",
+                "<ul><li>One</li><li><b>Two</b></li></ul><ol><li>First</li><li>Second</li></ol>",
+                "<table><tr><th>Name</th><th>Qty</th></tr><tr><td>Widget</td><td>3</td></tr></table>",
+                "<p style='color:red'>Para</p><div>Block <a href='x'>link</a></div><pre> a\n b</pre>",
+                "<b>x<i>y</b>z</i>", ""
+        };
+        PlainTextConverter plain = new PlainTextConverter();
+        try (XSSFWorkbook workbook = new XSSFWorkbook()) {
+            HtmlToExcelConverter converter = new HtmlToExcelConverter(workbook);
+            for (String html : inputs) {
+                String expected = converter.compile(html).getText();
+                assertEquals(expected, plain.toPlainText(html), html);
+
+                StringWriter out = new StringWriter();
+                plain.toPlainText(html, out);
+                assertEquals(expected, out.toString(), html);
+            }
+        }
+        assertEquals("", plain.toPlainText(null));
+        assertEquals("• One\n\n1. First\n\n", plain.toPlainText("<ul><li>One</li></ul><ol><li>First</li></ol>"));
+    }
+
+    @Test
+    void testTruncates() {
+        PlainTextConverter plain = new PlainTextConverter(
+                ConverterConfig.builder().maxCellLength(8).truncateSuffix("...").build());
+        assertEquals("12345...", plain.toPlainText("<b>1234567890</b>"));
+        assertEquals("short", plain.toPlainText("<i>short</i>"));
+    }
+
+    @Test
+    void testSharesCompiler() {
+        HtmlCompiler compiler = new HtmlCompiler();
+        PlainTextConverter plain = new PlainTextConverter(compiler);
+        assertSame(compiler, plain.getCompiler());
+
+        assertEquals("a | b\n\n", plain.toPlainText("<table><tr><td>a</td><td>b</td></tr></table>"));
+        assertEquals("x", plain.toPlainText("x"));
+        // Plain text conversions count in the compiler's statistics
+        assertEquals(1, compiler.getTierCount(InputTier.FULL_HTML));
+        assertEquals(1, compiler.getTierCount(InputTier.PLAIN_TEXT));
+    }
+}
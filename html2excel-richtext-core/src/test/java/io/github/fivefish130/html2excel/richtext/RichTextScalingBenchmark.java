@@ -0,0 +1,76 @@
+package io.github.fivefish130.html2excel.richtext;
+
+import io.github.fivefish130.html2excel.richtext.config.ConverterConfig;
+import org.apache.poi.xssf.usermodel.XSSFRichTextString;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Scaling benchmark for rich text conversion with many styled spans
+ * <p>
+ * Not part of the regular test run (surefire only picks up *Test classes). Run with:
+ * <pre>
+ * mvn test -pl html2excel-richtext-core -Dtest=RichTextScalingBenchmark
+ * </pre>
+ * Time per span should stay roughly flat as the number of spans doubles.
+ *
+ * @author fivefish130
+ */
+class RichTextScalingBenchmark {
+
+    private static final int[] SPAN_COUNTS = {1000, 2000, 4000, 8000, 16000};
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int MEASURE_ROUNDS = 5;
+
+    @Test
+    void spansScaleLinearly() throws IOException {
+        try (XSSFWorkbook workbook = new XSSFWorkbook()) {
+            // Measure conversion, not truncation: the larger inputs exceed Excel's cell limit
+            HtmlToExcelConverter converter = new HtmlToExcelConverter(workbook,
+                    ConverterConfig.builder().maxCellLength(Integer.MAX_VALUE).build());
+
+            double[] nanosPerSpan = new double[SPAN_COUNTS.length];
+            for (int i = 0; i < SPAN_COUNTS.length; i++) {
+                String html = buildHtml(SPAN_COUNTS[i]);
+                for (int w = 0; w < WARMUP_ROUNDS; w++) {
+                    converter.convertToRichText(html);
+                }
+
+                long best = Long.MAX_VALUE;
+                for (int r = 0; r < MEASURE_ROUNDS; r++) {
+                    long start = System.nanoTime();
+                    XSSFRichTextString rich = converter.convertToRichText(html);
+                    best = Math.min(best, System.nanoTime() - start);
+                    assertEquals(SPAN_COUNTS[i], rich.numFormattingRuns());
+                }
+
+                nanosPerSpan[i] = (double) best / SPAN_COUNTS[i];
+                System.out.printf("spans=%6d  total=%8.2f ms  per-span=%8.0f ns%n",
+                        SPAN_COUNTS[i], best / 1_000_000.0, nanosPerSpan[i]);
+            }
+
+            // 16x more spans: quadratic cost would make per-span time grow ~16x
+            double growth = nanosPerSpan[nanosPerSpan.length - 1] / nanosPerSpan[0];
+            System.out.printf("per-span growth over %dx spans: %.2fx%n",
+                    SPAN_COUNTS[SPAN_COUNTS.length - 1] / SPAN_COUNTS[0], growth);
+            assertTrue(growth < 4.0, "per-span cost should stay roughly constant, grew " + growth + "x");
+        }
+    }
+
+    private static String buildHtml(int spans) {
+        String[] colors = {"red", "#0000FF", "rgb(0,128,0)"};
+        StringBuilder html = new StringBuilder("<p>");
+        for (int i = 0; i < spans; i++) {
+            // Alternate styles so adjacent spans never coalesce
+            html.append("<span style='color:").append(colors[i % colors.length]).append("'>")
+                    .append("item").append(i).append(' ')
+                    .append("</span>");
+        }
+        return html.append("</p>").toString();
+    }
+}
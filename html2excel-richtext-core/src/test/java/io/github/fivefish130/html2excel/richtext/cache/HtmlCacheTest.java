@@ -0,0 +1,111 @@
+package io.github.fivefish130.html2excel.richtext.cache;
+
+import io.github.fivefish130.html2excel.richtext.model.CompiledRichText;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for HtmlCache
+ *
+ * @author fivefish130
+ */
+class HtmlCacheTest {
+
+    @Test
+    void testAdmissionChecksEveryVictim() {
+        HtmlCache cache = newCacheWithColdEntryFirst();
+
+        // Evicting the cold entry alone doesn't make room; the next victim is hotter
+        String candidate = key('x', 60);
+        access(cache, candidate, 2);
+        assertFalse(cache.put(candidate, CompiledRichText.EMPTY));
+        assertEquals(4, cache.size());
+        assertEquals(0, cache.evictionCount());
+        assertEquals(1, cache.rejectionCount());
+    }
+
+    @Test
+    void testAdmissionEvictsColderVictims() {
+        HtmlCache cache = newCacheWithColdEntryFirst();
+
+        String candidate = key('x', 60);
+        access(cache, candidate, 5);
+        assertTrue(cache.put(candidate, CompiledRichText.EMPTY));
+        assertEquals(3, cache.size());
+        assertEquals(2, cache.evictionCount());
+        assertNull(cache.get(key('a', 20)));
+        assertNull(cache.get(key('b', 20)));
+    }
+
+    @Test
+    void testConcurrentAccessStaysBounded() throws Exception {
+        HtmlCache cache = new HtmlCache(64, 2000);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> tasks = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                int seed = t;
+                tasks.add(executor.submit(() -> {
+                    Random random = new Random(seed);
+                    for (int i = 0; i < 20000; i++) {
+                        // Skewed keys: a few hot fragments among many cold ones
+                        int n = random.nextInt(10) < 7 ? random.nextInt(8) : random.nextInt(5000);
+                        String html = "<b>" + n + "</b>";
+                        if (cache.get(html) == null) {
+                            cache.put(html, CompiledRichText.EMPTY);
+                        }
+                    }
+                }));
+            }
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertTrue(cache.size() <= 64);
+        assertTrue(cache.weight() <= 2000);
+        assertEquals(4 * 20000, cache.hitCount() + cache.missCount());
+        assertNotNull(cache.get("<b>0</b>"));
+    }
+
+    /**
+     * Cache of weight 100 holding four entries of weight 20, the oldest
+     * seen once and never hit, the others three times
+     */
+    private static HtmlCache newCacheWithColdEntryFirst() {
+        HtmlCache cache = new HtmlCache(10, 100);
+        for (char c = 'a'; c <= 'd'; c++) {
+            String html = key(c, 20);
+            access(cache, html, 1);
+            assertTrue(cache.put(html, CompiledRichText.EMPTY));
+        }
+        for (char c = 'b'; c <= 'd'; c++) {
+            access(cache, key(c, 20), 2);
+        }
+        return cache;
+    }
+
+    private static void access(HtmlCache cache, String html, int times) {
+        for (int i = 0; i < times; i++) {
+            cache.get(html);
+        }
+    }
+
+    private static String key(char c, int length) {
+        StringBuilder key = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            key.append(c);
+        }
+        return key.toString();
+    }
+}
@@ -0,0 +1,68 @@
+package io.github.fivefish130.html2excel.richtext.cache;
+
+import io.github.fivefish130.html2excel.richtext.model.RunStyle;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for LongObjectMap and packed font keys
+ *
+ * @author fivefish130
+ */
+class LongObjectMapTest {
+
+    @Test
+    void testMatchesHashMap() {
+        LongObjectMap<String> map = new LongObjectMap<>(2);
+        Map<Long, String> expected = new HashMap<>();
+        Random random = new Random(3);
+        for (int i = 0; i < 20000; i++) {
+            // Small key range to exercise replacement, plus 0 and negative keys
+            long key = random.nextInt(5000) - 100;
+            String value = "v" + i;
+            map.put(key, value);
+            expected.put(key, value);
+        }
+        assertEquals(expected.size(), map.size());
+        for (long key = -200; key < 5200; key++) {
+            assertEquals(expected.get(key), map.get(key));
+        }
+
+        map.clear();
+        assertEquals(0, map.size());
+        assertNull(map.get(0));
+    }
+
+    @Test
+    void testFontKeysIdentifyFonts() {
+        String[] families = {null, "Arial", "Courier New", "arial"};
+        short[] sizes = {0, 8, 11, 72, -1};
+        int[] colors = {RunStyle.NO_COLOR, 0x000000, 0xFF0000, 0xFFFFFF};
+        Set<String> keys = new HashSet<>();
+        int count = 0;
+        for (String family : families) {
+            for (short size : sizes) {
+                for (int color : colors) {
+                    for (int flags = 0; flags < 8; flags++) {
+                        RunStyle style = new RunStyle(family, size, (flags & 1) != 0, (flags & 2) != 0,
+                                (flags & 4) != 0, color);
+                        RunStyle same = new RunStyle(family, size, (flags & 1) != 0, (flags & 2) != 0,
+                                (flags & 4) != 0, color);
+                        assertEquals(style.getFontKey(), same.getFontKey());
+                        assertEquals(style, same);
+                        keys.add(family + "|" + style.getFontKey());
+                        count++;
+                    }
+                }
+            }
+        }
+        assertEquals(count, keys.size());
+    }
+}
@@ -0,0 +1,91 @@
+package io.github.fivefish130.html2excel.richtext.model;
+
+import io.github.fivefish130.html2excel.richtext.HtmlToExcelConverter;
+import io.github.fivefish130.html2excel.richtext.config.ConverterConfig;
+import org.apache.poi.xssf.usermodel.XSSFCell;
+import org.apache.poi.xssf.usermodel.XSSFRichTextString;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for CompiledRichText
+ *
+ * @author fivefish130
+ */
+class CompiledRichTextTest {
+
+    private static final String HTML = "<div style='background-color:#FFFF00'>" +
+            "<p><b>Name:</b> <span style='color:#FF0000; font-size:16px; font-family:Arial'>Widget</span></p>" +
+            "<p><a href='https://example.com'>more</a> <img src='https://example.com/a.png'></p>" +
+            "</div>";
+
+    @Test
+    void testCompileCollectsSideChannels() throws IOException {
+        try (XSSFWorkbook workbook = new XSSFWorkbook()) {
+            CompiledRichText compiled = new HtmlToExcelConverter(workbook).compile(HTML);
+
+            assertEquals("Name: Widget\nmore\n\n", compiled.getText());
+            assertEquals("https://example.com", compiled.getFirstHref());
+            assertEquals(Arrays.asList("https://example.com/a.png"), compiled.getImageSources());
+            assertEquals(0xFFFF00, compiled.getBackgroundColor());
+
+            RunStyle widget = compiled.getRunStyle(2);
+            assertEquals("Arial", widget.getFontFamily());
+            assertEquals(12, widget.getFontSize());
+            assertEquals(0xFF0000, widget.getColor());
+        }
+    }
+
+    @Test
+    void testBinaryRoundTrip() throws IOException {
+        try (XSSFWorkbook workbook = new XSSFWorkbook()) {
+            CompiledRichText compiled = new HtmlToExcelConverter(workbook).compile(HTML);
+
+            byte[] bytes = compiled.toBytes();
+            CompiledRichText decoded = CompiledRichText.fromBytes(bytes);
+
+            assertEquals(compiled, decoded);
+            assertTrue(bytes.length < HTML.length() / 2, "binary form should be compact");
+        }
+        assertEquals(CompiledRichText.EMPTY, CompiledRichText.fromBytes(CompiledRichText.EMPTY.toBytes()));
+    }
+
+    @Test
+    void testMalformedBytesRejected() throws IOException {
+        byte[] bytes;
+        try (XSSFWorkbook workbook = new XSSFWorkbook()) {
+            bytes = new HtmlToExcelConverter(workbook).compile(HTML).toBytes();
+        }
+
+        assertThrows(IllegalArgumentException.class,
+                () -> CompiledRichText.fromBytes(Arrays.copyOf(bytes, bytes.length - 3)));
+        assertThrows(IllegalArgumentException.class, () -> CompiledRichText.fromBytes(new byte[]{99}));
+    }
+
+    @Test
+    void testBindToAnotherWorkbook() throws IOException {
+        CompiledRichText compiled;
+        try (XSSFWorkbook source = new XSSFWorkbook()) {
+            compiled = CompiledRichText.fromBytes(new HtmlToExcelConverter(source).compile(HTML).toBytes());
+        }
+
+        try (XSSFWorkbook target = new XSSFWorkbook()) {
+            // Binding must not fetch the image over the network
+            HtmlToExcelConverter converter = new HtmlToExcelConverter(target,
+                    ConverterConfig.builder().enableImageDownload(false).build());
+            XSSFCell cell = target.createSheet("Bound").createRow(0).createCell(0);
+            converter.applyCompiledToCell(cell, compiled);
+
+            XSSFRichTextString value = cell.getRichStringCellValue();
+            assertEquals(compiled.getText(), value.getString());
+            assertTrue(value.getFontAtIndex(0).getBold());
+            assertEquals("https://example.com", cell.getHyperlink().getAddress());
+            assertNotNull(cell.getCellStyle().getFillForegroundColorColor());
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package io.github.fivefish130.html2excel.richtext.parser;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for ColorParser
+ *
+ * @author fivefish130
+ */
+class ColorParserTest {
+
+    @Test
+    void testFormats() {
+        String[] red = {"red", " RED ", "#F00", "#f00f", "#ff0000", "#FF0000FF", "rgb(255,0,0)", "rgb( 255 , 0 , 0 )",
+                "RGB(255 0 0)", "rgba(255,0,0,1)", "rgb(100%, 0%, 0%)", "rgb(255 0 0 / 100%)", "rgb(300,-5,0)",
+                "hsl(0, 100%, 50%)", "hsl(360deg 100% 50%)", "hsla(1turn,100%,50%,1)"};
+        for (String color : red) {
+            assertEquals(0xFF0000, ColorParser.parseRgb(color), color);
+        }
+        assertEquals(0x008000, ColorParser.parseRgb("green"));
+        assertEquals(0x663399, ColorParser.parseRgb("RebeccaPurple"));
+        assertEquals(0xFAFAD2, ColorParser.parseRgb("lightgoldenrodyellow"));
+        assertEquals(0x00FF00, ColorParser.parseRgb("hsl(120, 100%, 50%)"));
+        assertEquals(0x808080, ColorParser.parseRgb("hsl(0, 0%, 50.2%)"));
+
+        // Translucent colors are blended over white
+        assertEquals(0xFF8080, ColorParser.parseRgb("rgba(255, 0, 0, 0.5)"));
+        assertEquals(0xFF7F7F, ColorParser.parseRgb("#ff000080"));
+
+        String[] invalid = {null, "", "transparent", "rgba(0,0,0,0)", "#00000000", "#12", "#ggg", "rgb(1,2)",
+                "rgb(a,b,c)", "rgbx(1,2,3)", "hsl(0,0%)", "notacolor", "rgb(1,2,3,4,5)"};
+        for (String color : invalid) {
+            assertEquals(ColorParser.NO_COLOR, ColorParser.parseRgb(color), color);
+        }
+    }
+
+    @Test
+    void testAllNamedColors() {
+        String[] names = {"aliceblue", "antiquewhite", "aqua", "aquamarine", "azure", "beige", "bisque", "black",
+                "blanchedalmond", "blue", "blueviolet", "brown", "burlywood", "cadetblue", "chartreuse", "chocolate",
+                "coral", "cornflowerblue", "cornsilk", "crimson", "cyan", "darkblue", "darkcyan", "darkgoldenrod",
+                "darkgray", "darkgreen", "darkgrey", "darkkhaki", "darkmagenta", "darkolivegreen", "darkorange",
+                "darkorchid", "darkred", "darksalmon", "darkseagreen", "darkslateblue", "darkslategray",
+                "darkslategrey", "darkturquoise", "darkviolet", "deeppink", "deepskyblue", "dimgray", "dimgrey",
+                "dodgerblue", "firebrick", "floralwhite", "forestgreen", "fuchsia", "gainsboro", "ghostwhite", "gold",
+                "goldenrod", "gray", "green", "greenyellow", "grey", "honeydew", "hotpink", "indianred", "indigo",
+                "ivory", "khaki", "lavender", "lavenderblush", "lawngreen", "lemonchiffon", "lightblue", "lightcoral",
+                "lightcyan", "lightgoldenrodyellow", "lightgray", "lightgreen", "lightgrey", "lightpink",
+                "lightsalmon", "lightseagreen", "lightskyblue", "lightslategray", "lightslategrey", "lightsteelblue",
+                "lightyellow", "lime", "limegreen", "linen", "magenta", "maroon", "mediumaquamarine", "mediumblue",
+                "mediumorchid", "mediumpurple", "mediumseagreen", "mediumslateblue", "mediumspringgreen",
+                "mediumturquoise", "mediumvioletred", "midnightblue", "mintcream", "mistyrose", "moccasin",
+                "navajowhite", "navy", "oldlace", "olive", "olivedrab", "orange", "orangered", "orchid",
+                "palegoldenrod", "palegreen", "paleturquoise", "palevioletred", "papayawhip", "peachpuff", "peru",
+                "pink", "plum", "powderblue", "purple", "rebeccapurple", "red", "rosybrown", "royalblue",
+                "saddlebrown", "salmon", "sandybrown", "seagreen", "seashell", "sienna", "silver", "skyblue",
+                "slateblue", "slategray", "slategrey", "snow", "springgreen", "steelblue", "tan", "teal", "thistle",
+                "tomato", "turquoise", "violet", "wheat", "white", "whitesmoke", "yellow", "yellowgreen"};
+        assertEquals(148, names.length);
+        for (String name : names) {
+            assertNotEquals(ColorParser.NO_COLOR, ColorParser.parseRgb(name), name);
+        }
+    }
+}
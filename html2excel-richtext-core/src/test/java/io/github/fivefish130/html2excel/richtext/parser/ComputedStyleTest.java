@@ -0,0 +1,63 @@
+package io.github.fivefish130.html2excel.richtext.parser;
+
+import io.github.fivefish130.html2excel.richtext.model.RunStyle;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for ComputedStyle
+ *
+ * @author fivefish130
+ */
+class ComputedStyleTest {
+
+    @Test
+    void testUnchangedStyleIsShared() {
+        ComputedStyle bold = ComputedStyle.INITIAL.withBold(true);
+        assertSame(bold, bold.withBold(true));
+        assertSame(bold, bold.with("font-weight", "BOLD"));
+        assertSame(bold, bold.with("text-align", "center"));
+        assertSame(bold.getRunStyle(), bold.getRunStyle());
+        assertNull(ComputedStyle.INITIAL.getRunStyle());
+        assertNull(bold.withBold(false).getRunStyle());
+    }
+
+    @Test
+    void testMatchesResolvedProperties() {
+        Map<String, String> css = new HashMap<>();
+        css.put("font-weight", "bold");
+        css.put("font-style", "italic");
+        css.put("text-decoration", "underline");
+        css.put("color", "rgb(255, 0, 0)");
+        css.put("font-family", "'Times New Roman', serif");
+        css.put("font-size", "16px");
+        css.put("background-color", "#00FF00");
+
+        ComputedStyle style = ComputedStyle.of(css);
+        assertEquals(RunStyle.resolve(css), style.getRunStyle());
+        assertEquals("Times New Roman", style.getRunStyle().getFontFamily());
+        assertEquals(0x00FF00, style.getBackground());
+
+        // Invalid values reset the property, as with the raw CSS map
+        ComputedStyle reset = style.with("color", "nonsense").with("font-family", "");
+        assertFalse(reset.getRunStyle().hasColor());
+        assertNull(reset.getRunStyle().getFontFamily());
+        assertEquals(0x00FF00, reset.with("font-weight", "normal").getBackground());
+    }
+
+    @Test
+    void testFamiliesAreNeverDropped() {
+        // Families are kept as names: no shared table fills up and drops later ones
+        for (int i = 0; i < 70000; i++) {
+            String family = "Family " + i;
+            assertEquals(family, ComputedStyle.INITIAL.with("font-family", family).getRunStyle().getFontFamily());
+        }
+        ComputedStyle arial = ComputedStyle.INITIAL.with("font-family", "\"Arial\", sans-serif");
+        assertEquals("Arial", arial.getRunStyle().getFontFamily());
+        assertSame(arial, arial.withFontFamily("Arial"));
+    }
+}
@@ -0,0 +1,85 @@
+package io.github.fivefish130.html2excel.richtext.parser;
+
+import io.github.fivefish130.html2excel.richtext.cache.ParseCache;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for CssParser
+ *
+ * @author fivefish130
+ */
+class CssParserTest {
+
+    private final CssParser parser = new CssParser();
+
+    @Test
+    void testParseDeclaration() {
+        Map<String, String> css = parser.parseDeclaration(
+                " Color : red ;font-family:'Times New Roman', serif;;font-size:14px; broken ; :x; y: ;bg:\"\" ");
+        assertEquals(3, css.size());
+        assertEquals("red", css.get("color"));
+        assertEquals("Times New Roman', serif", css.get("font-family"));
+        assertEquals("14px", css.get("font-size"));
+        assertTrue(parser.parseDeclaration(null).isEmpty());
+        assertTrue(parser.parseDeclaration("  ").isEmpty());
+
+        assertEquals("Times New Roman", parser.normalizeFontName(" \"Times New Roman\", serif"));
+        assertEquals("", parser.normalizeFontName(","));
+        assertEquals(Short.valueOf((short) 12), parser.parseFontSize("16px"));
+        assertEquals(Short.valueOf((short) 14), parser.parseFontSize("14.0pt"));
+        assertEquals(Short.valueOf((short) 8), parser.parseFontSize("2"));
+        assertNull(parser.parseFontSize("large"));
+        assertNull(parser.parseFontSize("1.2.3px"));
+    }
+
+    @Test
+    void testBlocksAreCachedAndMatchProperties() {
+        String css = "color:#00f; font-weight:700; text-align:center; background-color:yellow";
+        CssDeclarationBlock block = parser.parseBlock(css);
+        assertSame(block, new CssParser().parseBlock(new String(css.toCharArray())));
+        assertSame(CssDeclarationBlock.EMPTY, parser.parseBlock("text-align:center"));
+        assertFalse(block.declares(StyleProperty.FONT_SIZE));
+        assertTrue(block.declares(StyleProperty.BACKGROUND_COLOR));
+
+        // Applying the block equals applying the properties one by one
+        ComputedStyle parent = ComputedStyle.INITIAL.withItalic(true).withFontSize((short) 20).withColor(0xFF0000);
+        ComputedStyle expected = parent;
+        for (Map.Entry<String, String> declaration : parser.parseDeclaration(css).entrySet()) {
+            expected = expected.with(declaration.getKey(), declaration.getValue());
+        }
+        ComputedStyle actual = parent.with(block);
+        assertEquals(expected.getRunStyle(), actual.getRunStyle());
+        assertEquals(expected.getBackground(), actual.getBackground());
+        assertSame(parent, parent.with(parser.parseBlock("font-style:italic; font-size:20pt")));
+        assertFalse(parent.with(parser.parseBlock("font-style:normal")).getRunStyle().isItalic());
+    }
+
+    @Test
+    void testParseCacheIsBounded() {
+        ParseCache<String> cache = new ParseCache<>(10, 8);
+        AtomicInteger parsed = new AtomicInteger();
+        for (int i = 0; i < 1000; i++) {
+            cache.get("k" + i % 50, key -> {
+                parsed.incrementAndGet();
+                return key.toUpperCase();
+            });
+            assertTrue(cache.size() <= 20);
+        }
+        assertEquals("HOT", cache.get("hot", String::toUpperCase));
+        parsed.set(0);
+        for (int i = 0; i < 100; i++) {
+            cache.get("hot", key -> {
+                parsed.incrementAndGet();
+                return key;
+            });
+        }
+        assertEquals(0, parsed.get());
+        assertEquals("LONG KEY!", cache.get("long key!", String::toUpperCase));
+        assertEquals(0, parsed.get());
+    }
+}
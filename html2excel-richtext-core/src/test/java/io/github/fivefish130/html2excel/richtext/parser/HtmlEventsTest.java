@@ -0,0 +1,146 @@
+package io.github.fivefish130.html2excel.richtext.parser;
+
+import io.github.fivefish130.html2excel.richtext.builder.FontBuilder;
+import io.github.fivefish130.html2excel.richtext.builder.RichTextBuilder;
+import io.github.fivefish130.html2excel.richtext.cache.FontCache;
+import io.github.fivefish130.html2excel.richtext.cache.StyleCache;
+import io.github.fivefish130.html2excel.richtext.handler.BackgroundHandler;
+import io.github.fivefish130.html2excel.richtext.model.CompiledRichText;
+import org.apache.poi.xssf.usermodel.XSSFCell;
+import org.apache.poi.xssf.usermodel.XSSFRichTextString;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.jsoup.Jsoup;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for HtmlEvents
+ *
+ * @author fivefish130
+ */
+class HtmlEventsTest {
+
+    @Test
+    void testStreamMatchesDom() throws IOException {
+        String[] inputs = {
+                "", "plain text", "<p style='color:red;background-color:#FFFF00'>Hello <b>World</b></p><p>Second</p>",
+                "<div><ul><li>one</li><li><i>two</i></li></ul><ol><li>a</li><li>b</li></ol></div>",
+                "<table border=1>\n<tr><th>H1</th><th>H2</th></tr>\n<tr><td><b>x</b></td><td>y</td></tr></table>",
+                "<a href=\"https://example.com\">first</a> <a href='second'>second</a> <img src=a.png>",
+                "<p>unclosed <b>bold", "<div>a<!-- comment -->b</div>", "<p>a<p>b", "text <b>bold</b> tail",
+                "<b><p>bold para</p></b>", "<div style='background-color:#00FF00'><span>x</span> y</div>"
+        };
+        for (String html : inputs) {
+            assertStreamMatchesDom(html);
+        }
+
+        // Random trees Jsoup doesn't restructure
+        Random random = new Random(11);
+        int compared = 0;
+        for (int n = 0; n < 1000; n++) {
+            StringBuilder html = new StringBuilder();
+            HtmlTokenizerTest.appendRandomContent(html, random, 0, false);
+            if (HtmlTokenizer.isSupported(html.toString())) {
+                assertStreamMatchesDom(html.toString());
+                compared++;
+            }
+        }
+        assertTrue(compared > 500, "Only " + compared + " random trees were compared");
+    }
+
+    @Test
+    void testStreamKeepsAllTextOfMalformedInput() throws IOException {
+        // Repaired markup may be placed differently, but no text may get lost
+        String[] pieces = {"<b>", "</b>", "<i>", "</i>", "<p>", "</p>", "<div>", "</div>", "<ul>", "<li>",
+                "</li>", "<table>", "</table>", "<tr>", "<td>", "</td>", "<a href=x>", "</a>", "<br>", "x", "y",
+                "<tbody>", "</tr>", "<h1>", "</h1>", "<select>", "<option>", "<button>", "<col>", "<svg>",
+                "<math>", "<template>", "</template>", "<!-- c -->"};
+        Random random = new Random(13);
+        for (int n = 0; n < 5000; n++) {
+            StringBuilder html = new StringBuilder();
+            int count = 1 + random.nextInt(20);
+            for (int i = 0; i < count; i++) {
+                html.append(pieces[random.nextInt(pieces.length)]);
+            }
+
+            RichTextBuilder streamed = new RichTextBuilder();
+            HtmlEvents.parse(new StringReader(html.toString()), new RichTextHandler(streamed));
+            RichTextBuilder dom = new RichTextBuilder();
+            new HtmlTraverser().traverse(Jsoup.parseBodyFragment(html.toString()).body(), new HashMap<>(), dom);
+
+            char[] expected = dom.getText().toCharArray();
+            char[] actual = streamed.getText().toCharArray();
+            Arrays.sort(expected);
+            Arrays.sort(actual);
+            assertArrayEquals(expected, actual, "Stream lost text for: " + html);
+        }
+    }
+
+    @Test
+    void testStreamStopsAtLimit() throws IOException {
+        // Endless input: parsing must stop once the text limit is reached
+        Reader endless = new Reader() {
+            private final String chunk = "<p>para <b>bold</b> <i>italic</i></p>";
+            private int pos;
+
+            @Override
+            public int read(char[] buf, int off, int len) {
+                for (int i = 0; i < len; i++) {
+                    buf[off + i] = chunk.charAt(pos++ % chunk.length());
+                }
+                return len;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        RichTextBuilder rich = new RichTextBuilder();
+        rich.setMaxLength(1000, "...");
+        HtmlEvents.parse(endless, new RichTextHandler(rich));
+
+        CompiledRichText compiled = rich.build();
+        assertTrue(compiled.isTruncated());
+        assertEquals(1000, compiled.length());
+        assertTrue(compiled.getText().startsWith("para bold italic\npara bold"));
+        assertTrue(compiled.getRunStyle(1).isBold());
+    }
+
+    private void assertStreamMatchesDom(String html) throws IOException {
+        RichTextBuilder streamed = new RichTextBuilder();
+        HtmlEvents.parse(new StringReader(html), new RichTextHandler(streamed));
+
+        RichTextBuilder dom = new RichTextBuilder();
+        new HtmlTraverser().traverse(Jsoup.parseBodyFragment(html).body(), new HashMap<>(), dom);
+
+        CompiledRichText expected = dom.build();
+        CompiledRichText actual = streamed.build();
+        assertEquals(expected, actual, "Stream differs for: " + html);
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    void testDeprecatedTraverseAppendsToPoiString() throws IOException {
+        try (XSSFWorkbook workbook = new XSSFWorkbook()) {
+            HtmlTraverser traverser = new HtmlTraverser(
+                    new FontBuilder(workbook, new FontCache(workbook, true)),
+                    new BackgroundHandler(workbook, new StyleCache(workbook, true)));
+            XSSFCell cell = workbook.createSheet().createRow(0).createCell(0);
+            XSSFRichTextString rich = new XSSFRichTextString("Note: ");
+            traverser.traverse(Jsoup.parseBodyFragment("<p style='background-color:#FFFF00'>a <b>b</b></p>").body(),
+                    new HashMap<>(), rich, cell);
+
+            assertEquals("Note: a b\n", rich.getString());
+            assertTrue(rich.getFontAtIndex(8).getBold());
+            assertEquals("FFFFFF00", cell.getCellStyle().getFillForegroundColorColor().getARGBHex());
+        }
+    }
+}
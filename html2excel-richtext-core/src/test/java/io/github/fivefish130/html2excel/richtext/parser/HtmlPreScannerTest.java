@@ -0,0 +1,96 @@
+package io.github.fivefish130.html2excel.richtext.parser;
+
+import io.github.fivefish130.html2excel.richtext.builder.RichTextBuilder;
+import io.github.fivefish130.html2excel.richtext.model.CompiledRichText;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Element;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for HtmlPreScanner
+ *
+ * @author fivefish130
+ */
+class HtmlPreScannerTest {
+
+    @Test
+    void testClassify() {
+        assertEquals(InputTier.PLAIN_TEXT, HtmlPreScanner.classify("Just text, 100% > 99"));
+        assertEquals(InputTier.ENTITIES_AND_BREAKS, HtmlPreScanner.classify("A &amp; B<br>C<BR />D"));
+        assertEquals(InputTier.SIMPLE_INLINE, HtmlPreScanner.classify("<b>Bold <i>both</i></b> &lt;3"));
+        assertEquals(InputTier.SIMPLE_INLINE, HtmlPreScanner.classify("<strong>unclosed"));
+
+        assertEquals(InputTier.FULL_HTML, HtmlPreScanner.classify("<b>x<i>y</b>z</i>"));
+        assertEquals(InputTier.FULL_HTML, HtmlPreScanner.classify("x</b>"));
+        assertEquals(InputTier.FULL_HTML, HtmlPreScanner.classify("<b class='a'>x</b>"));
+        assertEquals(InputTier.FULL_HTML, HtmlPreScanner.classify("<p>x</p>"));
+        assertEquals(InputTier.FULL_HTML, HtmlPreScanner.classify("a < b"));
+        assertEquals(InputTier.FULL_HTML, HtmlPreScanner.classify("<!-- c -->"));
+        assertEquals(InputTier.FULL_HTML, HtmlPreScanner.classify("a</br>b"));
+    }
+
+    @Test
+    void testFastPathMatchesDom() {
+        String[] inputs = {
+                "plain", "  leading and trailing  ", "tab\there\r\nline sep", "nbsp here",
+                "&amp; &lt;b&gt; &nbsp;&copy; &notit; &amp &#65 &#x20AC; &#0; &#13;x",
+                "a<br>b<br/>c<br \t/>d", "<br>", "<b></b>", "<b><b>x</b>y</b>z",
+                "<B>bold</B><I>it</I><U>u</U><EM>em</EM><Strong>s</Strong>",
+                "<u><i><b>all</b> iu</i> u</u> none", "<b>a\n\tb</b><br><i>&gt;</i>",
+                "<b >x</b >", "<b>never closed"
+        };
+        for (String html : inputs) {
+            assertFastPathMatches(html);
+        }
+
+        // Random soup of simple-tier fragments
+        String[] pieces = {"<b>", "</b>", "<i>", "</i>", "<u>", "</u>", "<em>", "</em>", "<strong>",
+                "</strong>", "<br>", "<br/>", "x", "y z", " ", "\t", "\r\n", " ", "&amp;", "&lt;",
+                "&nbsp;", "&copy", "&#0;"};
+        Random random = new Random(42);
+        for (int n = 0; n < 2000; n++) {
+            StringBuilder html = new StringBuilder();
+            int count = 1 + random.nextInt(12);
+            for (int i = 0; i < count; i++) {
+                html.append(pieces[random.nextInt(pieces.length)]);
+            }
+            assertFastPathMatches(html.toString());
+        }
+    }
+
+    @Test
+    void testWhitespaceCollapsesAcrossChunks() {
+        StringBuilder html = new StringBuilder("  a");
+        for (int i = 0; i < 20000; i++) {
+            html.append(i % 3 == 0 ? "\t\r\n" : "  ");
+        }
+        html.append("b\u00A0\u00A0c  ");
+        RichTextBuilder rich = new RichTextBuilder();
+        assertTrue(HtmlPreScanner.emit(html.toString(), InputTier.PLAIN_TEXT, rich));
+        assertEquals("a b  c", rich.build().getText());
+    }
+
+    private void assertFastPathMatches(String html) {
+        InputTier tier = HtmlPreScanner.classify(html);
+        if (tier == InputTier.FULL_HTML) {
+            return;
+        }
+
+        RichTextBuilder fast = new RichTextBuilder();
+        if (!HtmlPreScanner.emit(html, tier, fast)) {
+            return;
+        }
+
+        Element body = Jsoup.parseBodyFragment(html).body();
+        RichTextBuilder dom = new RichTextBuilder();
+        new HtmlTraverser().traverse(body, new HashMap<>(), dom);
+
+        CompiledRichText expected = dom.build();
+        assertEquals(expected, fast.build(), "Fast path differs for: " + html);
+    }
+}
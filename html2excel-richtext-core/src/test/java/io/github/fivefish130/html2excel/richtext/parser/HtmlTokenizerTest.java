@@ -0,0 +1,212 @@
+package io.github.fivefish130.html2excel.richtext.parser;
+
+import io.github.fivefish130.html2excel.richtext.builder.RichTextBuilder;
+import io.github.fivefish130.html2excel.richtext.model.CompiledRichText;
+import org.jsoup.Jsoup;
+import org.jsoup.parser.Parser;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for HtmlTokenizer
+ *
+ * @author fivefish130
+ */
+class HtmlTokenizerTest {
+
+    @Test
+    void testEvents() {
+        List<String> events = new ArrayList<>();
+        boolean tokenized = HtmlTokenizer.tokenize(
+                "<P Style=\"color:red\" class=x>a &amp; b<br/><A HREF='u?a=1&amp;b=2'>link</A><!-- c --><img src=i.png>",
+                new HtmlEventHandler() {
+                    @Override
+                    public void startElement(String tag, TagAttributes attributes) {
+                        events.add("<" + tag + " style=" + attributes.get("style") + " href="
+                                + attributes.get("href") + " src=" + attributes.get("src") + ">");
+                    }
+
+                    @Override
+                    public void endElement(String tag) {
+                        events.add("</" + tag + ">");
+                    }
+
+                    @Override
+                    public void text(String text) {
+                        events.add(text);
+                    }
+                });
+
+        assertTrue(tokenized);
+        assertEquals("[<p style=color:red href=null src=null>, a & b, <br style=null href=null src=null>, </br>, "
+                + "<a style=null href=u?a=1&b=2 src=null>, link, </a>, <img style=null href=null src=i.png>, </img>, </p>]",
+                events.toString());
+    }
+
+    @Test
+    void testUnsupportedInput() {
+        String[] unsupported = {
+                "<p>a<div>b</div></p>", "<b>x<i>y</b>z</i>", "</span>", "<li>x</li>", "<a href=1><a href=2>x</a></a>",
+                "<table>text<tr><td>x</td></tr></table>", "<td>x</td>", "<script>x</script>", "<!DOCTYPE html>",
+                "<x-tag>x</x-tag>", "<h1><h2>x</h2></h1>", "<b/>", "<span title=\"unterminated>", "<!-->", "a\0b"
+        };
+        for (String html : unsupported) {
+            assertFalse(HtmlTokenizer.isSupported(html), html);
+        }
+    }
+
+    @Test
+    void testNulReferencesAreSupported() {
+        // Only raw NULs defer to Jsoup; references to U+0000 decode to U+FFFD
+        for (String html : new String[]{"a&#0;b", "<b>a&#x0;b&#X00;</b>", "a&#0b"}) {
+            assertTrue(HtmlTokenizer.isSupported(html), html);
+            assertNativeMatchesJsoup(html);
+        }
+    }
+
+    @Test
+    void testEntityTableMatchesJsoup() {
+        String[] samples = {"&copy;&reg;&trade;&hellip;&mdash;&ndash;&lsquo;&rsquo;&ldquo;&rdquo;&sbquo;&bdquo;",
+                "&bull;&middot;&euro;&pound;&yen;&cent;&sect;&deg;&plusmn;&times;&divide;&laquo;&raquo;",
+                "&para;&shy;&micro;&frac12;&frac14;&frac34;&sup2;&sup3;&larr;&rarr;&uarr;&darr;",
+                "&ensp;&emsp;&thinsp;&zwnj;&zwj;&dagger;&permil;&amp;&lt;&gt;&quot;&apos;&nbsp;",
+                "&#65;&#x41;&#X20AC;&#128512;&#13;&#x80;&#0;&unknown;&amp &notit;"};
+        for (String sample : samples) {
+            assertEquals(Parser.unescapeEntities(sample, false), HtmlTokenizer.decode(sample, 0, sample.length()));
+        }
+    }
+
+    @Test
+    void testNativeMatchesJsoup() {
+        String[] inputs = {
+                "<p style='color:red;background-color:#FFFF00'>Hello <b>World</b></p><p>Second</p>",
+                "<div><ul><li>one</li><li><i>two</i></li></ul><ol><li>a</li><li>b</li></ol></div>",
+                "<table border=1>\n<tr><th>H1</th><th>H2</th></tr>\n<tbody><tr><td><b>x</b></td><td>y</td></tr></tbody></table>",
+                "<font face=Arial size=3 color=blue>font</font> <code>code</code> <span style=\"font-size:14pt\">big</span>",
+                "<a href=\"https://example.com\">first</a> <a href='second'>second</a> <img src=a.png><img src=' '>",
+                "<h1>Title</h1><blockquote>quote &mdash; &copy; &#8364;</blockquote>", "a < b && c > d",
+                "<p bgcolor=red>bg</p><div style='background-color: rgb(0,0,255)'>blue</div>",
+                "<b><p>bold para</p></b>", "<table><tr><td><table><tr><td>nested</td></tr></table></td></tr></table>",
+                "<ul>\n  <li>x</li>\n</ul>", "<p>unclosed <b>bold", "<div>a<!-- comment -->b</div>",
+                "<td>x</td>", "<p>a<p>b", "<table>\t\t<tr>\r\n<td>a</td>\t</tr></table>"
+        };
+        for (String html : inputs) {
+            assertNativeMatchesJsoup(html);
+        }
+
+        String[] pieces = {"<b>", "</b>", "<i>", "</i>", "<p>", "</p>", "<div style='color:red'>", "</div>",
+                "<ul>", "</ul>", "<ol>", "</ol>", "<li>", "</li>", "<table>", "</table>", "<tr>", "</tr>",
+                "<td>", "</td>", "<th>", "</th>", "<tbody>", "</tbody>", "<a href='x'>", "</a>", "<br>",
+                "<img src='i.png'>", "<span style='font-weight:bold'>", "</span>", "<h1>", "</h1>", "<h2>",
+                "</h2>", "<font color=red>", "</font>", "<!-- c -->", "text", " ", "\t\t", "\r\n", "&amp;",
+                "&nbsp;", "&copy", "<", ">", "<p bgcolor=#00ff00>"};
+        Random random = new Random(7);
+        int supported = 0;
+        for (int n = 0; n < 5000; n++) {
+            StringBuilder html = new StringBuilder();
+            int count = 1 + random.nextInt(16);
+            for (int i = 0; i < count; i++) {
+                html.append(pieces[random.nextInt(pieces.length)]);
+            }
+            if (assertNativeMatchesJsoup(html.toString())) {
+                supported++;
+            }
+        }
+        assertTrue(supported > 200, "Only " + supported + " random inputs were tokenized natively");
+
+        // Random well-formed trees
+        supported = 0;
+        for (int n = 0; n < 2000; n++) {
+            StringBuilder html = new StringBuilder();
+            appendRandomContent(html, random, 0, false);
+            if (assertNativeMatchesJsoup(html.toString())) {
+                supported++;
+            }
+        }
+        assertTrue(supported > 1500, "Only " + supported + " random trees were tokenized natively");
+    }
+
+    static void appendRandomContent(StringBuilder html, Random random, int depth, boolean inParagraph) {
+        String[] inline = {"b", "i", "u", "em", "strong", "span style='color:#FF0000'", "code", "a href='l'",
+                "font size=2"};
+        String[] texts = {"text", " ", "a&amp;b", "\t\r\n", "x &lt; y", "&nbsp;", "1 < 2"};
+        int count = 1 + random.nextInt(4);
+        for (int i = 0; i < count; i++) {
+            int kind = depth > 4 ? 0 : random.nextInt(inParagraph ? 3 : 7);
+            switch (kind) {
+                case 0:
+                    html.append(texts[random.nextInt(texts.length)]);
+                    break;
+                case 1: {
+                    String open = inline[random.nextInt(inline.length)];
+                    html.append('<').append(open).append('>');
+                    appendRandomContent(html, random, depth + 1, inParagraph);
+                    html.append("</").append(open.split(" ")[0]).append('>');
+                    break;
+                }
+                case 2:
+                    html.append(random.nextBoolean() ? "<br>" : "<img src='i.png'/>");
+                    break;
+                case 3:
+                case 4: {
+                    String block = random.nextBoolean() ? "p" : "div style='background-color:yellow'";
+                    html.append('<').append(block).append('>');
+                    appendRandomContent(html, random, depth + 1, block.equals("p"));
+                    html.append("</").append(block.split(" ")[0]).append('>');
+                    break;
+                }
+                case 5: {
+                    String list = random.nextBoolean() ? "ul" : "ol";
+                    html.append('<').append(list).append('>');
+                    for (int item = random.nextInt(3); item >= 0; item--) {
+                        html.append("<li>");
+                        appendRandomContent(html, random, depth + 1, false);
+                        html.append("</li>");
+                    }
+                    html.append("</").append(list).append('>');
+                    break;
+                }
+                default: {
+                    boolean tbody = random.nextBoolean();
+                    html.append(tbody ? "<table><tbody>" : "<table>");
+                    for (int row = random.nextInt(2); row >= 0; row--) {
+                        html.append("<tr>");
+                        for (int cell = random.nextInt(3); cell >= 0; cell--) {
+                            String tag = random.nextBoolean() ? "td" : "th";
+                            html.append('<').append(tag).append('>');
+                            appendRandomContent(html, random, depth + 1, false);
+                            html.append("</").append(tag).append('>');
+                        }
+                        html.append("</tr>\n");
+                    }
+                    html.append(tbody ? "</tbody></table>" : "</table>");
+                    break;
+                }
+            }
+        }
+    }
+
+    private boolean assertNativeMatchesJsoup(String html) {
+        RichTextBuilder tokenized = new RichTextBuilder();
+        if (!HtmlTokenizer.tokenize(html, new RichTextHandler(tokenized))) {
+            assertFalse(HtmlTokenizer.isSupported(html));
+            return false;
+        }
+        assertTrue(HtmlTokenizer.isSupported(html));
+
+        RichTextBuilder dom = new RichTextBuilder();
+        new HtmlTraverser().traverse(Jsoup.parseBodyFragment(html).body(), new HashMap<>(), dom);
+
+        CompiledRichText expected = dom.build();
+        CompiledRichText actual = tokenized.build();
+        assertEquals(expected, actual, "Tokenizer differs for: " + html);
+        assertEquals(expected.getFirstHref(), actual.getFirstHref());
+        return true;
+    }
+}
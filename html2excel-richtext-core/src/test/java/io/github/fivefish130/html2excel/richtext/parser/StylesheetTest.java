@@ -0,0 +1,71 @@
+package io.github.fivefish130.html2excel.richtext.parser;
+
+import io.github.fivefish130.html2excel.richtext.model.RunStyle;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for Stylesheet
+ *
+ * @author fivefish130
+ */
+class StylesheetTest {
+
+    private static final String CSS = "/* editor */ @import url(x.css);\n"
+            + "p { color: #00f }\n"
+            + ".note, .hint { font-style: italic; color: green }\n"
+            + "P.note { color: red }\n"
+            + "#total { font-weight: bold }\n"
+            + "td.num.neg { color: #800000 }\n"
+            + "* { font-size: 11pt }\n"
+            + "div p, a:hover, [title], .x > .y { color: orange }\n"
+            + "@media print { p { color: black } }\n"
+            + ".empty { text-align: center }";
+
+    @Test
+    void testCascade() {
+        Stylesheet sheet = Stylesheet.parse(CSS);
+        assertSame(sheet, Stylesheet.parse(new String(CSS.toCharArray())));
+        assertEquals(7, sheet.size());
+
+        RunStyle p = resolve(sheet, "p", null, null);
+        assertEquals(0x0000FF, p.getColor());
+        assertEquals(11, p.getFontSize());
+
+        // Class beats tag, tag plus class beats class, regardless of order
+        assertEquals(0x008000, resolve(sheet, "span", null, "note").getColor());
+        assertEquals(0xFF0000, resolve(sheet, "p", null, " hint  note ").getColor());
+        assertTrue(resolve(sheet, "p", null, "note").isItalic());
+        assertTrue(resolve(sheet, "span", "total", null).isBold());
+        assertFalse(resolve(sheet, "span", "Total", null).isBold());
+
+        assertEquals(0x800000, resolve(sheet, "td", null, "neg num").getColor());
+        assertFalse(resolve(sheet, "td", null, "num negative").hasColor());
+        assertFalse(resolve(sheet, "div", null, "notes").hasColor());
+    }
+
+    @Test
+    void testConcat() {
+        Stylesheet shared = Stylesheet.parse(".a { color: red } .b { color: blue }");
+        Stylesheet block = Stylesheet.parse(".a { color: lime }");
+        Stylesheet combined = shared.concat(block);
+        assertSame(combined, shared.concat(block));
+        assertSame(shared, shared.concat(Stylesheet.EMPTY));
+        assertSame(block, Stylesheet.EMPTY.concat(block));
+        assertSame(Stylesheet.EMPTY, Stylesheet.parse("a:hover { color: red } td { text-align: left }"));
+
+        assertEquals(0x00FF00, resolve(combined, "span", null, "a").getColor());
+        assertEquals(0x0000FF, resolve(combined, "span", null, "b").getColor());
+    }
+
+    private static RunStyle resolve(Stylesheet sheet, String tag, String id, String classAttr) {
+        Map<String, String> attributes = new HashMap<>();
+        attributes.put("id", id);
+        attributes.put("class", classAttr);
+        return sheet.apply(tag, attributes::get, ComputedStyle.INITIAL).getRunStyle();
+    }
+}
@@ -5,10 +5,12 @@ import com.alibaba.excel.metadata.data.WriteCellData;
 import com.alibaba.excel.write.handler.CellWriteHandler;
 import com.alibaba.excel.write.metadata.holder.WriteSheetHolder;
 import com.alibaba.excel.write.metadata.holder.WriteTableHolder;
+import io.github.fivefish130.html2excel.richtext.HtmlCompiler;
 import io.github.fivefish130.html2excel.richtext.HtmlToExcelConverter;
 import io.github.fivefish130.html2excel.richtext.config.ConverterConfig;
 import org.apache.poi.ss.usermodel.Cell;
-import org.apache.poi.xssf.usermodel.XSSFCell;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -38,6 +40,9 @@ public class HtmlCellWriteHandler implements CellWriteHandler {
 
     private static final Logger log = LoggerFactory.getLogger(HtmlCellWriteHandler.class);
 
+    // Parse stage per distinct annotation configuration, shared by all handlers and threads
+    private static final Map<String, HtmlCompiler> COMPILERS = new ConcurrentHashMap<>();
+
     private final Map<String, HtmlCellConfig> htmlCellConfigCache = new ConcurrentHashMap<>();
     private HtmlToExcelConverter defaultConverter;
 
@@ -66,31 +71,30 @@ public class HtmlCellWriteHandler implements CellWriteHandler {
             return;
         }
 
-        // Ensure it's an XSSF cell
-        if (!(cell instanceof XSSFCell)) {
-            log.warn("Cell is not an XSSF cell, HTML conversion skipped for field: {}", field.getName());
+        // Ensure it's an XSSF or SXSSF (streaming) cell
+        Workbook workbook = cell.getSheet().getWorkbook();
+        if (!(workbook instanceof XSSFWorkbook) && !(workbook instanceof SXSSFWorkbook)) {
+            log.warn("Cell is not an XSSF/SXSSF cell, HTML conversion skipped for field: {}", field.getName());
             return;
         }
 
         try {
-            XSSFCell xssfCell = (XSSFCell) cell;
             String htmlContent = cell.getStringCellValue();
 
             if (htmlContent == null || htmlContent.trim().isEmpty()) {
                 return;
             }
 
-            XSSFWorkbook workbook = xssfCell.getSheet().getWorkbook();
-
             // Get or create converter with config from annotation
             String configKey = getConfigKey(htmlCellAnnotation);
             HtmlCellConfig config = htmlCellConfigCache.computeIfAbsent(configKey, k ->
-                    new HtmlCellConfig(htmlCellAnnotation));
+                    new HtmlCellConfig(COMPILERS.computeIfAbsent(k, key ->
+                            new HtmlCompiler(HtmlCellConfig.toConverterConfig(htmlCellAnnotation)))));
 
             HtmlToExcelConverter converter = config.getConverter(workbook);
 
             // Apply HTML conversion
-            converter.applyHtmlToCell(xssfCell, htmlContent);
+            converter.applyHtmlToCell(cell, htmlContent);
 
             log.debug("Converted HTML to rich text for field: {}", field.getName());
 
@@ -111,10 +115,14 @@ public class HtmlCellWriteHandler implements CellWriteHandler {
      * Inner class to cache converter configuration
      */
     private static class HtmlCellConfig {
-        private final ConverterConfig converterConfig;
+        private final HtmlCompiler compiler;
         private HtmlToExcelConverter converter;
 
-        public HtmlCellConfig(HtmlCell annotation) {
+        public HtmlCellConfig(HtmlCompiler compiler) {
+            this.compiler = compiler;
+        }
+
+        static ConverterConfig toConverterConfig(HtmlCell annotation) {
             ConverterConfig.Builder builder = ConverterConfig.builder();
 
             if (annotation.enableImageDownload()) {
@@ -125,12 +133,13 @@ public class HtmlCellWriteHandler implements CellWriteHandler {
             builder.maxCellLength(annotation.maxCellLength())
                     .truncateSuffix(annotation.truncateSuffix());
 
-            this.converterConfig = builder.build();
+            return builder.build();
         }
 
-        public synchronized HtmlToExcelConverter getConverter(XSSFWorkbook workbook) {
-            if (converter == null) {
-                converter = new HtmlToExcelConverter(workbook, converterConfig);
+        public synchronized HtmlToExcelConverter getConverter(Workbook workbook) {
+            // Fonts and styles belong to a single workbook, so never reuse across workbooks
+            if (converter == null || converter.getWorkbook() != workbook) {
+                converter = new HtmlToExcelConverter(workbook, compiler);
             }
             return converter;
         }
@@ -1,9 +1,11 @@
 package io.github.fivefish130.html2excel.richtext.jxls;
 
+import io.github.fivefish130.html2excel.richtext.HtmlCompiler;
 import io.github.fivefish130.html2excel.richtext.HtmlToExcelConverter;
 import io.github.fivefish130.html2excel.richtext.config.ConverterConfig;
 import org.apache.poi.ss.usermodel.Cell;
-import org.apache.poi.xssf.usermodel.XSSFCell;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.jxls.area.Area;
 import org.jxls.command.AbstractCommand;
@@ -14,6 +16,9 @@ import org.jxls.common.Size;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
  * JXLS custom command for converting HTML to Excel rich text
  *
@@ -29,6 +34,9 @@ public class HtmlCommand extends AbstractCommand {
 
     private static final Logger log = LoggerFactory.getLogger(HtmlCommand.class);
 
+    // Parse stage per distinct command configuration, shared by all templates and threads
+    private static final Map<String, HtmlCompiler> COMPILERS = new ConcurrentHashMap<>();
+
     private String value;  // HTML content expression
     private Boolean enableImageDownload = false;
     private Integer connectTimeout;
@@ -37,6 +45,9 @@ public class HtmlCommand extends AbstractCommand {
 
     private Area area;
 
+    // Binder of the workbook being transformed, so its fonts and styles are reused across cells
+    private HtmlToExcelConverter converter;
+
     @Override
     public String getName() {
         return "html";
@@ -78,33 +89,14 @@ public class HtmlCommand extends AbstractCommand {
                         .createCell(cellRef.getCol());
             }
 
-            if (!(cell instanceof XSSFCell)) {
-                log.error("Cell at {} is not an XSSF cell, HTML conversion skipped", cellRef);
+            Workbook workbook = cell.getSheet().getWorkbook();
+            if (!(workbook instanceof XSSFWorkbook) && !(workbook instanceof SXSSFWorkbook)) {
+                log.error("Cell at {} is not an XSSF/SXSSF cell, HTML conversion skipped", cellRef);
                 return Size.ZERO_SIZE;
             }
 
-            XSSFCell xssfCell = (XSSFCell) cell;
-            XSSFWorkbook workbook = xssfCell.getSheet().getWorkbook();
-
-            // Create converter with config
-            ConverterConfig.Builder configBuilder = ConverterConfig.builder();
-
-            if (enableImageDownload != null && enableImageDownload) {
-                configBuilder.enableImageDownload(true);
-            }
-
-            if (connectTimeout != null && readTimeout != null) {
-                configBuilder.imageTimeout(connectTimeout, readTimeout);
-            }
-
-            if (maxCellLength != null) {
-                configBuilder.maxCellLength(maxCellLength);
-            }
-
-            HtmlToExcelConverter converter = new HtmlToExcelConverter(workbook, configBuilder.build());
-
             // Apply HTML to cell
-            converter.applyHtmlToCell(xssfCell, htmlContent);
+            getConverter(workbook).applyHtmlToCell(cell, htmlContent);
 
             log.debug("Applied HTML to cell: {}", cellRef);
 
@@ -116,6 +108,36 @@ public class HtmlCommand extends AbstractCommand {
         }
     }
 
+    /**
+     * Bind the shared compiler for this command's configuration to the workbook
+     */
+    private synchronized HtmlToExcelConverter getConverter(Workbook workbook) {
+        // Fonts and styles belong to a single workbook, so never reuse across workbooks
+        String configKey = enableImageDownload + "_" + connectTimeout + "_" + readTimeout + "_" + maxCellLength;
+        HtmlCompiler compiler = COMPILERS.computeIfAbsent(configKey, k -> new HtmlCompiler(buildConfig()));
+        if (converter == null || converter.getWorkbook() != workbook || converter.getCompiler() != compiler) {
+            converter = new HtmlToExcelConverter(workbook, compiler);
+        }
+        return converter;
+    }
+
+    private ConverterConfig buildConfig() {
+        ConverterConfig.Builder configBuilder = ConverterConfig.builder();
+
+        if (enableImageDownload != null && enableImageDownload) {
+            configBuilder.enableImageDownload(true);
+        }
+
+        if (connectTimeout != null && readTimeout != null) {
+            configBuilder.imageTimeout(connectTimeout, readTimeout);
+        }
+
+        if (maxCellLength != null) {
+            configBuilder.maxCellLength(maxCellLength);
+        }
+        return configBuilder.build();
+    }
+
     @Override
     public Command addArea(Area area) {
         if (super.getAreaList().size() >= 1) {